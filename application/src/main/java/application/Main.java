@@ -17,6 +17,7 @@ import javafx.scene.image.Image;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import org.ejml.data.DenseMatrix64F;
+import uw.cse.mag.appliancereader.lib.cv.DescriptorCache;
 import uw.cse.mag.appliancereader.lib.cv.HomographyCalculator;
 import uw.cse.mag.appliancereader.lib.cv.ImagePointAssociator;
 import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
@@ -25,10 +26,14 @@ import uw.cse.mag.appliancereader.lib.cv.params.sift.SiftParams;
 import uw.cse.mag.appliancereader.lib.cv.params.surf.FastSurfParams;
 import uw.cse.mag.appliancereader.lib.cv.params.surf.StableSurfParams;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Created by mhotan_dev on 12/18/13.
@@ -42,6 +47,10 @@ public class Main extends Application implements
 
     private Map<FeatureDetectionParams, ImagePointAssociator> associatorMap;
 
+    private DescriptorCache descriptorCache;
+
+    private ExecutorService describeExecutor;
+
     public static final double IMAGE_WIDTH = 600;
     public static final double IMAGE_HEIGHT = 400;
 
@@ -80,6 +89,20 @@ public class Main extends Application implements
         // Cache that hold quick references between parameters and ImagePointAssociator.
         associatorMap = new HashMap<FeatureDetectionParams, ImagePointAssociator>();
 
+        // Persistent descriptors so reference images are not re-described on every restart.
+        descriptorCache = new DescriptorCache(new File(System.getProperty("user.home"),
+                ".appliancereader" + File.separator + "descriptors"));
+
+        // Worker that describes the reference image while the FX thread describes the other.
+        describeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "describe-worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
         // Assign the calculator.
         calculator = new HomographyCalculator(homoParams);
 
@@ -115,6 +138,8 @@ public class Main extends Application implements
         ImagePointAssociator associator = associatorMap.get(newVal);
         if (associator == null) {
             associator = new ImagePointAssociator(newVal);
+            associator.setDescriptorCache(descriptorCache);
+            associator.setExecutor(describeExecutor);
             associatorMap.put(newVal, associator);
         }
         calculator.setImageAssociator(associator);
@@ -90,6 +90,12 @@ public class ResultView extends BorderPane implements HomographyCalculator.OnHom
 
     @Override
     public void onHomographyChanged(DenseMatrix64F newHomography, DenseMatrix64F oldHomography) {
+        if (newHomography == null) {
+            // No homography for the current images.
+            inlierMatchesPane.setVisible(false);
+            homographyPane.setVisible(false);
+            return;
+        }
         update();
     }
 
@@ -13,6 +13,7 @@ import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
+import uw.cse.mag.appliancereader.lib.cv.params.core.Associater;
 import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
 import uw.cse.mag.appliancereader.lib.cv.params.core.Scorer;
 
@@ -39,6 +40,9 @@ public abstract class ParametersView extends BorderPane {
     @FXML
     protected ChoiceBox<Scorer> scorerChoiceBox;
 
+    @FXML
+    protected ChoiceBox<Associater> associaterChoiceBox;
+
     /**
      * Parameters to draw.
      */
@@ -78,6 +82,16 @@ public abstract class ParametersView extends BorderPane {
             }
         });
 
+        // Set the value of the associater choice box.
+        associaterChoiceBox.setItems(FXCollections.observableArrayList(Associater.values()));
+        associaterChoiceBox.getSelectionModel().select(this.params.getAssociater());
+        associaterChoiceBox.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<Associater>() {
+            @Override
+            public void changed(ObservableValue<? extends Associater> ov, Associater value, Associater new_value) {
+                params.setAssociater(new_value);
+            }
+        });
+
         // Square Euclidian View.
         BooleanInputView squareEuclideanView = new BooleanInputView(
                 "Square Euclidean",
@@ -130,6 +144,34 @@ public abstract class ParametersView extends BorderPane {
         maxDistanceView.canBeZero(false);
         persistentControls.getChildren().add(maxDistanceView);
 
+        // Ratio of the ratio test associater.
+        DoubleInputView ratioView = new DoubleInputView(
+                "Ratio Test Ratio",
+                this.params.getRatio(),
+                new NumberInputView.InputListener() {
+                    @Override
+                    public void onValueChanged(Number value) {
+                        try {
+                            params.setRatio(value.doubleValue());
+                        } catch (IllegalArgumentException e) {
+                            showError(e.getMessage());
+                        }
+                    }
+
+                    @Override
+                    public void onErrorOccured(String msg) {
+                        showError(msg);
+                    }
+
+                    @Override
+                    public void hideAllErrors() {
+                        hideError();
+                    }
+                });
+        ratioView.canBeNegative(false);
+        ratioView.canBeZero(false);
+        persistentControls.getChildren().add(ratioView);
+
         // Maximum features
         IntegerInputView maxFeaturesView = new IntegerInputView(
                 "Maximum Associated Features",
@@ -155,6 +197,56 @@ public abstract class ParametersView extends BorderPane {
         maxFeaturesView.canBeZero(false);
         persistentControls.getChildren().add(maxFeaturesView);
 
+        // Best bin first search budget of the k-d tree associaters.
+        IntegerInputView maxNodesSearchedView = new IntegerInputView(
+                "K-D Tree Max Nodes Searched",
+                this.params.getMaxNodesSearched(),
+                new NumberInputView.InputListener() {
+                    @Override
+                    public void onValueChanged(Number value) {
+                        params.setMaxNodesSearched(value.intValue());
+                    }
+
+                    @Override
+                    public void onErrorOccured(String msg) {
+                        showError(msg);
+                    }
+
+                    @Override
+                    public void hideAllErrors() {
+                        hideError();
+                    }
+                }
+        );
+        maxNodesSearchedView.canBeNegative(false);
+        maxNodesSearchedView.canBeZero(false);
+        persistentControls.getChildren().add(maxNodesSearchedView);
+
+        // Number of trees in the randomized k-d forest.
+        IntegerInputView numTreesView = new IntegerInputView(
+                "K-D Forest Trees",
+                this.params.getNumTrees(),
+                new NumberInputView.InputListener() {
+                    @Override
+                    public void onValueChanged(Number value) {
+                        params.setNumTrees(value.intValue());
+                    }
+
+                    @Override
+                    public void onErrorOccured(String msg) {
+                        showError(msg);
+                    }
+
+                    @Override
+                    public void hideAllErrors() {
+                        hideError();
+                    }
+                }
+        );
+        numTreesView.canBeNegative(false);
+        numTreesView.canBeZero(false);
+        persistentControls.getChildren().add(numTreesView);
+
     }
 
     //////////////////////////////////////////////////////////////////////////////////////////////
@@ -201,6 +293,7 @@ public abstract class ParametersView extends BorderPane {
         assert label != null : "fx:id=\"label\" was not injected: check your FXML file 'ParameterView.fxml'.";
         assert persistentControls != null : "fx:id=\"persistentControls\" was not injected: check your FXML file 'ParameterView.fxml'.";
         assert scorerChoiceBox != null : "fx:id=\"scorerChoiceBox\" was not injected: check your FXML file 'ParameterView.fxml'.";
+        assert associaterChoiceBox != null : "fx:id=\"associaterChoiceBox\" was not injected: check your FXML file 'ParameterView.fxml'.";
 
     }
 
@@ -0,0 +1,156 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.abst.feature.detdesc.DetectDescribePoint;
+import boofcv.struct.feature.TupleDesc_B;
+import georegression.struct.point.Point2D_F64;
+
+/**
+ * Struct of arrays representation of features with binary descriptors.  Descriptor bits are packed
+ * into 64 bit words and all descriptors are stored back to back with a stride of the word count.
+ * Feature i occupies
+ * <b>descriptors[i * words] to descriptors[(i + 1) * words - 1]</b>
+ * and is located at (x[i], y[i]).  Bit b of a descriptor is bit b % 64 of word b / 64, unused bits are 0.
+ * <b>Getters return the backing arrays without copying.  Clients must not modify them.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class BinaryFeatures {
+
+    /**
+     * Number of features.
+     */
+    private final int size;
+
+    /**
+     * Number of bits and 64 bit words in each descriptor.
+     */
+    private final int numBits, words;
+
+    /**
+     * Descriptor words of every feature, feature after feature.
+     */
+    private final long[] descriptors;
+
+    /**
+     * Location of every feature.
+     */
+    private final double[] x, y;
+
+    /**
+     * Wraps the argument arrays.  The arrays are not copied.
+     *
+     * @param numBits Number of bits in each descriptor.
+     * @param descriptors Descriptor words, size * ceil(numBits / 64) values.
+     * @param x X coordinate of every feature.
+     * @param y Y coordinate of every feature.
+     */
+    public BinaryFeatures(int numBits, long[] descriptors, double[] x, double[] y) {
+        String prefix = getClass().getSimpleName() + "() ";
+        if (descriptors == null || x == null || y == null)
+            throw new NullPointerException(prefix + "Null array");
+        if (numBits < 0)
+            throw new IllegalArgumentException(prefix + "Negative number of bits");
+        int size = x.length;
+        int words = getWords(numBits);
+        if (y.length != size || descriptors.length != size * words)
+            throw new IllegalArgumentException(prefix + "Array sizes do not agree");
+        this.size = size;
+        this.numBits = numBits;
+        this.words = words;
+        this.descriptors = descriptors;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Packs every feature found by the last detection of the argument detector.
+     *
+     * @param detDesc Detector that just processed an image.
+     * @return Packed copy of the features.
+     */
+    public static BinaryFeatures pack(DetectDescribePoint<?, TupleDesc_B> detDesc) {
+        int size = detDesc.getNumberOfFeatures();
+        int numBits = detDesc.getDescriptionLength();
+        int words = getWords(numBits);
+        long[] descriptors = new long[size * words];
+        double[] x = new double[size];
+        double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            pack(detDesc.getDescription(i), descriptors, i * words);
+            Point2D_F64 point = detDesc.getLocation(i);
+            x[i] = point.x;
+            y[i] = point.y;
+        }
+        return new BinaryFeatures(numBits, descriptors, x, y);
+    }
+
+    /**
+     * Packs the 32 bit words of a descriptor into 64 bit words.
+     *
+     * @param desc Descriptor to pack.
+     * @param words Destination array.
+     * @param offset Index of the first word of the descriptor.
+     */
+    public static void pack(TupleDesc_B desc, long[] words, int offset) {
+        int[] data = desc.data;
+        for (int i = 0; i < data.length; i += 2) {
+            long low = data[i] & 0xFFFFFFFFL;
+            long high = i + 1 < data.length ? (long) data[i + 1] << 32 : 0;
+            words[offset + i / 2] = low | high;
+        }
+    }
+
+    /**
+     * @param numBits Number of bits of a descriptor.
+     * @return Number of 64 bit words that hold the bits.
+     */
+    public static int getWords(int numBits) {
+        return (numBits + 63) / 64;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Getters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * @return Number of features.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of bits in each descriptor.
+     */
+    public int getNumBits() {
+        return numBits;
+    }
+
+    /**
+     * @return Number of 64 bit words in each descriptor.
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /**
+     * @return Backing array of all descriptor words.
+     */
+    public long[] getDescriptors() {
+        return descriptors;
+    }
+
+    /**
+     * @return Backing array of the x coordinate of every feature.
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /**
+     * @return Backing array of the y coordinate of every feature.
+     */
+    public double[] getY() {
+        return y;
+    }
+}
@@ -0,0 +1,187 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.abst.feature.detdesc.DetectDescribePoint;
+import boofcv.core.image.ConvertBufferedImage;
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+import boofcv.struct.feature.TupleDesc_B;
+import boofcv.struct.geo.AssociatedPair;
+import boofcv.struct.image.ImageFloat32;
+import uw.cse.mag.appliancereader.lib.cv.associate.HammingScoreKernel;
+import uw.cse.mag.appliancereader.lib.cv.associate.ScoreTable;
+import uw.cse.mag.appliancereader.lib.cv.params.brief.BriefParams;
+import uw.cse.mag.appliancereader.lib.cv.params.brief.OnBriefParamsChangedListener;
+import uw.cse.mag.appliancereader.lib.cv.params.core.Associater;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Associates points of two images with binary BRIEF descriptors.  Descriptors are bit packed into
+ * {@link BinaryFeatures} and matched by Hamming distance, which is much cheaper to compute, store and
+ * compare than the floating point descriptors of {@link ImagePointAssociator}.
+ * This associator listens to its {@link BriefParams}, images are described again when the detector
+ * or describer changes and thresholds apply to the following matches.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class BinaryPointAssociator implements OnBriefParamsChangedListener {
+
+    /**
+     * Strong reference to parameters.
+     */
+    private final BriefParams parameters;
+
+    /**
+     * Detector of the current parameters.  Null until the first image is described.
+     */
+    private DetectDescribePoint<ImageFloat32, TupleDesc_B> detDesc;
+
+    /**
+     * Images to be associated and their features.
+     */
+    private BufferedImage referenceImage, otherImage;
+    private BinaryFeatures referenceFeatures, otherFeatures;
+
+    /**
+     * Scores of the current features.  Null until the features are matched.
+     */
+    private ScoreTable scoreTable;
+
+    /**
+     * Creates a binary associator with a strong reference to the parameters.
+     *
+     * @param params BRIEF parameters.
+     */
+    public BinaryPointAssociator(BriefParams params) {
+        if (params == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null parameters");
+        this.parameters = params;
+        parameters.setListener(this);
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Setters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * @param image Reference image to describe.
+     */
+    public void setReferenceImage(BufferedImage image) {
+        if (image == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".setReferenceImage() Null image");
+        referenceImage = image;
+        referenceFeatures = describeImage(image);
+        scoreTable = null;
+    }
+
+    /**
+     * @param image Other image to describe.
+     */
+    public void setOtherImage(BufferedImage image) {
+        if (image == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".setOtherImage() Null image");
+        otherImage = image;
+        otherFeatures = describeImage(image);
+        scoreTable = null;
+    }
+
+    /**
+     * Sets both images of this associator.
+     *
+     * @param reference Reference image.
+     * @param other Other image.
+     */
+    public void setImages(BufferedImage reference, BufferedImage other) {
+        setReferenceImage(reference);
+        setOtherImage(other);
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Getters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Matches the reference features with the features of the other image.
+     *
+     * @return Matches from the reference image to the other image, null if an image is missing.
+     */
+    public List<AssociatedPair> getMatches() {
+        if (referenceImage == null || otherImage == null) return null;
+        if (scoreTable == null)
+            scoreTable = HammingScoreKernel.score(referenceFeatures.getDescriptors(), referenceFeatures.size(),
+                    otherFeatures.getDescriptors(), otherFeatures.size(), referenceFeatures.getWords());
+
+        FastQueue<AssociatedIndex> matchIndexes;
+        if (parameters.getAssociater() == Associater.RATIO_TEST)
+            matchIndexes = scoreTable.selectRatio(parameters.getRatio(), parameters.getMaxDistance(),
+                    parameters.isBackwardsValidated());
+        else
+            matchIndexes = scoreTable.selectGreedy(parameters.getMaxDistance(), parameters.isBackwardsValidated());
+
+        List<AssociatedPair> matches = new ArrayList<AssociatedPair>(matchIndexes.size);
+        double[] x1 = referenceFeatures.getX(), y1 = referenceFeatures.getY();
+        double[] x2 = otherFeatures.getX(), y2 = otherFeatures.getY();
+        for (int i = 0; i < matchIndexes.size; i++) {
+            AssociatedIndex a = matchIndexes.get(i);
+            matches.add(new ScoredAssociatedPair(x1[a.src], y1[a.src], x2[a.dst], y2[a.dst], a.fitScore));
+        }
+        return matches;
+    }
+
+    /**
+     * @return Features of the reference image, null if there is none.
+     */
+    public BinaryFeatures getReferenceImageFeatures() {
+        return referenceFeatures;
+    }
+
+    /**
+     * @return Features of the other image, null if there is none.
+     */
+    public BinaryFeatures getOtherImageFeatures() {
+        return otherFeatures;
+    }
+
+    /**
+     * @return Parameters of this associator.
+     */
+    public BriefParams getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Detects and describes the features of an image with the current parameters.
+     *
+     * @param image Image to describe.
+     * @return Bit packed features of the image.
+     */
+    public BinaryFeatures describeImage(BufferedImage image) {
+        if (detDesc == null)
+            detDesc = parameters.newDetectorAndDescriber();
+        ImageFloat32 gray = ConvertBufferedImage.convertFromSingle(image, null, ImageFloat32.class);
+        detDesc.detect(gray);
+        return BinaryFeatures.pack(detDesc);
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Listener for changes in state.
+    ///////////////////////////////////////////////////////////////
+
+    @Override
+    public void onDetDescChanged() {
+        // The detector no longer reflects the parameters.
+        detDesc = null;
+        if (referenceImage != null)
+            referenceFeatures = describeImage(referenceImage);
+        if (otherImage != null)
+            otherFeatures = describeImage(otherImage);
+        scoreTable = null;
+    }
+
+    @Override
+    public void onAssociaterChanged() {
+        // Thresholds are read when matching, the score table stays valid.
+    }
+}
@@ -0,0 +1,339 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.struct.image.ImageFloat32;
+import uw.cse.mag.appliancereader.lib.cv.params.core.DescriptorPrecision;
+import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Logger;
+
+/**
+ * On disk cache of feature detection results.  Every entry is keyed by the content of the image
+ * that was described and the fingerprint of the {@link FeatureDetectionParams} that described it.
+ * A cache hit allows a {@link DetectionResultArgument} to be rebuilt without running the detector.
+ * Descriptors are stored with the precision they were described with.
+ * <b>Safe to share between threads and between associators.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class DescriptorCache {
+
+    /**
+     * File header values used to reject foreign or outdated files.
+     */
+    private static final int MAGIC = 0x41524443;
+    private static final int VERSION = 2;
+
+    /**
+     * Extension of every cache entry.
+     */
+    private static final String EXTENSION = ".desc";
+
+    /**
+     * Directory where all the entries are stored.
+     */
+    private final File mDirectory;
+
+    /**
+     * Creates a descriptor cache rooted at the argument directory.
+     * If the directory does not exist then it is created.
+     *
+     * @param directory Directory to store cached descriptors in.
+     */
+    public DescriptorCache(File directory) {
+        if (directory == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null Directory");
+        if (!directory.exists() && !directory.mkdirs())
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Unable to create " +
+                    "directory " + directory);
+        if (!directory.isDirectory())
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Input file is not a directory");
+        mDirectory = directory;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Cache access
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Creates the key that identifies the description of an image under a set of parameters.
+     *
+     * @param image Image that is described.
+     * @param params Parameters that describe the image.
+     * @return Hexadecimal key for the cache entry.
+     */
+    public String createKey(ImageFloat32 image, FeatureDetectionParams params) {
+        if (image == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".createKey() Null image");
+        if (params == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".createKey() Null parameters");
+
+        MessageDigest digest = createDigest();
+        digest.update(params.getFingerprint().getBytes(Charset.forName("UTF-8")));
+
+        // Hash the pixel content row by row.  Sub images have a stride that differs from their width.
+        byte[] row = new byte[image.width * 4];
+        for (int y = 0; y < image.height; y++) {
+            int index = image.startIndex + y * image.stride;
+            for (int x = 0; x < image.width; x++) {
+                int bits = Float.floatToIntBits(image.data[index++]);
+                row[x * 4] = (byte) (bits >>> 24);
+                row[x * 4 + 1] = (byte) (bits >>> 16);
+                row[x * 4 + 2] = (byte) (bits >>> 8);
+                row[x * 4 + 3] = (byte) bits;
+            }
+            digest.update(row);
+        }
+        digest.update(new byte[] {
+                (byte) (image.width >>> 24), (byte) (image.width >>> 16),
+                (byte) (image.width >>> 8), (byte) image.width,
+                (byte) (image.height >>> 24), (byte) (image.height >>> 16),
+                (byte) (image.height >>> 8), (byte) image.height});
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates a key that identifies a set of parameters alone, e.g. to name files that hold
+     * descriptors of many images.
+     *
+     * @param params Parameters to identify.
+     * @return Hexadecimal SHA-1 digest of the parameters fingerprint.
+     */
+    public static String createKey(FeatureDetectionParams params) {
+        if (params == null)
+            throw new NullPointerException(DescriptorCache.class.getSimpleName() + ".createKey() Null parameters");
+        MessageDigest digest = createDigest();
+        digest.update(params.getFingerprint().getBytes(Charset.forName("UTF-8")));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Attempts to load a previously stored result.
+     *
+     * @param key Key created by {@link #createKey(ImageFloat32, FeatureDetectionParams)}
+     * @param image The image the result belongs to.
+     * @return The stored result or null if there is no valid entry for the key.
+     */
+    public DetectionResultArgument load(String key, ImageFloat32 image) {
+        File file = getFile(key);
+        if (!file.isFile()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized header");
+            }
+            int count = in.readInt();
+            int length = in.readInt();
+            DescriptorPrecision precision = readPrecision(in);
+            double[] scales = null;
+            if (precision == DescriptorPrecision.INT8) {
+                scales = new double[length];
+                for (int k = 0; k < length; k++)
+                    scales[k] = in.readDouble();
+            }
+
+            double[] descriptors = precision == DescriptorPrecision.DOUBLE ? new double[count * length] : null;
+            float[] floats = precision == DescriptorPrecision.FLOAT ? new float[count * length] : null;
+            byte[] codes = precision == DescriptorPrecision.INT8 ? new byte[count * length] : null;
+            double[] x = new double[count];
+            double[] y = new double[count];
+            boolean[] laplacianPositive = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                x[i] = in.readDouble();
+                y[i] = in.readDouble();
+                laplacianPositive[i] = in.readBoolean();
+                int offset = i * length;
+                if (descriptors != null) {
+                    for (int j = 0; j < length; j++)
+                        descriptors[offset + j] = in.readDouble();
+                } else if (floats != null) {
+                    for (int j = 0; j < length; j++)
+                        floats[offset + j] = in.readFloat();
+                } else {
+                    in.readFully(codes, offset, length);
+                }
+            }
+            PackedFeatures features;
+            if (descriptors != null)
+                features = new PackedFeatures(length, descriptors, x, y, laplacianPositive);
+            else if (floats != null)
+                features = new PackedFeatures(new QuantizedDescriptors(length, floats), x, y, laplacianPositive);
+            else
+                features = new PackedFeatures(new QuantizedDescriptors(length, codes, scales),
+                        x, y, laplacianPositive);
+            return new DetectionResultArgument(features, image);
+        } catch (IOException e) {
+            Logger.getLogger(getClass().getSimpleName()).warning("Discarding unreadable cache " +
+                    "entry " + file + ": " + e.getMessage());
+        } finally {
+            closeQuietly(in);
+        }
+        // Only reached when the entry is corrupt.
+        file.delete();
+        return null;
+    }
+
+    /**
+     * Stores the result under the argument key.  Failures are logged and otherwise ignored
+     * because the cache is only an optimization.
+     *
+     * @param key Key created by {@link #createKey(ImageFloat32, FeatureDetectionParams)}
+     * @param result Result to store.
+     */
+    public void store(String key, DetectionResultArgument result) {
+        if (result == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".store() Null result");
+        File file = getFile(key);
+        PackedFeatures features = result.getPackedFeatures();
+        int length = features.getDescriptorLength();
+        QuantizedDescriptors quantized = features.getQuantized();
+        double[] descriptors = quantized == null ? features.getDescriptors() : null;
+        double[] x = features.getX(), y = features.getY();
+        boolean[] laplacianPositive = features.getLaplacianPositive();
+
+        DataOutputStream out = null;
+        File temp = null;
+        try {
+            // Write to a temporary file first so readers never observe a partial entry.
+            temp = File.createTempFile(key, ".tmp", mDirectory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(features.size());
+            out.writeInt(length);
+            out.writeUTF(features.getPrecision().name());
+            if (quantized != null && quantized.getScales() != null) {
+                for (double scale : quantized.getScales())
+                    out.writeDouble(scale);
+            }
+            for (int i = 0; i < features.size(); i++) {
+                out.writeDouble(x[i]);
+                out.writeDouble(y[i]);
+                out.writeBoolean(laplacianPositive[i]);
+                if (descriptors != null) {
+                    for (int j = i * length; j < (i + 1) * length; j++)
+                        out.writeDouble(descriptors[j]);
+                } else if (quantized.getFloats() != null) {
+                    for (int j = i * length; j < (i + 1) * length; j++)
+                        out.writeFloat(quantized.getFloats()[j]);
+                } else {
+                    out.write(quantized.getCodes(), i * length, length);
+                }
+            }
+            out.close();
+            out = null;
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.getLogger(getClass().getSimpleName()).warning("Unable to store cache entry " +
+                    file + ": " + e.getMessage());
+            closeQuietly(out);
+            if (temp != null) temp.delete();
+        }
+    }
+
+    /**
+     * Removes every entry from this cache.
+     */
+    public void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().endsWith(EXTENSION))
+                file.delete();
+        }
+    }
+
+    /**
+     * @return The directory where entries are stored.
+     */
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Private helper methods
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * @param key Key of the entry.
+     * @return File of the entry.
+     */
+    private File getFile(String key) {
+        if (key == null)
+            throw new NullPointerException(getClass().getSimpleName() + " Null key");
+        return new File(mDirectory, key + EXTENSION);
+    }
+
+    /**
+     * @param in Stream positioned at the name of a precision.
+     * @return The precision that was read.
+     * @throws IOException The name is not a known precision.
+     */
+    private static DescriptorPrecision readPrecision(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        for (DescriptorPrecision precision : DescriptorPrecision.values()) {
+            if (precision.name().equals(name))
+                return precision;
+        }
+        throw new IOException("Unknown precision " + name);
+    }
+
+    /**
+     * @return Digest used for keys.
+     */
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported on this platform");
+        }
+    }
+
+    /**
+     * @param bytes Bytes to convert.
+     * @return Lower case hexadecimal representation.
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param stream Stream to close, may be null.
+     */
+    private static void closeQuietly(Closeable stream) {
+        if (stream == null) return;
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Nothing else can be done.
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DescriptorCache{" +
+                "directory=" + mDirectory +
+                '}';
+    }
+}
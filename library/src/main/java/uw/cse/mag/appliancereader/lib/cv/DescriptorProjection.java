@@ -0,0 +1,321 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.DecompositionFactory;
+import org.ejml.factory.EigenDecomposition;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Principal component projection of descriptors to a lower dimension.  The basis is learned once from a
+ * corpus of descriptors, for example the reference images of every appliance, and written to a file so
+ * the same projection can be loaded again.  Projected descriptors are centered on the mean of the corpus.
+ * <b>Distance computations shrink in proportion to the dimension, at the cost of the variance that the
+ * dropped components held.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class DescriptorProjection {
+
+    /**
+     * File header values used to reject foreign or outdated files.
+     */
+    private static final int MAGIC = 0x41525043;
+    private static final int VERSION = 1;
+
+    /**
+     * Number of elements of input and projected descriptors.
+     */
+    private final int length, dimension;
+
+    /**
+     * Mean of the corpus, length values.
+     */
+    private final double[] mean;
+
+    /**
+     * Principal components, dimension rows of length values.
+     */
+    private final double[] basis;
+
+    /**
+     * Variance of the corpus along every principal component, in decreasing order.
+     */
+    private final double[] variances;
+
+    /**
+     * Creates a projection from a known basis.  The arrays are copied.
+     *
+     * @param mean Mean of the corpus, length values.
+     * @param basis Principal components, row after row.
+     * @param variances Variance along every principal component.
+     */
+    public DescriptorProjection(double[] mean, double[] basis, double[] variances) {
+        String prefix = getClass().getSimpleName() + "() ";
+        if (mean == null || basis == null || variances == null)
+            throw new NullPointerException(prefix + "Null array");
+        if (mean.length == 0 || variances.length == 0 || basis.length != mean.length * variances.length)
+            throw new IllegalArgumentException(prefix + "Array sizes do not agree");
+        this.length = mean.length;
+        this.dimension = variances.length;
+        this.mean = mean.clone();
+        this.basis = basis.clone();
+        this.variances = variances.clone();
+    }
+
+    /**
+     * Learns the principal components of a corpus of descriptors.
+     *
+     * @param corpus Double precision features of the same descriptor length.
+     * @param dimension Number of components to keep.
+     * @return Projection onto the largest components.
+     */
+    public static DescriptorProjection learn(Collection<PackedFeatures> corpus, int dimension) {
+        if (corpus == null)
+            throw new NullPointerException("DescriptorProjection.learn() Null corpus");
+        int length = -1, count = 0;
+        for (PackedFeatures features : corpus) {
+            if (features.size() == 0) continue;
+            if (length != -1 && features.getDescriptorLength() != length)
+                throw new IllegalArgumentException("DescriptorProjection.learn() Descriptor lengths differ");
+            length = features.getDescriptorLength();
+            count += features.size();
+        }
+        if (count < 2)
+            throw new IllegalArgumentException("DescriptorProjection.learn() Need at least two descriptors");
+        if (dimension <= 0 || dimension > length)
+            throw new IllegalArgumentException("DescriptorProjection.learn() Dimension must be within [1, " +
+                    length + "]");
+
+        double[] mean = new double[length];
+        for (PackedFeatures features : corpus) {
+            double[] descriptors = features.getDescriptors();
+            for (int i = 0; i < features.size() * length; i++)
+                mean[i % length] += descriptors[i];
+        }
+        for (int k = 0; k < length; k++)
+            mean[k] /= count;
+
+        // Covariance of the centered corpus, upper triangle then mirrored.
+        DenseMatrix64F covariance = new DenseMatrix64F(length, length);
+        double[] centered = new double[length];
+        for (PackedFeatures features : corpus) {
+            double[] descriptors = features.getDescriptors();
+            for (int i = 0; i < features.size(); i++) {
+                for (int k = 0; k < length; k++)
+                    centered[k] = descriptors[i * length + k] - mean[k];
+                for (int r = 0; r < length; r++) {
+                    int row = r * length;
+                    for (int c = r; c < length; c++)
+                        covariance.data[row + c] += centered[r] * centered[c];
+                }
+            }
+        }
+        for (int r = 0; r < length; r++) {
+            for (int c = r; c < length; c++) {
+                double value = covariance.data[r * length + c] / (count - 1);
+                covariance.data[r * length + c] = value;
+                covariance.data[c * length + r] = value;
+            }
+        }
+
+        EigenDecomposition<DenseMatrix64F> eig = DecompositionFactory.eig(length, true, true);
+        if (!eig.decompose(covariance))
+            throw new IllegalStateException("DescriptorProjection.learn() Eigen decomposition failed");
+        final double[] values = new double[length];
+        List<Integer> order = new ArrayList<Integer>(length);
+        for (int i = 0; i < length; i++) {
+            values[i] = eig.getEigenvalue(i).getReal();
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(values[b], values[a]);
+            }
+        });
+
+        double[] basis = new double[dimension * length];
+        double[] variances = new double[dimension];
+        for (int r = 0; r < dimension; r++) {
+            int index = order.get(r);
+            DenseMatrix64F vector = eig.getEigenVector(index);
+            // Fix the sign so the same corpus always produces the same basis.
+            int largest = 0;
+            for (int k = 1; k < length; k++) {
+                if (Math.abs(vector.data[k]) > Math.abs(vector.data[largest]))
+                    largest = k;
+            }
+            double sign = vector.data[largest] < 0 ? -1 : 1;
+            for (int k = 0; k < length; k++)
+                basis[r * length + k] = sign * vector.data[k];
+            variances[r] = Math.max(values[index], 0);
+        }
+        return new DescriptorProjection(mean, basis, variances);
+    }
+
+    /**
+     * Projects double precision features.  Points are shared, not copied.
+     *
+     * @param features Features with descriptors of the input length.
+     * @return Features with projected descriptors.
+     */
+    public PackedFeatures project(PackedFeatures features) {
+        if (features.getDescriptorLength() != length && features.size() > 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".project() Expected descriptors " +
+                    "of length " + length + " not " + features.getDescriptorLength());
+        int size = features.size();
+        double[] descriptors = features.getDescriptors();
+        double[] projected = new double[size * dimension];
+        double[] centered = new double[length];
+        for (int i = 0; i < size; i++) {
+            for (int k = 0; k < length; k++)
+                centered[k] = descriptors[i * length + k] - mean[k];
+            for (int r = 0; r < dimension; r++) {
+                double total = 0;
+                int row = r * length;
+                for (int k = 0; k < length; k++)
+                    total += basis[row + k] * centered[k];
+                projected[i * dimension + r] = total;
+            }
+        }
+        return new PackedFeatures(dimension, projected, features.getX(), features.getY(),
+                features.getLaplacianPositive());
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Persistence
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Writes the projection to a file.
+     *
+     * @param file File to write.
+     * @throws IOException The file could not be written.
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(length);
+            out.writeInt(dimension);
+            for (double value : mean)
+                out.writeDouble(value);
+            for (double value : basis)
+                out.writeDouble(value);
+            for (double value : variances)
+                out.writeDouble(value);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a projection written by {@link #write(File)}.
+     *
+     * @param file File to read.
+     * @return The projection of the file.
+     * @throws IOException The file could not be read or is not a projection.
+     */
+    public static DescriptorProjection read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Unrecognized header in " + file);
+            int length = in.readInt();
+            int dimension = in.readInt();
+            if (length <= 0 || dimension <= 0 || dimension > length)
+                throw new IOException("Invalid dimensions in " + file);
+            double[] mean = readDoubles(in, length);
+            double[] basis = readDoubles(in, dimension * length);
+            double[] variances = readDoubles(in, dimension);
+            return new DescriptorProjection(mean, basis, variances);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return The next count doubles of the stream.
+     */
+    private static double[] readDoubles(DataInputStream in, int count) throws IOException {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++)
+            values[i] = in.readDouble();
+        return values;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Getters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * @return Number of elements of input descriptors.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return Number of elements of projected descriptors.
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return Copy of the variance along every kept component, in decreasing order.
+     */
+    public double[] getVariances() {
+        return variances.clone();
+    }
+
+    /**
+     * Creates a canonical description of this projection.  Projections with equal fingerprints
+     * project descriptors identically.
+     *
+     * @return Fingerprint of the basis.
+     */
+    public String getFingerprint() {
+        int hash = 31 * Arrays.hashCode(mean) + Arrays.hashCode(basis);
+        return "PCA(length=" + length + ",dimension=" + dimension + ",basis=" + Integer.toHexString(hash) + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DescriptorProjection)) return false;
+
+        DescriptorProjection that = (DescriptorProjection) o;
+        if (!Arrays.equals(mean, that.mean)) return false;
+        if (!Arrays.equals(basis, that.basis)) return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mean) + Arrays.hashCode(basis);
+    }
+
+    @Override
+    public String toString() {
+        return "DescriptorProjection{" +
+                "length=" + length +
+                ", dimension=" + dimension +
+                '}';
+    }
+}
@@ -5,19 +5,27 @@ import boofcv.struct.feature.SurfFeature;
 import boofcv.struct.image.ImageFloat32;
 import georegression.struct.point.Point2D_F64;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Return arguments for Feature Detection.
+ * <b>Features are held in a {@link PackedFeatures} struct of arrays.  The object views returned by
+ * {@link #getDescriptors()} and {@link #getPoints()} are only created when first requested.</b>
  *
  * @author Michael Hotan, michael.hotan@gmail.com
  */
 public class DetectionResultArgument {
 
-    private final FastQueue<SurfFeature> descriptors;
-    private final List<Point2D_F64> points;
+    private final PackedFeatures features;
     private final ImageFloat32 image;
 
+    /**
+     * Object views of the packed features.  Lazily created.
+     */
+    private FastQueue<SurfFeature> descriptors;
+    private List<Point2D_F64> points;
+
     /**
      * Create a bundle for return arguments.  Every point in points corresponds to the feature
      * descriptors.
@@ -35,25 +43,70 @@ public class DetectionResultArgument {
             throw new NullPointerException(getClass().getSimpleName() + "() Null points");
         if (image == null)
             throw new NullPointerException(getClass().getSimpleName() + "() Null image");
+        this.features = PackedFeatures.pack(descriptors, points);
         this.descriptors = descriptors;
         this.points = points;
         this.image = image;
     }
 
+    /**
+     * Create a bundle for return arguments from packed features.
+     *
+     * @param features Packed Feature descriptors and points.
+     * @param image Image with features
+     */
+    DetectionResultArgument(PackedFeatures features, ImageFloat32 image) {
+        if (features == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null features");
+        if (image == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null image");
+        this.features = features;
+        this.image = image;
+    }
+
     /**
      * @return Associated Descriptors
      */
-    public FastQueue<SurfFeature> getDescriptors() {
+    public synchronized FastQueue<SurfFeature> getDescriptors() {
+        if (descriptors == null) {
+            FastQueue<SurfFeature> queue = new FastQueue<SurfFeature>(
+                    Math.max(features.size(), 1), SurfFeature.class, false);
+            for (int i = 0; i < features.size(); i++)
+                queue.add(features.createSurfFeature(i));
+            descriptors = queue;
+        }
         return descriptors;
     }
 
     /**
      * @return Associated Points
      */
-    public List<Point2D_F64> getPoints() {
+    public synchronized List<Point2D_F64> getPoints() {
+        if (points == null) {
+            List<Point2D_F64> list = new ArrayList<Point2D_F64>(features.size());
+            double[] x = features.getX();
+            double[] y = features.getY();
+            for (int i = 0; i < features.size(); i++)
+                list.add(new Point2D_F64(x[i], y[i]));
+            points = list;
+        }
         return points;
     }
 
+    /**
+     * @return Packed descriptors and points.  Backing arrays are shared, not copied.
+     */
+    public PackedFeatures getPackedFeatures() {
+        return features;
+    }
+
+    /**
+     * @return Number of features.
+     */
+    public int size() {
+        return features.size();
+    }
+
     /**
      * @return Associated reference image.
      */
@@ -64,8 +117,7 @@ public class DetectionResultArgument {
     @Override
     public String toString() {
         return "DetectionResultArgument{" +
-                "descriptors=" + descriptors +
-                ", points=" + points +
+                "features=" + features +
                 ", image=" + image +
                 '}';
     }
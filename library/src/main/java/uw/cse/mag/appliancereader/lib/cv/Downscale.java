@@ -0,0 +1,26 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+/**
+ * Filters used to halve an image for every level of an {@link ImagePyramid}.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public enum Downscale {
+    BOX("Box"),
+    GAUSSIAN("Gaussian");
+
+    private final String mName;
+
+    private Downscale(String name) {
+        mName = name;
+    }
+
+    public String toString() {
+        return mName;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+}
@@ -0,0 +1,316 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.alg.transform.ii.DerivativeIntegralImage;
+import boofcv.alg.transform.ii.IntegralImageOps;
+import boofcv.alg.transform.ii.IntegralKernel;
+import boofcv.struct.image.ImageFloat32;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Selects a bounded number of the strongest detected features, so that the cost of association and
+ * homography estimation does not grow with the texture of an image.
+ * <b>Features are ranked by detector response.  Equal responses are broken by detection order, so the
+ * selection is deterministic.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public final class FeatureSelection {
+
+    /**
+     * Scale of the smallest Fast Hessian filter, whose lobes are 3 pixels wide.
+     */
+    public static final double BASE_SCALE = 1.2;
+
+    /**
+     * Fraction of its response by which a feature must exceed another to suppress it.
+     */
+    public static final double ANMS_ROBUSTNESS = 0.9;
+
+    /**
+     * Weight of the mixed derivative that corrects for box filters.
+     */
+    private static final double XY_WEIGHT = 0.9;
+
+    private FeatureSelection() {
+        // Utility class.
+    }
+
+    /**
+     * Computes the Fast Hessian response of every feature at its scale: the determinant of the box
+     * filter Hessian of the integral image, normalized by the filter area.
+     *
+     * @param image Image the features were detected in.
+     * @param x X coordinate of every feature.
+     * @param y Y coordinate of every feature.
+     * @param scales Scale of every feature, {@link #BASE_SCALE} for the smallest filter.
+     * @param size Number of features.
+     * @return Response of every feature, larger is stronger.
+     */
+    public static double[] hessianResponse(ImageFloat32 image, double[] x, double[] y, double[] scales, int size) {
+        ImageFloat32 integral = IntegralImageOps.transform(image, null);
+        Map<Integer, IntegralKernel[]> kernels = new HashMap<Integer, IntegralKernel[]>();
+        double[] response = new double[size];
+        for (int i = 0; i < size; i++) {
+            // Filters are 3 odd lobes wide, 9 pixels at the base scale.
+            int lobe = Math.max(1, (int) Math.round(3 * scales[i] / BASE_SCALE));
+            if (lobe % 2 == 0) lobe++;
+            int width = 3 * lobe;
+            IntegralKernel[] kernel = kernels.get(width);
+            if (kernel == null) {
+                kernel = new IntegralKernel[] {
+                        DerivativeIntegralImage.kernelDerivXX(width),
+                        DerivativeIntegralImage.kernelDerivYY(width),
+                        DerivativeIntegralImage.kernelDerivXY(width)};
+                kernels.put(width, kernel);
+            }
+            int px = (int) Math.round(x[i]), py = (int) Math.round(y[i]);
+            double norm = 1.0 / (width * width);
+            double dxx = IntegralImageOps.convolveSparse(integral, kernel[0], px, py) * norm;
+            double dyy = IntegralImageOps.convolveSparse(integral, kernel[1], px, py) * norm;
+            double dxy = IntegralImageOps.convolveSparse(integral, kernel[2], px, py) * norm * XY_WEIGHT;
+            response[i] = dxx * dyy - dxy * dxy;
+        }
+        return response;
+    }
+
+    /**
+     * Selects the strongest features with a bounded min-heap.
+     *
+     * @param response Response of every feature.
+     * @param size Number of features.
+     * @param max Maximum number of features to keep.
+     * @return Indexes of the kept features, strongest first.
+     */
+    public static int[] selectStrongest(double[] response, int size, int max) {
+        if (max <= 0)
+            throw new IllegalArgumentException("FeatureSelection.selectStrongest() Nonpositive maximum");
+        IndexHeap heap = new IndexHeap(response, Math.min(size, max));
+        for (int i = 0; i < size; i++)
+            heap.offer(i);
+        return heap.drain();
+    }
+
+    /**
+     * Selects the strongest features spread over a grid of cells.  Every cell first keeps its own strongest
+     * features up to an equal share of the maximum, the remainder is filled with the strongest features
+     * of any cell.  Textured regions then can't take the whole budget.
+     *
+     * @param response Response of every feature.
+     * @param x X coordinate of every feature.
+     * @param y Y coordinate of every feature.
+     * @param size Number of features.
+     * @param max Maximum number of features to keep.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param rows Number of grid rows.
+     * @param columns Number of grid columns.
+     * @return Indexes of the kept features, strongest first.
+     */
+    public static int[] selectGrid(double[] response, double[] x, double[] y, int size, int max,
+                                   int width, int height, int rows, int columns) {
+        if (max <= 0)
+            throw new IllegalArgumentException("FeatureSelection.selectGrid() Nonpositive maximum");
+        if (rows <= 0 || columns <= 0)
+            throw new IllegalArgumentException("FeatureSelection.selectGrid() Nonpositive grid");
+        int cells = rows * columns;
+        int share = max / cells;
+        boolean[] kept = new boolean[size];
+        int count = 0;
+        if (share > 0) {
+            IndexHeap[] heaps = new IndexHeap[cells];
+            for (int c = 0; c < cells; c++)
+                heaps[c] = new IndexHeap(response, share);
+            for (int i = 0; i < size; i++) {
+                int row = Math.min(rows - 1, Math.max(0, (int) (y[i] * rows / height)));
+                int column = Math.min(columns - 1, Math.max(0, (int) (x[i] * columns / width)));
+                heaps[row * columns + column].offer(i);
+            }
+            for (IndexHeap heap : heaps) {
+                for (int index : heap.drain()) {
+                    kept[index] = true;
+                    count++;
+                }
+            }
+        }
+
+        // Fill the rest of the budget from features of any cell.
+        IndexHeap rest = new IndexHeap(response, Math.min(size - count, max - count));
+        for (int i = 0; i < size; i++) {
+            if (!kept[i]) rest.offer(i);
+        }
+        for (int index : rest.drain())
+            kept[index] = true;
+
+        IndexHeap all = new IndexHeap(response, max);
+        for (int i = 0; i < size; i++) {
+            if (kept[i]) all.offer(i);
+        }
+        return all.drain();
+    }
+
+    /**
+     * Selects a well spread subset with adaptive non-maximal suppression.  The suppression radius of a
+     * feature is the distance to the closest feature that is sufficiently stronger, one whose response
+     * times {@link #ANMS_ROBUSTNESS} still exceeds the response of the feature.
+     * The features with the largest radii are kept, so every kept feature is the strongest of its
+     * neighborhood and the neighborhoods shrink until the budget is filled.
+     * <b>Features are visited strongest first and inserted into a uniform grid of about one feature per
+     * cell once they are sufficiently stronger than the visited feature.  Radii are found by searching
+     * rings of cells outwards, so the cost grows with the number of features rather than its square.</b>
+     *
+     * @param response Response of every feature.
+     * @param x X coordinate of every feature.
+     * @param y Y coordinate of every feature.
+     * @param size Number of features.
+     * @param max Maximum number of features to keep.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @return Indexes of the kept features, largest suppression radius first.
+     */
+    public static int[] selectSuppressed(final double[] response, double[] x, double[] y, int size, int max,
+                                         int width, int height) {
+        if (max <= 0)
+            throw new IllegalArgumentException("FeatureSelection.selectSuppressed() Nonpositive maximum");
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int strength = Double.compare(response[b], response[a]);
+                return strength != 0 ? strength : a.compareTo(b);
+            }
+        });
+
+        // Uniform grid with linked lists of the inserted features of every cell.
+        double cellSize = Math.max(1, Math.sqrt((double) width * height / Math.max(1, size)));
+        int columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        int rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        int[] head = new int[rows * columns];
+        Arrays.fill(head, -1);
+        int[] next = new int[size];
+        int[] cellX = new int[size], cellY = new int[size];
+        for (int i = 0; i < size; i++) {
+            cellX[i] = Math.min(columns - 1, Math.max(0, (int) (x[i] / cellSize)));
+            cellY[i] = Math.min(rows - 1, Math.max(0, (int) (y[i] / cellSize)));
+        }
+
+        double[] radius = new double[size];
+        int inserted = 0;
+        for (int p = 0; p < size; p++) {
+            int i = order[p];
+            while (inserted < p && response[order[inserted]] * ANMS_ROBUSTNESS > response[i]) {
+                int j = order[inserted++];
+                int cell = cellY[j] * columns + cellX[j];
+                next[j] = head[cell];
+                head[cell] = j;
+            }
+            radius[i] = inserted == 0 ? Double.MAX_VALUE : nearestSquared(i, x, y, cellX, cellY, head, next,
+                    rows, columns, cellSize);
+        }
+        return selectStrongest(radius, size, max);
+    }
+
+    /**
+     * Searches rings of grid cells around a feature for the closest inserted feature.
+     *
+     * @return Squared distance to the closest inserted feature.
+     */
+    private static double nearestSquared(int i, double[] x, double[] y, int[] cellX, int[] cellY,
+                                         int[] head, int[] next, int rows, int columns, double cellSize) {
+        double best = Double.MAX_VALUE;
+        int rings = Math.max(rows, columns);
+        for (int ring = 0; ring <= rings; ring++) {
+            // Features of this ring are at least ring - 1 cells away.
+            double reach = (ring - 1) * cellSize;
+            if (ring > 1 && reach * reach >= best) break;
+            int top = cellY[i] - ring, bottom = cellY[i] + ring;
+            int left = cellX[i] - ring, right = cellX[i] + ring;
+            for (int row = Math.max(0, top); row <= Math.min(rows - 1, bottom); row++) {
+                boolean edge = row == top || row == bottom;
+                for (int column = Math.max(0, left); column <= Math.min(columns - 1, right); column++) {
+                    if (!edge && column != left && column != right) continue;
+                    for (int j = head[row * columns + column]; j != -1; j = next[j]) {
+                        double dx = x[j] - x[i], dy = y[j] - y[i];
+                        best = Math.min(best, dx * dx + dy * dy);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Min-heap of feature indexes that keeps the strongest offered features up to a capacity.
+     */
+    private static class IndexHeap {
+
+        private final double[] response;
+        private final int[] heap;
+        private int size;
+
+        private IndexHeap(double[] response, int capacity) {
+            this.response = response;
+            this.heap = new int[Math.max(0, capacity)];
+        }
+
+        /**
+         * @return Whether feature a is weaker than feature b.  Later features lose ties.
+         */
+        private boolean weaker(int a, int b) {
+            if (response[a] != response[b]) return response[a] < response[b];
+            return a > b;
+        }
+
+        private void offer(int index) {
+            if (heap.length == 0) return;
+            if (size < heap.length) {
+                int position = size++;
+                while (position > 0) {
+                    int parent = (position - 1) >>> 1;
+                    if (!weaker(index, heap[parent])) break;
+                    heap[position] = heap[parent];
+                    position = parent;
+                }
+                heap[position] = index;
+            } else if (weaker(heap[0], index)) {
+                siftDown(index);
+            }
+        }
+
+        /**
+         * Replaces the weakest feature and restores the heap.
+         */
+        private void siftDown(int index) {
+            int position = 0;
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= size) break;
+                if (child + 1 < size && weaker(heap[child + 1], heap[child])) child++;
+                if (!weaker(heap[child], index)) break;
+                heap[position] = heap[child];
+                position = child;
+            }
+            heap[position] = index;
+        }
+
+        /**
+         * Empties the heap.
+         *
+         * @return Indexes of the kept features, strongest first.
+         */
+        private int[] drain() {
+            int[] sorted = new int[size];
+            while (size > 0) {
+                sorted[size - 1] = heap[0];
+                int last = heap[--size];
+                if (size > 0) siftDown(last);
+            }
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.abst.feature.tracker.PkltConfig;
+import boofcv.abst.filter.derivative.ImageGradient;
+import boofcv.abst.geo.Estimate1ofEpipolar;
+import boofcv.alg.tracker.klt.KltTrackFault;
+import boofcv.alg.tracker.klt.PyramidKltFeature;
+import boofcv.alg.tracker.klt.PyramidKltTracker;
+import boofcv.alg.transform.pyramid.PyramidOps;
+import boofcv.core.image.ConvertBufferedImage;
+import boofcv.factory.filter.derivative.FactoryDerivative;
+import boofcv.factory.tracker.FactoryTrackerAlg;
+import boofcv.factory.transform.pyramid.FactoryPyramid;
+import boofcv.io.image.SimpleImageSequence;
+import boofcv.io.wrapper.DefaultMediaManager;
+import boofcv.struct.geo.AssociatedPair;
+import boofcv.struct.image.ImageDataType;
+import boofcv.struct.image.ImageFloat32;
+import boofcv.struct.pyramid.PyramidDiscrete;
+import org.ddogleg.fitting.modelset.ModelMatcher;
+import org.ejml.data.DenseMatrix64F;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Associates a sequence of frames with the reference image of a {@link HomographyCalculator}.
+ * Only keyframes pay for detection, description and association.  The inliers of a keyframe
+ * are carried through the following frames with a pyramidal KLT tracker, and the homography of every
+ * intermediate frame is estimated from the tracked points with the robust estimator of the calculator.
+ * Tracks that don't fit are dropped, and a new keyframe is taken as soon as fewer than the minimum number
+ * of tracks survive or no homography is found.
+ * <b>Frames can come one at a time, from a directory of images or from a video file.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class FrameSequenceAssociator {
+
+    // Default Values.
+    public static final int DEFAULT_MIN_TRACKS = 20;
+
+    /**
+     * Calculator that associates the keyframes.
+     */
+    private final HomographyCalculator calculator;
+
+    /**
+     * Tracker state.
+     */
+    private final PkltConfig<ImageFloat32, ImageFloat32> config;
+    private final PyramidKltTracker<ImageFloat32, ImageFloat32> tracker;
+    private final PyramidDiscrete<ImageFloat32> pyramid;
+    private final ImageGradient<ImageFloat32, ImageFloat32> gradient;
+    private ImageFloat32[] derivX, derivY;
+
+    /**
+     * Tracked features and the reference points they belong to.
+     */
+    private final List<PyramidKltFeature> tracks;
+    private final List<AssociatedPair> matches;
+
+    /**
+     * Minimum number of tracks before a new keyframe is taken.
+     */
+    private int minTracks = DEFAULT_MIN_TRACKS;
+
+    /**
+     * State of the last frame.
+     */
+    private DenseMatrix64F homography;
+    private boolean keyframe;
+    private int frameNumber = -1;
+
+    /**
+     * Update listeners.
+     */
+    private final List<OnFrameProcessedListener> listeners;
+
+    /**
+     * Creates a frame sequence associator.  The reference image, associator and parameters of the
+     * calculator define how keyframes are associated.
+     *
+     * @param calculator Calculator with a reference image and an image associator.
+     */
+    public FrameSequenceAssociator(HomographyCalculator calculator) {
+        if (calculator == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null calculator");
+        this.calculator = calculator;
+
+        config = PkltConfig.createDefault(ImageFloat32.class, ImageFloat32.class);
+        tracker = FactoryTrackerAlg.kltPyramid(config.config, ImageFloat32.class, ImageFloat32.class);
+        pyramid = FactoryPyramid.discreteGaussian(config.pyramidScaling, -1, 2, true, ImageFloat32.class);
+        gradient = FactoryDerivative.sobel(ImageFloat32.class, ImageFloat32.class);
+
+        tracks = new ArrayList<PyramidKltFeature>();
+        matches = new ArrayList<AssociatedPair>();
+        listeners = new ArrayList<OnFrameProcessedListener>();
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Setters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Sets the number of tracks below which a new keyframe is taken.
+     *
+     * @param minTracks Minimum number of tracks, at least 4 to estimate a homography.
+     */
+    public void setMinTracks(int minTracks) {
+        if (minTracks < 4)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".setMinTracks() " +
+                    "Need at least 4 tracks");
+        this.minTracks = minTracks;
+    }
+
+    /**
+     * Adds a listener that is notified after every frame.
+     *
+     * @param listener Listener to add.
+     */
+    public void addListener(OnFrameProcessedListener listener) {
+        if (listener == null) return;
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to remove.
+     * @return Whether the listener was removed.
+     */
+    public boolean removeListener(OnFrameProcessedListener listener) {
+        return listeners.remove(listener);
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Mutators
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Processes the next frame of the sequence.
+     *
+     * @param frame Next frame.
+     * @return Whether the frame was processed as a keyframe.
+     */
+    public boolean process(BufferedImage frame) {
+        if (frame == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".process() Null frame");
+        frameNumber++;
+
+        ImageFloat32 gray = ConvertBufferedImage.convertFromSingle(frame, null, ImageFloat32.class);
+        setTrackerImage(gray);
+
+        keyframe = false;
+        if (!tracks.isEmpty())
+            track(gray);
+        if (tracks.size() < minTracks || !estimateHomography())
+            spawnKeyframe(frame);
+
+        for (OnFrameProcessedListener listener : listeners)
+            listener.onFrameProcessed(frameNumber, getMatches(), homography, keyframe);
+        return keyframe;
+    }
+
+    /**
+     * Processes every image of a directory in name order.  Images are read one at a time.
+     *
+     * @param directory Directory of frames.
+     * @return Number of frames processed.
+     * @throws IOException A frame could not be read.
+     */
+    public int processDirectory(File directory) throws IOException {
+        if (directory == null || !directory.isDirectory())
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".processDirectory() " +
+                    "Not a directory: " + directory);
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("Unable to list " + directory);
+        Arrays.sort(files);
+        int count = 0;
+        for (File file : files) {
+            if (!file.isFile()) continue;
+            BufferedImage frame = ImageIO.read(file);
+            if (frame == null) continue; // Not an image.
+            process(frame);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Processes every frame of a video file that BoofCV can decode.
+     *
+     * @param fileName Video file.
+     * @return Number of frames processed.
+     */
+    public int processVideo(String fileName) {
+        SimpleImageSequence<ImageFloat32> sequence = DefaultMediaManager.INSTANCE.openVideo(
+                fileName, ImageDataType.single(ImageFloat32.class));
+        if (sequence == null)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".processVideo() " +
+                    "Unable to open " + fileName);
+        int count = 0;
+        try {
+            while (sequence.hasNext()) {
+                sequence.next();
+                BufferedImage frame = sequence.getGuiImage();
+                process(frame);
+                count++;
+            }
+        } finally {
+            sequence.close();
+        }
+        return count;
+    }
+
+    /**
+     * Drops all tracks so the next frame is a keyframe.
+     */
+    public void reset() {
+        tracks.clear();
+        matches.clear();
+        homography = null;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Getters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * @return Matches from the reference image to the last frame.
+     */
+    public List<AssociatedPair> getMatches() {
+        return new ArrayList<AssociatedPair>(matches);
+    }
+
+    /**
+     * @return Homography from the reference image to the last frame, null if there is none.
+     */
+    public DenseMatrix64F getHomography() {
+        return homography;
+    }
+
+    /**
+     * @return Whether the last frame was a keyframe.
+     */
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    /**
+     * @return Index of the last frame, -1 before the first frame.
+     */
+    public int getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * @return Minimum number of tracks before a new keyframe is taken.
+     */
+    public int getMinTracks() {
+        return minTracks;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Private helper methods
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Builds the image pyramid and gradients of the frame for the tracker.
+     */
+    private void setTrackerImage(ImageFloat32 gray) {
+        pyramid.process(gray);
+        if (derivX == null) {
+            derivX = PyramidOps.declareOutput(pyramid, ImageFloat32.class);
+            derivY = PyramidOps.declareOutput(pyramid, ImageFloat32.class);
+        } else {
+            PyramidOps.reshapeOutput(pyramid, derivX);
+            PyramidOps.reshapeOutput(pyramid, derivY);
+        }
+        PyramidOps.gradient(pyramid, gradient, derivX, derivY);
+        tracker.setImage(pyramid, derivX, derivY);
+    }
+
+    /**
+     * Tracks every feature into the frame and drops the ones that are lost.
+     */
+    private void track(ImageFloat32 gray) {
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            PyramidKltFeature feature = tracks.get(i);
+            KltTrackFault fault = tracker.track(feature);
+            if (fault == KltTrackFault.SUCCESS && feature.x >= 0 && feature.y >= 0
+                    && feature.x < gray.width && feature.y < gray.height) {
+                matches.get(i).p2.set(feature.x, feature.y);
+            } else {
+                tracks.remove(i);
+                matches.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Associates the frame with the reference image and starts tracking the inliers.
+     */
+    private void spawnKeyframe(BufferedImage frame) {
+        keyframe = true;
+        tracks.clear();
+        matches.clear();
+        homography = null;
+
+        // The calculator ignores an image it already holds, video decoders may reuse their frame.
+        if (frame == calculator.getOtherImage())
+            frame = copy(frame);
+        calculator.setOtherImage(frame);
+        List<AssociatedPair> inliers = calculator.getInliers();
+        if (inliers == null || inliers.size() < 4) return;
+        homography = calculator.getHomography();
+
+        for (AssociatedPair pair : inliers) {
+            PyramidKltFeature feature = new PyramidKltFeature(pyramid.getNumLayers(), config.templateRadius);
+            feature.setPosition((float) pair.p2.x, (float) pair.p2.y);
+            tracker.setDescription(feature);
+            tracks.add(feature);
+            matches.add(new AssociatedPair(pair.p1.x, pair.p1.y, pair.p2.x, pair.p2.y));
+        }
+    }
+
+    /**
+     * Estimates the homography of an intermediate frame from the tracked points.  Tracks that drifted
+     * away from the homography found by the robust estimator are dropped, and the homography is estimated
+     * again from the remaining tracks.
+     *
+     * @return False if no homography was found or too few tracks fit it.
+     */
+    private boolean estimateHomography() {
+        homography = null;
+        ModelMatcher<DenseMatrix64F, AssociatedPair> robust = calculator.getParameters().getModelMatcher();
+        if (!robust.process(matches)) return false;
+
+        boolean[] fit = new boolean[matches.size()];
+        for (int i = 0; i < robust.getMatchSet().size(); i++)
+            fit[robust.getInputIndex(i)] = true;
+        for (int i = matches.size() - 1; i >= 0; i--) {
+            if (fit[i]) continue;
+            tracks.remove(i);
+            matches.remove(i);
+        }
+        if (tracks.size() < minTracks) return false;
+
+        Estimate1ofEpipolar computer = calculator.getParameters().getHomographyComputer();
+        DenseMatrix64F H = new DenseMatrix64F(3, 3);
+        if (!computer.process(matches, H)) return false;
+        homography = H;
+        return true;
+    }
+
+    /**
+     * @return Deep copy of the image.
+     */
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        copy.getGraphics().drawImage(image, 0, 0, null);
+        return copy;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Listener interface
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Listener for processed frames.
+     */
+    public interface OnFrameProcessedListener {
+
+        /**
+         * Notifies that a frame was processed.
+         *
+         * @param frameNumber Index of the frame.
+         * @param matches Matches from the reference image to the frame.
+         * @param homography Homography from the reference image to the frame, null if there is none.
+         * @param keyframe Whether the frame was a keyframe.
+         */
+        public void onFrameProcessed(int frameNumber, List<AssociatedPair> matches,
+                                     DenseMatrix64F homography, boolean keyframe);
+    }
+}
@@ -1,9 +1,11 @@
 package uw.cse.mag.appliancereader.lib.cv;
 
 import boofcv.abst.geo.Estimate1ofEpipolar;
+import boofcv.abst.geo.fitting.DistanceFromModelResidualN;
 import boofcv.struct.geo.AssociatedPair;
 import org.ddogleg.fitting.modelset.ModelMatcher;
 import org.ejml.data.DenseMatrix64F;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.ErrorMetric;
 import uw.cse.mag.appliancereader.lib.cv.params.homography.HomographyParams;
 
 import java.awt.image.BufferedImage;
@@ -45,6 +47,17 @@ public class HomographyCalculator implements
      */
     private DenseMatrix64F homography;
 
+    /**
+     * Whether the current inliers were found with the previous homography instead of the robust estimator.
+     */
+    private boolean warmStarted;
+
+    /**
+     * Distance of a match from a homography and the error metric it was created for.
+     */
+    private DistanceFromModelResidualN<DenseMatrix64F, AssociatedPair> metric;
+    private ErrorMetric metricType;
+
     /**
      * List of all listeners to be notified when the homography has changed.
      */
@@ -93,18 +106,13 @@ public class HomographyCalculator implements
         if (this.imageAssociator != null)
             this.imageAssociator.removeListener(this);
 
-        // Update with the new Image associator.
+        // Update with the new Image associator, matches of the old one can't warm start.
         this.imageAssociator = imageAssociator;
+        clearEstimate();
         this.imageAssociator.addListener(this);
 
-        // Attempt to set the reference image.
-        if (referenceImage != null) {
-            this.imageAssociator.setReferenceImage(referenceImage);
-        }
-        // Attempt to set the other image.
-        if (otherImage != null) {
-            this.imageAssociator.setOtherImage(otherImage);
-        }
+        // Attempt to set the reference and other image, describing both at once when possible.
+        this.imageAssociator.setImages(referenceImage, otherImage);
     }
 
     /**
@@ -121,6 +129,8 @@ public class HomographyCalculator implements
         // Stop if this image is the current image.
         if (referenceImg.equals(this.referenceImage)) return;
         this.referenceImage = referenceImg;
+        // The homography maps a different reference, so it can't warm start.
+        clearEstimate();
 
         // If the image associator is set.
         if (this.imageAssociator != null)
@@ -161,6 +171,20 @@ public class HomographyCalculator implements
         return listeners.remove(listener);
     }
 
+    /**
+     * Forgets the homography and inliers so the next matches are estimated from scratch, and notifies
+     * listeners that there is no homography anymore.
+     */
+    private void clearEstimate() {
+        DenseMatrix64F oldHomo = this.homography;
+        homography = null;
+        inliers = null;
+        warmStarted = false;
+        if (oldHomo == null) return;
+        for (OnHomographyChangedListener listener: listeners)
+            listener.onHomographyChanged(null, oldHomo);
+    }
+
     /**
      * Computes the inlier matches via RANSAC.  It uses all the matches and runs the algorithm.
      *
@@ -171,11 +195,17 @@ public class HomographyCalculator implements
         if (matches == null)
             throw new NullPointerException(getClass().getSimpleName() +
                     ".computeInliers() Matches cannot be null");
-        if (matches.isEmpty()) return null;
+        if (matches.isEmpty()) {
+            clearEstimate();
+            return null;
+        }
 
         // Using RANSAC to estimate the homography.
         ModelMatcher<DenseMatrix64F, AssociatedPair> robustHomography = parameters.getModelMatcher();
-        if (!robustHomography.process(matches)) return null;
+        if (!robustHomography.process(matches)) {
+            clearEstimate();
+            return null;
+        }
 
         // Return the list of inlier matches.
         inliers = new ArrayList<AssociatedPair>(robustHomography.getMatchSet());
@@ -183,7 +213,47 @@ public class HomographyCalculator implements
     }
 
     /**
-     * Computes the homography using the inlier matches.
+     * Scores the previous homography against the new matches.  When enough of them fit, the homography is
+     * refined once from them and the matches that fit the refined homography become the inliers.  This
+     * replaces the robust estimator with two verification passes.
+     *
+     * @param matches All matches between points.
+     * @return Null if there is no previous homography or too few matches fit it, List of inlier matches.
+     */
+    private List<AssociatedPair> warmStartInliers(List<AssociatedPair> matches) {
+        if (homography == null || matches.isEmpty()) return null;
+
+        List<AssociatedPair> fit = selectFit(matches, homography);
+        if (fit.size() < 4 || fit.size() < parameters.getWarmStartRatio() * matches.size()) return null;
+
+        // Local refinement, the previous inliers are biased towards the previous frame.
+        DenseMatrix64F refined = new DenseMatrix64F(3, 3);
+        if (parameters.getHomographyComputer().process(fit, refined)) {
+            List<AssociatedPair> refinedFit = selectFit(matches, refined);
+            if (refinedFit.size() >= fit.size())
+                fit = refinedFit;
+        }
+        inliers = fit;
+        return inliers;
+    }
+
+    /**
+     * @return The matches closer to the homography than the threshold of the parameters.
+     */
+    private List<AssociatedPair> selectFit(List<AssociatedPair> matches, DenseMatrix64F H) {
+        DistanceFromModelResidualN<DenseMatrix64F, AssociatedPair> metric = getMetric();
+        metric.setModel(H);
+        List<AssociatedPair> fit = new ArrayList<AssociatedPair>(matches.size());
+        for (AssociatedPair pair : matches) {
+            if (metric.computeDistance(pair) < parameters.getThresholdFit())
+                fit.add(pair);
+        }
+        return fit;
+    }
+
+    /**
+     * Computes the homography using the inlier matches.  With guided matching enabled the homography is
+     * refined by {@link #refineGuided(DenseMatrix64F)} before listeners are notified.
      *
      * @return The Homography Matrix.
      */
@@ -194,12 +264,18 @@ public class HomographyCalculator implements
         }
         if (inliers.size() < 4) {
             // Not enough matches.
+            clearEstimate();
             return null;
         }
 
         Estimate1ofEpipolar computeHomography = parameters.getHomographyComputer();
         DenseMatrix64F H = new DenseMatrix64F(3, 3);
-        computeHomography.process(inliers, H);
+        if (!computeHomography.process(inliers, H)) {
+            clearEstimate();
+            return null;
+        }
+        if (parameters.isGuidedMatching())
+            H = refineGuided(H);
         DenseMatrix64F oldHomo = this.homography;
         homography = H;
 
@@ -209,6 +285,40 @@ public class HomographyCalculator implements
         return homography;
     }
 
+    /**
+     * Associates the images again guided by the homography and estimates the homography again from the
+     * guided matches that fit it within the threshold of the parameters.  The guided matches replace the
+     * inliers only when there are at least as many of them.
+     *
+     * @param H Homography estimated from the inliers.
+     * @return The refined homography, or the argument when guiding does not add inliers.
+     */
+    private DenseMatrix64F refineGuided(DenseMatrix64F H) {
+        // The scorer must be evaluated per pair, otherwise keep the unguided result.
+        if (imageAssociator == null || !imageAssociator.supportsGuidedMatching()) return H;
+        List<AssociatedPair> guided = imageAssociator.associateGuided(H, parameters.getGuidedWindow());
+        if (guided == null) return H;
+
+        List<AssociatedPair> fit = selectFit(guided, H);
+        if (fit.size() < Math.max(4, inliers.size())) return H;
+
+        DenseMatrix64F refined = new DenseMatrix64F(3, 3);
+        if (!parameters.getHomographyComputer().process(fit, refined)) return H;
+        inliers = fit;
+        return refined;
+    }
+
+    /**
+     * @return Distance of the current error metric, reused while the metric doesn't change.
+     */
+    private DistanceFromModelResidualN<DenseMatrix64F, AssociatedPair> getMetric() {
+        if (metric == null || metricType != parameters.getErrorMetric()) {
+            metricType = parameters.getErrorMetric();
+            metric = metricType.getMetric();
+        }
+        return metric;
+    }
+
     ///////////////////////////////////////////////////////////////
     ////    Getters
     ///////////////////////////////////////////////////////////////
@@ -232,6 +342,20 @@ public class HomographyCalculator implements
         return homography;
     }
 
+    /**
+     * @return Whether the current homography was warm started from the previous one.
+     */
+    public boolean isWarmStarted() {
+        return warmStarted;
+    }
+
+    /**
+     * @return The parameters used to solve for the homography.
+     */
+    public HomographyParams getParameters() {
+        return parameters;
+    }
+
     /**
      * Returns the image associator between images.
      *
@@ -273,10 +397,16 @@ public class HomographyCalculator implements
     public void onModelMatcherChanged(ModelMatcher<DenseMatrix64F, AssociatedPair> newVal, ModelMatcher<DenseMatrix64F, AssociatedPair> oldVal) {
         if (imageAssociator == null) return;
         List<AssociatedPair> matches = imageAssociator.getMatches();
-        if (matches == null || matches.isEmpty()) return;
+        if (matches == null || matches.isEmpty()) {
+            clearEstimate();
+            return;
+        }
 
         // Compute the inlier matches
-        computeHomography(computeInliers(matches));
+        warmStarted = false;
+        List<AssociatedPair> inliers = computeInliers(matches);
+        if (inliers != null)
+            computeHomography(inliers);
     }
 
     @Override
@@ -284,7 +414,14 @@ public class HomographyCalculator implements
         if (matches == null)
             throw new IllegalStateException(getClass().getSimpleName() + "onMatchesUpdate(), " +
                     "Can't have null matches.");
-        computeHomography(computeInliers(matches));
+        List<AssociatedPair> inliers = null;
+        if (parameters.isWarmStart())
+            inliers = warmStartInliers(matches);
+        warmStarted = inliers != null;
+        if (inliers == null)
+            inliers = computeInliers(matches);
+        if (inliers != null)
+            computeHomography(inliers);
     }
 
     /////////////////////////////////////////////////////////////////
@@ -299,8 +436,8 @@ public class HomographyCalculator implements
         /**
          * Notification that the homography matrix has changed.
          *
-         * @param newHomography The new homography.
-         * @param oldHomography The old homography.
+         * @param newHomography The new homography, null if none could be estimated.
+         * @param oldHomography The old homography, may be null.
          */
         public void onHomographyChanged(DenseMatrix64F newHomography, DenseMatrix64F oldHomography);
 
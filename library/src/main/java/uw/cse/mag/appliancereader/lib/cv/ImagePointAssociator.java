@@ -2,7 +2,6 @@ package uw.cse.mag.appliancereader.lib.cv;
 
 import boofcv.abst.feature.associate.AssociateDescription;
 import boofcv.abst.feature.detdesc.DetectDescribePoint;
-import boofcv.alg.feature.UtilFeature;
 import boofcv.core.image.ConvertBufferedImage;
 import boofcv.struct.FastQueue;
 import boofcv.struct.feature.AssociatedIndex;
@@ -10,14 +9,29 @@ import boofcv.struct.feature.SurfFeature;
 import boofcv.struct.geo.AssociatedPair;
 import boofcv.struct.image.ImageFloat32;
 import georegression.struct.point.Point2D_F64;
+import org.ejml.data.DenseMatrix64F;
+import uw.cse.mag.appliancereader.lib.cv.associate.AssociatePacked;
+import uw.cse.mag.appliancereader.lib.cv.associate.EuclideanScoreKernel;
+import uw.cse.mag.appliancereader.lib.cv.associate.ScoreTable;
+import uw.cse.mag.appliancereader.lib.cv.params.core.Associater;
+import uw.cse.mag.appliancereader.lib.cv.params.core.DescriptorPrecision;
 import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
 import uw.cse.mag.appliancereader.lib.cv.params.core.OnFeatureDetectionParamsChangedListener;
+import uw.cse.mag.appliancereader.lib.cv.params.core.Scorer;
+import uw.cse.mag.appliancereader.lib.data.RectangularBoundary;
 
 import java.awt.image.BufferedImage;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Class that is a wrapper around associating points within images.  This is done by defining an instance of
@@ -30,6 +44,10 @@ import java.util.List;
  */
 public class ImagePointAssociator implements OnFeatureDetectionParamsChangedListener {
 
+    // Default Values.
+    public static final int DEFAULT_MAX_PIXELS = Integer.MAX_VALUE;
+    public static final Downscale DEFAULT_DOWNSCALE = Downscale.BOX;
+
     /**
      * Strong reference to parameters.
      */
@@ -55,6 +73,48 @@ public class ImagePointAssociator implements OnFeatureDetectionParamsChangedList
      */
     private Collection<UpdateListener> listeners;
 
+    /**
+     * Optional persistent cache of detection results.  Null when disabled.
+     */
+    private DescriptorCache descriptorCache;
+
+    /**
+     * Executor used to describe the reference image concurrently with the other image.
+     * Null when images are described on the caller thread only.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Detector and describer owned by the worker thread.  Lazily created from the parameters
+     * because the current detector of the parameters is used by the caller thread.
+     */
+    private DetectDescribePoint<ImageFloat32, SurfFeature> workerDetDesc;
+
+    /**
+     * Associater for mapped reference features.  Lazily created from the parameters.
+     */
+    private AssociatePacked packedAssociater;
+
+    /**
+     * Regions that restrict detection in each image.  Null to describe the whole image.
+     */
+    private List<RectangularBoundary> referenceRegions, otherRegions;
+
+    /**
+     * Scores of the last associated feature sets and the state they were computed with.
+     */
+    private ScoreTable scoreTable;
+    private EuclideanScoreKernel scoreKernel = EuclideanScoreKernel.getDefault();
+    private DetectionResultArgument scoreTableSource, scoreTableDestination;
+    private Scorer scoreTableScorer;
+    private boolean scoreTableSquared;
+
+    /**
+     * Processing resolution.  Images with more pixels are halved until they fit.
+     */
+    private int maxPixels = DEFAULT_MAX_PIXELS;
+    private Downscale downscale = DEFAULT_DOWNSCALE;
+
     /**
      * Creates an Image Associater defined by a specific set of
      * feature detection parameters.
@@ -85,7 +145,7 @@ public class ImagePointAssociator implements OnFeatureDetectionParamsChangedList
         if (image == null) return;
         if (image.equals(referenceImage)) return;
         this.referenceImage = image;
-        this.referenceImageFeatures = describeImage(image);
+        this.referenceImageFeatures = describeImage(image, referenceRegions);
         update();
     }
 
@@ -98,7 +158,115 @@ public class ImagePointAssociator implements OnFeatureDetectionParamsChangedList
         if (image == null) return;
         if (image.equals(otherImage)) return;
         this.otherImage = image;
-        this.otherImageFeatures = describeImage(image);
+        this.otherImageFeatures = describeImage(image, otherRegions);
+        update();
+    }
+
+    /**
+     * Sets the cache used to avoid re-describing images that were described before with
+     * identical detection parameters.
+     *
+     * @param cache Cache to use, null to disable caching.
+     */
+    public void setDescriptorCache(DescriptorCache cache) {
+        this.descriptorCache = cache;
+    }
+
+    /**
+     * Sets the executor used to describe both images at the same time.  While a worker describes
+     * the reference image with its own detector, the caller thread describes the other image.
+     *
+     * @param executor Executor for concurrent description, null to describe sequentially.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the pool that Euclidean scores are computed in.  By default a shared pool with one thread
+     * per processor is used.
+     *
+     * @param pool Pool for Euclidean scoring.
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        if (pool == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".setForkJoinPool() Null pool");
+        this.scoreKernel = new EuclideanScoreKernel(pool);
+    }
+
+    /**
+     * Restricts detection in the reference image to the argument regions, for example the display
+     * boundaries of an appliance from {@link RegionsOfInterest#of}.  The reference image is described again.
+     *
+     * @param regions Regions in reference image coordinates, null to describe the whole image.
+     */
+    public void setReferenceRegions(Collection<RectangularBoundary> regions) {
+        this.referenceRegions = regions == null ? null : new ArrayList<RectangularBoundary>(regions);
+        if (referenceImage == null) return;
+        this.referenceImageFeatures = describeImage(referenceImage, referenceRegions);
+        update();
+    }
+
+    /**
+     * Restricts detection in the other image to the argument regions, for example a padded projection
+     * of the reference regions with the previous homography from {@link RegionsOfInterest#project}.
+     * The other image is described again.
+     *
+     * @param regions Regions in other image coordinates, null to describe the whole image.
+     */
+    public void setOtherRegions(Collection<RectangularBoundary> regions) {
+        this.otherRegions = regions == null ? null : new ArrayList<RectangularBoundary>(regions);
+        if (otherImage == null) return;
+        this.otherImageFeatures = describeImage(otherImage, otherRegions);
+        update();
+    }
+
+    /**
+     * Sets the processing resolution.  Images with more than maxPixels pixels are halved with the
+     * argument filter until they fit, and the detected points are mapped back to the coordinates of
+     * the original image.  This bounds the time spent describing an image regardless of its resolution.
+     * Both images are described again with the new resolution.
+     *
+     * @param maxPixels Maximum number of pixels to process, {@link #DEFAULT_MAX_PIXELS} for no limit.
+     * @param downscale Filter used to halve the images.
+     */
+    public void setProcessingResolution(int maxPixels, Downscale downscale) {
+        if (maxPixels <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".setProcessingResolution() " +
+                    "Pixel budget must be positive");
+        if (downscale == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".setProcessingResolution() " +
+                    "Null downscale");
+        if (this.maxPixels == maxPixels && this.downscale == downscale) return;
+        this.maxPixels = maxPixels;
+        this.downscale = downscale;
+        describeBoth();
+        update();
+    }
+
+    /**
+     * Sets both images of this associator.  When an executor is set and both images
+     * changed, the two images are described concurrently.
+     *
+     * @param reference Image to set as reference image, null to keep the current one.
+     * @param other Image to set as other image, null to keep the current one.
+     */
+    public void setImages(BufferedImage reference, BufferedImage other) {
+        boolean referenceChanged = reference != null && !reference.equals(referenceImage);
+        boolean otherChanged = other != null && !other.equals(otherImage);
+        if (referenceChanged && otherChanged) {
+            this.referenceImage = reference;
+            this.otherImage = other;
+            describeBoth();
+        } else if (referenceChanged) {
+            this.referenceImage = reference;
+            this.referenceImageFeatures = describeImage(reference, referenceRegions);
+        } else if (otherChanged) {
+            this.otherImage = other;
+            this.otherImageFeatures = describeImage(other, otherRegions);
+        } else {
+            return;
+        }
         update();
     }
 
@@ -106,6 +274,54 @@ public class ImagePointAssociator implements OnFeatureDetectionParamsChangedList
     ////    Mutators
     ///////////////////////////////////////////////////////////////
 
+    /**
+     * Describes the reference and the other image.  If an executor is present
+     * the reference image is described by a worker while the caller thread describes the other image.
+     */
+    private void describeBoth() {
+        if (executor == null || referenceImage == null || otherImage == null) {
+            this.referenceImageFeatures = describeImage(referenceImage, referenceRegions);
+            this.otherImageFeatures = describeImage(otherImage, otherRegions);
+            return;
+        }
+
+        if (workerDetDesc == null)
+            workerDetDesc = parameters.newDetectorAndDescriber();
+        final DetectDescribePoint<ImageFloat32, SurfFeature> detDesc = workerDetDesc;
+        final BufferedImage image = referenceImage;
+        final List<RectangularBoundary> regions = referenceRegions;
+        Future<DetectionResultArgument> reference = executor.submit(
+                new Callable<DetectionResultArgument>() {
+                    @Override
+                    public DetectionResultArgument call() throws Exception {
+                        return describeImage(convert(image), regions, detDesc);
+                    }
+                });
+
+        // Describe the other image on this thread in the mean time.
+        DetectionResultArgument other;
+        try {
+            other = describeImage(otherImage, otherRegions);
+        } catch (RuntimeException e) {
+            reference.cancel(true);
+            throw e;
+        }
+
+        try {
+            this.referenceImageFeatures = reference.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(getClass().getSimpleName() + ".describeBoth() " +
+                    "Interrupted while describing reference image");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(getClass().getSimpleName() + ".describeBoth() " +
+                    "Unable to describe reference image", e.getCause());
+        }
+        this.otherImageFeatures = other;
+    }
+
     /**
      * Update the current state.
      */
@@ -133,28 +349,210 @@ public class ImagePointAssociator implements OnFeatureDetectionParamsChangedList
             DetectionResultArgument second) {
 
         // Associate features between the two images
-        AssociateDescription<SurfFeature> associater =
-                this.parameters.getCurrentAssociater();
-        associater.setSource(first.getDescriptors());
-        associater.setDestination(second.getDescriptors());
-        associater.associate();
+        FastQueue<AssociatedIndex> matchIndexes;
+        Associater mode = this.parameters.getAssociater();
+        if (mode == Associater.GREEDY || mode == Associater.RATIO_TEST) {
+            // Exhaustive associaters only filter the cached scores, with the same thresholds as
+            // the greedy and ratio test associaters of the parameters.
+            ScoreTable table = getScoreTable(first, second);
+            if (mode == Associater.GREEDY)
+                matchIndexes = table.selectGreedy(parameters.getMaxDistance(), parameters.isBackwardsValidated());
+            else
+                matchIndexes = table.selectRatio(parameters.getScoreRatio(), parameters.getMaxDistance(),
+                        parameters.isBackwardsValidated());
+        } else {
+            AssociateDescription<SurfFeature> associater =
+                    this.parameters.getCurrentAssociater();
+            associater.setSource(first.getDescriptors());
+            associater.setDestination(second.getDescriptors());
+            associater.associate();
+            matchIndexes = associater.getMatches();
+        }
 
         // Create the final list of matches between images.
         List<AssociatedPair> matches = new ArrayList<AssociatedPair>();
-        FastQueue<AssociatedIndex> matchIndexes = associater.getMatches();
+        double[] x1 = first.getPackedFeatures().getX(), y1 = first.getPackedFeatures().getY();
+        double[] x2 = second.getPackedFeatures().getX(), y2 = second.getPackedFeatures().getY();
         // Compile the associated points between the images.
         for( int i = 0; i < matchIndexes.size; i++) {
             AssociatedIndex a = matchIndexes.get(i);
-            AssociatedPair p = new AssociatedPair(
-                    first.getPoints().get(a.src),
-                    second.getPoints().get(a.dst));
-            matches.add(p);
+            matches.add(new ScoredAssociatedPair(x1[a.src], y1[a.src], x2[a.dst], y2[a.dst], a.fitScore));
         }
 
         // Return the new Associated points.
         return matches;
     }
 
+    /**
+     * Returns the score table of the two feature sets.  The table is computed again only when
+     * the features or the scorer changed, not when thresholds or validation changed.
+     * Euclidean tables are computed by the {@link EuclideanScoreKernel}.
+     *
+     * @param first First image features.
+     * @param second Second image features.
+     * @return Score table of the features.
+     */
+    private ScoreTable getScoreTable(DetectionResultArgument first, DetectionResultArgument second) {
+        Scorer scorer = parameters.getScorerEnum();
+        boolean squared = parameters.isSquareEuclidian();
+        if (scoreTable == null || scoreTableSource != first || scoreTableDestination != second
+                || scoreTableScorer != scorer || scoreTableSquared != squared) {
+            if (scorer == Scorer.DEFAULT || scorer == Scorer.EUCLIDEAN) {
+                scoreTable = scoreEuclidean(first.getPackedFeatures(), second.getPackedFeatures(),
+                        parameters.isSquaredScore());
+            } else {
+                scoreTable = ScoreTable.compute(parameters.getScorer(),
+                        first.getDescriptors(), second.getDescriptors());
+            }
+            scoreTableSource = first;
+            scoreTableDestination = second;
+            scoreTableScorer = scorer;
+            scoreTableSquared = squared;
+        }
+        return scoreTable;
+    }
+
+    /**
+     * Scores packed features by Euclidean distance in parallel.  Reduced precision descriptors are
+     * scored as they are when both sets share a precision.
+     *
+     * @param a Source features.
+     * @param b Destination features.
+     * @param squared Whether the scores are squared distances.
+     * @return Score table of the features.
+     */
+    private ScoreTable scoreEuclidean(PackedFeatures a, PackedFeatures b, boolean squared) {
+        QuantizedDescriptors qa = a.getQuantized(), qb = b.getQuantized();
+        if (qa != null && qb != null && qa.getPrecision() == qb.getPrecision()) {
+            if (qa.getPrecision() == DescriptorPrecision.FLOAT)
+                return scoreKernel.score(qa.getFloats(), qa.size(), qb.getFloats(), qb.size(),
+                        qa.getLength(), squared);
+            if (Arrays.equals(qa.getScales(), qb.getScales()))
+                return scoreKernel.score(qa.getCodes(), qa.size(), qb.getCodes(), qb.size(),
+                        qa.getScales(), squared);
+        }
+        return scoreKernel.score(a.getDescriptors(), a.size(), b.getDescriptors(), b.size(),
+                a.getDescriptorLength(), squared);
+    }
+
+    /**
+     * Associates mapped reference features with the features of the other image.  The mapped
+     * descriptors are read in place, so a large {@link MappedDescriptorStore} can be searched without
+     * its descriptors being copied onto the heap.  The state of this associator is not changed.
+     *
+     * @param reference Mapped reference features.
+     * @return Pairs of reference and other image points, null if there is no other image.
+     */
+    public List<AssociatedPair> associate(MappedFeatures reference) {
+        if (reference == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".associate() Null reference");
+        DetectionResultArgument other = otherImageFeatures;
+        if (other == null) return null;
+        PackedFeatures features = other.getPackedFeatures();
+        List<AssociatedPair> matches = new ArrayList<AssociatedPair>();
+        if (reference.size() != 0 && features.size() != 0
+                && reference.getDescriptorLength() != features.getDescriptorLength())
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".associate() " +
+                    "Descriptors of " + reference.getName() + " were not created with these parameters");
+
+        if (packedAssociater == null)
+            packedAssociater = parameters.newPackedAssociater();
+        FastQueue<AssociatedIndex> matchIndexes = packedAssociater.associate(
+                reference.getDescriptors(), reference.size(),
+                DoubleBuffer.wrap(features.getDescriptors()), features.size(),
+                features.getDescriptorLength());
+        double[] x2 = features.getX(), y2 = features.getY();
+        for( int i = 0; i < matchIndexes.size; i++) {
+            AssociatedIndex a = matchIndexes.get(i);
+            matches.add(new ScoredAssociatedPair(reference.getX(a.src), reference.getY(a.src), x2[a.dst], y2[a.dst],
+                    a.fitScore));
+        }
+        return matches;
+    }
+
+    /**
+     * Guided association scores single pairs of features, which is only possible for the distance scorers.
+     *
+     * @return Whether {@link #associateGuided(DenseMatrix64F, double)} supports the scorer of the parameters.
+     */
+    public boolean supportsGuidedMatching() {
+        Scorer scorer = parameters.getScorerEnum();
+        return scorer == Scorer.DEFAULT || scorer == Scorer.EUCLIDEAN || scorer == Scorer.SAD;
+    }
+
+    /**
+     * Associates the reference and other image features again, guided by a homography.  Every reference
+     * feature is mapped through the homography and only scored against the other image features within
+     * the window around it, so repeated textures far away no longer compete with the correct match.
+     * Thresholds and validation of the parameters apply as usual.  The state of this associator is not changed.
+     *
+     * @param homography Homography from reference to other image coordinates.
+     * @param window Search radius in pixels around every mapped reference feature.
+     * @return Pairs of reference and other image points, null if either image is missing.
+     * @throws IllegalStateException if the scorer is not supported, see {@link #supportsGuidedMatching()}.
+     */
+    public List<AssociatedPair> associateGuided(DenseMatrix64F homography, double window) {
+        if (homography == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".associateGuided() Null homography");
+        if (!supportsGuidedMatching())
+            throw new IllegalStateException(getClass().getSimpleName() + ".associateGuided() Unsupported " +
+                    "scorer \"" + parameters.getScorerEnum() + "\"");
+        DetectionResultArgument first = referenceImageFeatures, second = otherImageFeatures;
+        if (first == null || second == null) return null;
+        PackedFeatures a = first.getPackedFeatures(), b = second.getPackedFeatures();
+
+        if (packedAssociater == null)
+            packedAssociater = parameters.newPackedAssociater();
+        double[] x1 = a.getX(), y1 = a.getY(), x2 = b.getX(), y2 = b.getY();
+        FastQueue<AssociatedIndex> matchIndexes = packedAssociater.associateWindowed(
+                DoubleBuffer.wrap(a.getDescriptors()), x1, y1, a.size(),
+                DoubleBuffer.wrap(b.getDescriptors()), x2, y2, b.size(),
+                a.getDescriptorLength(), homography, window);
+        List<AssociatedPair> matches = new ArrayList<AssociatedPair>(matchIndexes.size);
+        for( int i = 0; i < matchIndexes.size; i++) {
+            AssociatedIndex m = matchIndexes.get(i);
+            matches.add(new ScoredAssociatedPair(x1[m.src], y1[m.src], x2[m.dst], y2[m.dst], m.fitScore));
+        }
+        return matches;
+    }
+
+    /**
+     * Associates the features of the other image with a {@link ProductQuantizationIndex} of many reference
+     * images, in place of an exhaustive or k-d tree association.  Every feature is matched with its
+     * approximate nearest indexed feature, filtered by the maximum distance, the ratio test of
+     * {@link Associater#RATIO_TEST} and backwards validation of the parameters.
+     * The state of this associator is not changed.
+     *
+     * @param index Index of reference features described with these parameters.
+     * @return Element r holds the pairs of reference r and other image points, null if there is no other image.
+     */
+    public List<List<AssociatedPair>> associate(ProductQuantizationIndex index) {
+        if (index == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".associate() Null index");
+        Scorer scorer = parameters.getScorerEnum();
+        if (scorer != Scorer.DEFAULT && scorer != Scorer.EUCLIDEAN)
+            throw new IllegalStateException(getClass().getSimpleName() + ".associate() Indexes only " +
+                    "support Euclidean scores not \"" + scorer + "\"");
+        DetectionResultArgument other = otherImageFeatures;
+        if (other == null) return null;
+        PackedFeatures features = other.getPackedFeatures();
+
+        double ratio = parameters.getAssociater() == Associater.RATIO_TEST ? parameters.getScoreRatio() : 1;
+        FastQueue<AssociatedIndex> matchIndexes = index.associate(features, parameters.getMaxDistance(),
+                ratio, parameters.isBackwardsValidated(), parameters.isSquaredScore());
+        List<List<AssociatedPair>> matches = new ArrayList<List<AssociatedPair>>(index.getReferenceCount());
+        for (int r = 0; r < index.getReferenceCount(); r++)
+            matches.add(new ArrayList<AssociatedPair>());
+        double[] x2 = features.getX(), y2 = features.getY();
+        for( int i = 0; i < matchIndexes.size; i++) {
+            AssociatedIndex a = matchIndexes.get(i);
+            matches.get(index.getReference(a.src)).add(
+                    new ScoredAssociatedPair(index.getX(a.src), index.getY(a.src), x2[a.dst], y2[a.dst],
+                            a.fitScore));
+        }
+        return matches;
+    }
+
     ///////////////////////////////////////////////////////////////
     ////    Getters
     ///////////////////////////////////////////////////////////////
@@ -177,6 +575,34 @@ public class ImagePointAssociator implements OnFeatureDetectionParamsChangedList
         return otherImageFeatures;
     }
 
+    /**
+     * @return Maximum number of pixels that are processed per image.
+     */
+    public int getMaxPixels() {
+        return maxPixels;
+    }
+
+    /**
+     * @return Filter used to reach the processing resolution.
+     */
+    public Downscale getDownscale() {
+        return downscale;
+    }
+
+    /**
+     * @return The parameters that define this associator.
+     */
+    public FeatureDetectionParams getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return The descriptor cache of this, null if caching is disabled.
+     */
+    public DescriptorCache getDescriptorCache() {
+        return descriptorCache;
+    }
+
     /**
      * Returns the matches between the two images.  Or null if no matches are ready.
      *
@@ -194,36 +620,232 @@ public class ImagePointAssociator implements OnFeatureDetectionParamsChangedList
      */
     public DetectionResultArgument describeImage(BufferedImage image) {
         if (image == null) return null;
-        return describeImage(ConvertBufferedImage.convertFromSingle(
-                image, null, ImageFloat32.class));
+        return describeImage(convert(image));
     }
 
     /**
-     * Given an input image.  The algorithm detects and describes features
+     * Given an input image.  The algorithm detects and describes features.
+     * <b>If a descriptor cache is set, previously described images are loaded from the cache.</b>
+     * <b>Images above the processing resolution are downscaled first.  Returned points are
+     * always in the coordinates of the input.</b>
      *
      * @param input The image to detect and describe features.
      * @return The result of the detection process.
      */
     public DetectionResultArgument describeImage(ImageFloat32 input) {
         if (input == null) return null;
-        // Get the current Detector and Descriptor
-        DetectDescribePoint<ImageFloat32, SurfFeature> detDesc = this.parameters.getCurrentDetDesc();
+        return describeImage(input, null, this.parameters.getCurrentDetDesc());
+    }
 
-        // Fast Queue that stores the description of detected interest points.
-        FastQueue<SurfFeature> descriptors = UtilFeature.createQueue(
-                detDesc, this.parameters.getMaxFeatures());
-        List<Point2D_F64> points = new ArrayList<Point2D_F64>();
+    /**
+     * Describes the image restricted to the argument regions with the current detector.
+     *
+     * @param image The image to detect and describe features.
+     * @param regions Regions to describe, null for the whole image.
+     * @return The result of the detection process, null if there is no image.
+     */
+    private DetectionResultArgument describeImage(BufferedImage image, List<RectangularBoundary> regions) {
+        if (image == null) return null;
+        return describeImage(convert(image), regions, this.parameters.getCurrentDetDesc());
+    }
 
+    /**
+     * Describes only the argument regions of the input image.  Every region is described as a sub image
+     * and its points are offset back into the coordinates of the input.
+     *
+     * @param input The image to detect and describe features.
+     * @param regions Regions to describe, null for the whole image.
+     * @param detDesc Detector and describer to use, must not be shared with another thread.
+     * @return The result of the detection process in the coordinates of the input.
+     */
+    private DetectionResultArgument describeImage(ImageFloat32 input, List<RectangularBoundary> regions,
+                                                  DetectDescribePoint<ImageFloat32, SurfFeature> detDesc) {
+        if (regions == null) return describeScaled(input, detDesc);
+
+        List<RectangularBoundary> clipped = RegionsOfInterest.clipAndMerge(regions, input.width, input.height);
+        if (clipped.isEmpty()) {
+            // No region is within the image, the result still has the length and precision of the parameters.
+            PackedFeatures empty = new PackedFeatures(detDesc.getDescriptionLength(), new double[0],
+                    new double[0], new double[0], new boolean[0]);
+            return new DetectionResultArgument(reduceDescriptors(empty), input);
+        }
+        List<PackedFeatures> parts = new ArrayList<PackedFeatures>(clipped.size());
+        int size = 0;
+        for (RectangularBoundary region : clipped) {
+            ImageFloat32 sub = input.subimage(region.getX(), region.getY(),
+                    region.getX() + region.getWidth(), region.getY() + region.getHeight());
+            PackedFeatures part = describeScaled(sub, detDesc).getPackedFeatures();
+            parts.add(part);
+            size += part.size();
+        }
+
+        // Concatenate the regions and offset their points.
+        int length = parts.get(0).getDescriptorLength();
+        boolean quantized = parts.get(0).getQuantized() != null;
+        double[] descriptors = quantized ? null : new double[size * length];
+        List<QuantizedDescriptors> quantizedParts = new ArrayList<QuantizedDescriptors>(parts.size());
+        double[] x = new double[size];
+        double[] y = new double[size];
+        boolean[] laplacianPositive = new boolean[size];
+        int index = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            PackedFeatures part = parts.get(i);
+            RectangularBoundary region = clipped.get(i);
+            if (quantized)
+                quantizedParts.add(part.getQuantized());
+            else
+                System.arraycopy(part.getDescriptors(), 0, descriptors, index * length, part.size() * length);
+            System.arraycopy(part.getLaplacianPositive(), 0, laplacianPositive, index, part.size());
+            for (int j = 0; j < part.size(); j++, index++) {
+                x[index] = part.getX()[j] + region.getX();
+                y[index] = part.getY()[j] + region.getY();
+            }
+        }
+        PackedFeatures features = quantized ?
+                new PackedFeatures(QuantizedDescriptors.concat(quantizedParts), x, y, laplacianPositive) :
+                new PackedFeatures(length, descriptors, x, y, laplacianPositive);
+        return new DetectionResultArgument(features, input);
+    }
+
+    /**
+     * Describes the input image with the argument detector at the processing resolution.
+     *
+     * @param input The image to detect and describe features.
+     * @param detDesc Detector and describer to use, must not be shared with another thread.
+     * @return The result of the detection process in the coordinates of the input.
+     */
+    private DetectionResultArgument describeScaled(ImageFloat32 input,
+                                                   DetectDescribePoint<ImageFloat32, SurfFeature> detDesc) {
+        int levels = ImagePyramid.getLevels(input.width, input.height, maxPixels);
+        if (levels == 0) return describeProcessed(input, detDesc);
+
+        ImageFloat32 processed = input;
+        for (int i = 0; i < levels; i++)
+            processed = ImagePyramid.halve(processed, downscale);
+        PackedFeatures features = describeProcessed(processed, detDesc).getPackedFeatures();
+
+        // Map the points back to the input image.
+        double scale = 1 << levels;
+        double[] x = new double[features.size()];
+        double[] y = new double[features.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = (features.getX()[i] + 0.5) * scale - 0.5;
+            y[i] = (features.getY()[i] + 0.5) * scale - 0.5;
+        }
+        return new DetectionResultArgument(features.relocate(x, y), input);
+    }
+
+    /**
+     * Describes an image that is already at the processing resolution, consulting the cache if one is set.
+     *
+     * @param input The image to detect and describe features.
+     * @param detDesc Detector and describer to use, must not be shared with another thread.
+     * @return The result of the detection process.
+     */
+    private DetectionResultArgument describeProcessed(ImageFloat32 input,
+                                                      DetectDescribePoint<ImageFloat32, SurfFeature> detDesc) {
+        DescriptorCache cache = this.descriptorCache;
+        if (cache == null) return detectAndDescribe(input, detDesc);
+
+        String key = cache.createKey(input, this.parameters);
+        DetectionResultArgument result = cache.load(key, input);
+        if (result == null) {
+            result = detectAndDescribe(input, detDesc);
+            cache.store(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the detector and describer over the input image.
+     *
+     * @param input The image to detect and describe features.
+     * @param detDesc Detector and describer to use.
+     * @return The result of the detection process.
+     */
+    private DetectionResultArgument detectAndDescribe(ImageFloat32 input,
+                                                      DetectDescribePoint<ImageFloat32, SurfFeature> detDesc) {
         // Make the call to detect all the features
         detDesc.detect(input);
+        int[] selected = selectFeatures(input, detDesc);
+
+        // Pack the kept features into contiguous arrays.
+        int size = selected == null ? detDesc.getNumberOfFeatures() : selected.length;
+        int length = detDesc.getDescriptionLength();
+        double[] descriptors = new double[size * length];
+        double[] x = new double[size];
+        double[] y = new double[size];
+        boolean[] laplacianPositive = new boolean[size];
+        for( int i = 0; i < size; i++ ) {
+            int index = selected == null ? i : selected[i];
+            Point2D_F64 location = detDesc.getLocation(index);
+            x[i] = location.x;
+            y[i] = location.y;
+            SurfFeature description = detDesc.getDescription(index);
+            System.arraycopy(description.value, 0, descriptors, i * length, length);
+            laplacianPositive[i] = description.laplacianPositive;
+        }
+        return new DetectionResultArgument(reduceDescriptors(
+                new PackedFeatures(length, descriptors, x, y, laplacianPositive)), input);
+    }
 
-        // Find all the features.
-        for( int i = 0; i < detDesc.getNumberOfFeatures(); i++ ) {
-            points.add( detDesc.getLocation(i).copy() );
-            descriptors.grow().setTo(detDesc.getDescription(i));
-
+    /**
+     * Selects features with the feature selector of the parameters when more than the maximum number of
+     * features of the parameters were found.
+     *
+     * @param input The image the features were detected in.
+     * @param detDesc Detector and describer that detected the features.
+     * @return Indexes of the kept features strongest first, null to keep every feature in detection order.
+     */
+    private int[] selectFeatures(ImageFloat32 input, DetectDescribePoint<ImageFloat32, SurfFeature> detDesc) {
+        int found = detDesc.getNumberOfFeatures();
+        int max = this.parameters.getMaxFeatures();
+        if (found <= max) return null;
+
+        double[] x = new double[found];
+        double[] y = new double[found];
+        double[] scales = new double[found];
+        for (int i = 0; i < found; i++) {
+            Point2D_F64 location = detDesc.getLocation(i);
+            x[i] = location.x;
+            y[i] = location.y;
+            // The Fast Hessian detector of every SURF parameter set detects features at a scale.
+            scales[i] = detDesc.getScale(i);
+        }
+        double[] response = FeatureSelection.hessianResponse(input, x, y, scales, found);
+        switch (this.parameters.getFeatureSelector()) {
+            case GRID:
+                return FeatureSelection.selectGrid(response, x, y, found, max, input.width, input.height,
+                        this.parameters.getGridRows(), this.parameters.getGridColumns());
+            case ANMS:
+                return FeatureSelection.selectSuppressed(response, x, y, found, max, input.width, input.height);
+            default:
+                return FeatureSelection.selectStrongest(response, found, max);
         }
-        return new DetectionResultArgument(descriptors, points, input);
+    }
+
+    /**
+     * Projects features with the projection of the parameters, if any, and reduces their precision.
+     *
+     * @param features Double precision features.
+     * @return Features with the dimension and precision of the parameters.
+     */
+    private PackedFeatures reduceDescriptors(PackedFeatures features) {
+        DescriptorProjection projection = this.parameters.getProjection();
+        if (projection != null)
+            features = projection.project(features);
+        DescriptorPrecision precision = this.parameters.getPrecision();
+        if (precision == DescriptorPrecision.DOUBLE) return features;
+        double[] scales = precision == DescriptorPrecision.INT8 ? this.parameters.getQuantizationScales() : null;
+        return features.quantize(precision, scales);
+    }
+
+    /**
+     * @param image Image to convert.
+     * @return Gray scale image used for detection.
+     */
+    private static ImageFloat32 convert(BufferedImage image) {
+        return ConvertBufferedImage.convertFromSingle(image, null, ImageFloat32.class);
     }
 
     ///////////////////////////////////////////////////////////////
@@ -234,8 +856,9 @@ public class ImagePointAssociator implements OnFeatureDetectionParamsChangedList
     public void onDetDescChanged(DetectDescribePoint<ImageFloat32, SurfFeature> newVal,
                                  DetectDescribePoint<ImageFloat32, SurfFeature> oldVal) {
         if (newVal == null) return;
-        this.referenceImageFeatures = describeImage(referenceImage);
-        this.otherImageFeatures = describeImage(otherImage);
+        // The worker detector no longer reflects the parameters.
+        workerDetDesc = null;
+        describeBoth();
         update();
     }
 
@@ -243,6 +866,7 @@ public class ImagePointAssociator implements OnFeatureDetectionParamsChangedList
     public void onDescriptorAssociaterChanged(AssociateDescription<SurfFeature> newVal,
                                               AssociateDescription<SurfFeature> oldVal) {
         if (newVal == null) return;
+        packedAssociater = null;
         update();
     }
 
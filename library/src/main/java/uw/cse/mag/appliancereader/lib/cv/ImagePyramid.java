@@ -0,0 +1,111 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.struct.image.ImageFloat32;
+
+/**
+ * Downscales gray scale images by repeatedly halving them until they fit a pixel budget.
+ * <b>Every level maps pixel x of the halved image to pixel 2x + 0.5 of the larger image.
+ * After n levels a point maps back with x_source = (x + 0.5) * 2^n - 0.5.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public final class ImagePyramid {
+
+    /**
+     * Cannot instantiate.
+     */
+    private ImagePyramid() {}
+
+    /**
+     * Returns the number of times an image has to be halved to fit in the pixel budget.
+     * Images are never halved below 2 pixels in either dimension.
+     *
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param maxPixels Maximum number of pixels.
+     * @return Number of levels to halve.
+     */
+    public static int getLevels(int width, int height, int maxPixels) {
+        if (maxPixels <= 0)
+            throw new IllegalArgumentException("ImagePyramid.getLevels() Pixel budget must be positive");
+        int levels = 0;
+        while ((long) width * height > maxPixels && width >= 4 && height >= 4) {
+            width /= 2;
+            height /= 2;
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * Halves the input image.  Odd last rows and columns are only used by the Gaussian filter.
+     *
+     * @param input Image to halve.
+     * @param method Filter applied before sub sampling.
+     * @return New image with half the width and height of the input.
+     */
+    public static ImageFloat32 halve(ImageFloat32 input, Downscale method) {
+        if (method == null)
+            throw new NullPointerException("ImagePyramid.halve() Null method");
+        switch (method) {
+            case BOX:
+                return halveBox(input);
+            case GAUSSIAN:
+                return halveGaussian(input);
+        }
+        throw new IllegalStateException("ImagePyramid.halve() Unsupported \"" + method + "\"");
+    }
+
+    /**
+     * Averages every 2x2 block.
+     */
+    private static ImageFloat32 halveBox(ImageFloat32 input) {
+        ImageFloat32 output = new ImageFloat32(input.width / 2, input.height / 2);
+        for (int y = 0; y < output.height; y++) {
+            int top = input.startIndex + 2 * y * input.stride;
+            int bottom = top + input.stride;
+            int out = output.startIndex + y * output.stride;
+            for (int x = 0; x < output.width; x++) {
+                output.data[out++] = 0.25f * (input.data[top] + input.data[top + 1] +
+                        input.data[bottom] + input.data[bottom + 1]);
+                top += 2;
+                bottom += 2;
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Filters with the separable binomial kernel [1 3 3 1] / 8 centered on every 2x2 block.
+     * Borders are clamped.
+     */
+    private static ImageFloat32 halveGaussian(ImageFloat32 input) {
+        int width = input.width / 2, height = input.height / 2;
+
+        // Horizontal pass over every input row.
+        float[] rows = new float[width * input.height];
+        for (int y = 0; y < input.height; y++) {
+            int row = input.startIndex + y * input.stride;
+            for (int x = 0; x < width; x++) {
+                int c = 2 * x;
+                rows[y * width + x] = 0.125f * (
+                        input.data[row + Math.max(c - 1, 0)] +
+                        3 * input.data[row + c] +
+                        3 * input.data[row + c + 1] +
+                        input.data[row + Math.min(c + 2, input.width - 1)]);
+            }
+        }
+
+        // Vertical pass over every other row.
+        ImageFloat32 output = new ImageFloat32(width, height);
+        for (int y = 0; y < height; y++) {
+            int c = 2 * y;
+            int r0 = Math.max(c - 1, 0) * width, r1 = c * width, r2 = (c + 1) * width;
+            int r3 = Math.min(c + 2, input.height - 1) * width;
+            int out = output.startIndex + y * output.stride;
+            for (int x = 0; x < width; x++)
+                output.data[out++] = 0.125f * (rows[r0 + x] + 3 * rows[r1 + x] + 3 * rows[r2 + x] + rows[r3 + x]);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,353 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read only file of the descriptors of many reference images.  The features of every reference image are
+ * stored in one contiguous region that is memory mapped on request, so opening a store only reads its table
+ * and the descriptors are paged in by the operating system instead of being held on the heap.
+ * <b>
+ * <b>Layout, all values big endian
+ * <b>-Header: magic, version, offset of the table
+ * <b>-Per reference image: descriptors, x coordinates, y coordinates, laplacian bytes, padded to 8 bytes
+ * <b>-Table: parameter fingerprint, descriptor length, number of images, then name, offset and size per image
+ * <b>
+ * Stores are created with a {@link Writer}.  Mapped slices stay valid after the store is closed.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class MappedDescriptorStore implements Closeable {
+
+    /**
+     * File header values used to reject foreign or outdated files.
+     */
+    private static final int MAGIC = 0x4152444D;
+    private static final int VERSION = 1;
+
+    /**
+     * Number of bytes of the header.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Channel of the store file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Fingerprint of the parameters that described the images.
+     */
+    private final String fingerprint;
+
+    /**
+     * Number of elements in each descriptor.
+     */
+    private final int length;
+
+    /**
+     * Table of reference images.
+     */
+    private final String[] names;
+    private final long[] offsets;
+    private final int[] sizes;
+    private final Map<String, Integer> indexes;
+
+    /**
+     * Opens an existing store.  Only the table is read.
+     *
+     * @param file Store file.
+     * @throws IOException The file is not a readable store.
+     */
+    public static MappedDescriptorStore open(File file) throws IOException {
+        if (file == null)
+            throw new NullPointerException("MappedDescriptorStore.open() Null file");
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION)
+                throw new IOException("Unrecognized header " + file);
+            raf.seek(raf.readLong());
+            String fingerprint = raf.readUTF();
+            int length = raf.readInt();
+            int count = raf.readInt();
+            String[] names = new String[count];
+            long[] offsets = new long[count];
+            int[] sizes = new int[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = raf.readUTF();
+                offsets[i] = raf.readLong();
+                sizes[i] = raf.readInt();
+            }
+            return new MappedDescriptorStore(raf.getChannel(), fingerprint, length, names, offsets, sizes);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private MappedDescriptorStore(FileChannel channel, String fingerprint, int length,
+                                  String[] names, long[] offsets, int[] sizes) {
+        this.channel = channel;
+        this.fingerprint = fingerprint;
+        this.length = length;
+        this.names = names;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.indexes = new HashMap<String, Integer>();
+        for (int i = 0; i < names.length; i++)
+            indexes.put(names[i], i);
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Access
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Maps the features of a reference image.  No descriptor is copied onto the heap.
+     *
+     * @param index Index of the reference image.
+     * @return Mapped features of the reference image.
+     * @throws IOException The region could not be mapped.
+     */
+    public MappedFeatures map(int index) throws IOException {
+        if (index < 0 || index >= names.length)
+            throw new IndexOutOfBoundsException(getClass().getSimpleName() + ".map() Illegal index " + index);
+        int size = sizes[index];
+        long descriptorBytes = 8L * size * length;
+        long regionBytes = getRegionSize(size, length);
+        if (regionBytes > Integer.MAX_VALUE)
+            throw new IOException("Region of " + names[index] + " is too large to map");
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offsets[index], regionBytes);
+
+        int start = (int) descriptorBytes;
+        return new MappedFeatures(names[index], size, length,
+                slice(region, 0, start).asDoubleBuffer(),
+                slice(region, start, start + 8 * size).asDoubleBuffer(),
+                slice(region, start + 8 * size, start + 16 * size).asDoubleBuffer(),
+                slice(region, start + 16 * size, start + 17 * size));
+    }
+
+    /**
+     * Maps the features of a reference image.
+     *
+     * @param name Name of the reference image.
+     * @return Mapped features or null if the store does not contain the image.
+     * @throws IOException The region could not be mapped.
+     */
+    public MappedFeatures map(String name) throws IOException {
+        Integer index = indexes.get(name);
+        return index == null ? null : map(index);
+    }
+
+    /**
+     * @return Number of reference images.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param index Index of the reference image.
+     * @return Name of the reference image.
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return Number of elements in each descriptor.
+     */
+    public int getDescriptorLength() {
+        return length;
+    }
+
+    /**
+     * @return Fingerprint of the parameters that described the images of this store.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Private helper methods
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * @param size Number of features.
+     * @param length Number of elements in each descriptor.
+     * @return Number of bytes of the region, padded to 8 bytes.
+     */
+    private static long getRegionSize(int size, int length) {
+        long bytes = 8L * size * length + 17L * size;
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * @return View of the bytes between start and end of the buffer.
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(end);
+        view.position(start);
+        return view.slice();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedDescriptorStore{" +
+                "fingerprint='" + fingerprint + '\'' +
+                ", size=" + names.length +
+                '}';
+    }
+
+    /**
+     * Writes a new store one reference image at a time.  Only the table is held in memory.
+     * The store appears at its destination when the writer is closed.
+     */
+    public static class Writer implements Closeable {
+
+        private final File file, temp;
+        private final String fingerprint;
+        private final FileOutputStream stream;
+        private final DataOutputStream out;
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private final List<String> names = new ArrayList<String>();
+        private final List<Long> offsets = new ArrayList<Long>();
+        private final List<Integer> sizes = new ArrayList<Integer>();
+        private int length = -1;
+        private long position;
+        private boolean closed;
+
+        /**
+         * Creates a writer.
+         *
+         * @param file Destination of the store.  Replaced when the writer is closed.
+         * @param fingerprint Fingerprint of the parameters that describe the images.
+         * @throws IOException The temporary file could not be created.
+         */
+        public Writer(File file, String fingerprint) throws IOException {
+            if (file == null)
+                throw new NullPointerException(getClass().getSimpleName() + "() Null file");
+            if (fingerprint == null)
+                throw new NullPointerException(getClass().getSimpleName() + "() Null fingerprint");
+            File dir = file.getAbsoluteFile().getParentFile();
+            this.file = file;
+            this.fingerprint = fingerprint;
+            this.temp = File.createTempFile(file.getName() + ".partial", ".tmp", dir);
+            this.stream = new FileOutputStream(temp);
+            this.out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(0); // Table offset, written on close.
+            position = HEADER_SIZE;
+        }
+
+        /**
+         * Appends the features of a reference image.
+         *
+         * @param name Unique name of the reference image.
+         * @param features Features of the reference image.
+         * @throws IOException The features could not be written.
+         */
+        public void add(String name, PackedFeatures features) throws IOException {
+            if (name == null)
+                throw new NullPointerException(getClass().getSimpleName() + ".add() Null name");
+            if (features == null)
+                throw new NullPointerException(getClass().getSimpleName() + ".add() Null features");
+            if (indexes.containsKey(name))
+                throw new IllegalArgumentException(getClass().getSimpleName() + ".add() Duplicate name " + name);
+            int size = features.size();
+            if (size > 0) {
+                if (length == -1)
+                    length = features.getDescriptorLength();
+                else if (length != features.getDescriptorLength())
+                    throw new IllegalArgumentException(getClass().getSimpleName() + ".add() " +
+                            "Descriptor length of " + name + " differs from the store");
+            }
+            int storedLength = Math.max(length, 0);
+
+            indexes.put(name, names.size());
+            names.add(name);
+            offsets.add(position);
+            sizes.add(size);
+
+            for (double value : features.getDescriptors())
+                out.writeDouble(value);
+            for (double value : features.getX())
+                out.writeDouble(value);
+            for (double value : features.getY())
+                out.writeDouble(value);
+            for (boolean value : features.getLaplacianPositive())
+                out.writeByte(value ? 1 : 0);
+            long written = 8L * size * storedLength + 17L * size;
+            long region = getRegionSize(size, storedLength);
+            for (long i = written; i < region; i++)
+                out.writeByte(0);
+            position += region;
+        }
+
+        /**
+         * Abandons the store.  The destination is left untouched.
+         */
+        public void discard() {
+            if (closed) return;
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Nothing else can be done.
+            }
+            temp.delete();
+        }
+
+        /**
+         * Writes the table and moves the store to its destination.
+         *
+         * @throws IOException The store could not be completed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                long tableOffset = position;
+                out.writeUTF(fingerprint);
+                out.writeInt(Math.max(length, 0));
+                out.writeInt(names.size());
+                for (int i = 0; i < names.size(); i++) {
+                    out.writeUTF(names.get(i));
+                    out.writeLong(offsets.get(i));
+                    out.writeInt(sizes.get(i));
+                }
+                out.flush();
+                stream.getChannel().write(ByteBuffer.allocate(8).putLong(0, tableOffset), 8);
+                out.close();
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                out.close();
+                temp.delete();
+                throw e;
+            }
+        }
+    }
+}
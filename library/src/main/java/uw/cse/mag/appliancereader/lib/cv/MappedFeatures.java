@@ -0,0 +1,124 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+/**
+ * Features of one reference image read in place from a {@link MappedDescriptorStore}.
+ * Same layout as {@link PackedFeatures} but backed by a memory mapped region of the store file
+ * instead of heap arrays.  Feature i occupies
+ * <b>descriptors.get(i * length) to descriptors.get((i + 1) * length - 1)</b>
+ * and is located at (x.get(i), y.get(i)).
+ * <b>Only absolute gets are used on the buffers, so a slice can be read by several threads.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class MappedFeatures {
+
+    /**
+     * Name of the reference image the features belong to.
+     */
+    private final String name;
+
+    /**
+     * Number of features and number of elements in each descriptor.
+     */
+    private final int size, length;
+
+    /**
+     * Mapped descriptor elements and locations.
+     */
+    private final DoubleBuffer descriptors, x, y;
+
+    /**
+     * Mapped laplacian signs, one byte per feature.
+     */
+    private final ByteBuffer laplacianPositive;
+
+    /**
+     * Wraps mapped buffers.
+     *
+     * @param name Name of the reference image.
+     * @param size Number of features.
+     * @param length Number of elements in each descriptor.
+     * @param descriptors Descriptor elements, size * length values.
+     * @param x X coordinate of every feature.
+     * @param y Y coordinate of every feature.
+     * @param laplacianPositive Laplacian sign of every feature, non zero for positive.
+     */
+    MappedFeatures(String name, int size, int length, DoubleBuffer descriptors,
+                   DoubleBuffer x, DoubleBuffer y, ByteBuffer laplacianPositive) {
+        this.name = name;
+        this.size = size;
+        this.length = length;
+        this.descriptors = descriptors;
+        this.x = x;
+        this.y = y;
+        this.laplacianPositive = laplacianPositive;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Getters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * @return Name of the reference image.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Number of features.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of elements in every descriptor.
+     */
+    public int getDescriptorLength() {
+        return length;
+    }
+
+    /**
+     * @return Mapped descriptor elements.
+     */
+    public DoubleBuffer getDescriptors() {
+        return descriptors;
+    }
+
+    /**
+     * @param index Index of the feature.
+     * @return X coordinate of the feature.
+     */
+    public double getX(int index) {
+        return x.get(index);
+    }
+
+    /**
+     * @param index Index of the feature.
+     * @return Y coordinate of the feature.
+     */
+    public double getY(int index) {
+        return y.get(index);
+    }
+
+    /**
+     * @param index Index of the feature.
+     * @return Whether the laplacian of the feature is positive.
+     */
+    public boolean isLaplacianPositive(int index) {
+        return laplacianPositive.get(index) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "MappedFeatures{" +
+                "name='" + name + '\'' +
+                ", size=" + size +
+                ", length=" + length +
+                '}';
+    }
+}
@@ -0,0 +1,262 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.SurfFeature;
+import georegression.struct.point.Point2D_F64;
+import uw.cse.mag.appliancereader.lib.cv.params.core.DescriptorPrecision;
+
+import java.util.List;
+
+/**
+ * Struct of arrays representation of detected features.  All descriptors are stored back to back
+ * in one primitive array with a stride of the descriptor length, and the locations and laplacian signs
+ * are stored in parallel arrays.  Feature i occupies
+ * <b>descriptors[i * length] to descriptors[(i + 1) * length - 1]</b>
+ * and is located at (x[i], y[i]).
+ * Descriptors can also be held with reduced precision as {@link QuantizedDescriptors}, in which case
+ * {@link #getDescriptors()} restores a new double precision array on every call and nothing is kept,
+ * so a quantized reference library never grows back to its full size.
+ * <b>Getters return the backing arrays without copying.  Clients must not modify them.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class PackedFeatures {
+
+    /**
+     * Number of features.
+     */
+    private final int size;
+
+    /**
+     * Number of elements in each descriptor.
+     */
+    private final int length;
+
+    /**
+     * Descriptor elements of every feature, feature after feature.  Null when quantized.
+     */
+    private final double[] descriptors;
+
+    /**
+     * Reduced precision descriptors.  Null for double precision.
+     */
+    private final QuantizedDescriptors quantized;
+
+    /**
+     * Location of every feature.
+     */
+    private final double[] x, y;
+
+    /**
+     * Sign of the laplacian of every feature.
+     */
+    private final boolean[] laplacianPositive;
+
+    /**
+     * Wraps the argument arrays.  The arrays are not copied.
+     *
+     * @param length Number of elements in each descriptor.
+     * @param descriptors Descriptor elements, size * length values.
+     * @param x X coordinate of every feature.
+     * @param y Y coordinate of every feature.
+     * @param laplacianPositive Laplacian sign of every feature.
+     */
+    public PackedFeatures(int length, double[] descriptors, double[] x, double[] y,
+                          boolean[] laplacianPositive) {
+        String prefix = getClass().getSimpleName() + "() ";
+        if (descriptors == null || x == null || y == null || laplacianPositive == null)
+            throw new NullPointerException(prefix + "Null array");
+        if (length < 0)
+            throw new IllegalArgumentException(prefix + "Negative descriptor length");
+        int size = x.length;
+        if (y.length != size || laplacianPositive.length != size || descriptors.length != size * length)
+            throw new IllegalArgumentException(prefix + "Array sizes do not agree");
+        this.size = size;
+        this.length = length;
+        this.descriptors = descriptors;
+        this.quantized = null;
+        this.x = x;
+        this.y = y;
+        this.laplacianPositive = laplacianPositive;
+    }
+
+    /**
+     * Wraps reduced precision descriptors and the argument arrays.  The arrays are not copied.
+     *
+     * @param quantized Reduced precision descriptors.
+     * @param x X coordinate of every feature.
+     * @param y Y coordinate of every feature.
+     * @param laplacianPositive Laplacian sign of every feature.
+     */
+    public PackedFeatures(QuantizedDescriptors quantized, double[] x, double[] y,
+                          boolean[] laplacianPositive) {
+        String prefix = getClass().getSimpleName() + "() ";
+        if (quantized == null || x == null || y == null || laplacianPositive == null)
+            throw new NullPointerException(prefix + "Null array");
+        int size = x.length;
+        if (y.length != size || laplacianPositive.length != size || quantized.size() != size)
+            throw new IllegalArgumentException(prefix + "Array sizes do not agree");
+        this.size = size;
+        this.length = quantized.getLength();
+        this.descriptors = null;
+        this.quantized = quantized;
+        this.x = x;
+        this.y = y;
+        this.laplacianPositive = laplacianPositive;
+    }
+
+    /**
+     * Packs descriptors and the points they were found at.
+     *
+     * @param features Feature descriptors.
+     * @param points Feature center points, one for every descriptor.
+     * @return Packed copy of the features.
+     */
+    public static PackedFeatures pack(FastQueue<SurfFeature> features, List<Point2D_F64> points) {
+        if (features.size() != points.size())
+            throw new IllegalArgumentException("PackedFeatures.pack() Every descriptor needs a point");
+        int size = features.size();
+        int length = size == 0 ? 0 : features.get(0).size();
+        double[] descriptors = new double[size * length];
+        double[] x = new double[size];
+        double[] y = new double[size];
+        boolean[] laplacianPositive = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            SurfFeature feature = features.get(i);
+            System.arraycopy(feature.value, 0, descriptors, i * length, length);
+            laplacianPositive[i] = feature.laplacianPositive;
+            Point2D_F64 point = points.get(i);
+            x[i] = point.x;
+            y[i] = point.y;
+        }
+        return new PackedFeatures(length, descriptors, x, y, laplacianPositive);
+    }
+
+    /**
+     * Reduces the precision of the descriptors.  Points are shared, not copied.
+     *
+     * @param precision Precision of the result.
+     * @param scales Scale of every dimension for int8 precision.
+     * @return Features with the argument precision, this if it already has that precision.
+     */
+    public PackedFeatures quantize(DescriptorPrecision precision, double[] scales) {
+        if (precision == getPrecision()) return this;
+        if (precision == DescriptorPrecision.DOUBLE)
+            return new PackedFeatures(length, getDescriptors(), x, y, laplacianPositive);
+        return new PackedFeatures(QuantizedDescriptors.quantize(getDescriptors(), size, length,
+                precision, scales), x, y, laplacianPositive);
+    }
+
+    /**
+     * Moves the features to other locations.  Descriptors are shared, not copied.
+     *
+     * @param x New x coordinate of every feature.
+     * @param y New y coordinate of every feature.
+     * @return Features at the argument locations.
+     */
+    public PackedFeatures relocate(double[] x, double[] y) {
+        if (quantized != null)
+            return new PackedFeatures(quantized, x, y, laplacianPositive);
+        return new PackedFeatures(length, descriptors, x, y, laplacianPositive);
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Getters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * @return Number of features.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of elements in every descriptor.  Also the stride of the descriptor array.
+     */
+    public int getDescriptorLength() {
+        return length;
+    }
+
+    /**
+     * Callers that read the descriptors repeatedly should hold on to the result, since quantized
+     * descriptors are restored again on every call.
+     *
+     * @return Backing array of all descriptor elements, or a new restored array if quantized.
+     */
+    public double[] getDescriptors() {
+        if (quantized != null)
+            return quantized.toDoubles();
+        return descriptors;
+    }
+
+    /**
+     * @return Precision the descriptors are held with.
+     */
+    public DescriptorPrecision getPrecision() {
+        return quantized == null ? DescriptorPrecision.DOUBLE : quantized.getPrecision();
+    }
+
+    /**
+     * @return Reduced precision descriptors, null for double precision.
+     */
+    public QuantizedDescriptors getQuantized() {
+        return quantized;
+    }
+
+    /**
+     * @return Backing array of x coordinates.
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /**
+     * @return Backing array of y coordinates.
+     */
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * @return Backing array of laplacian signs.
+     */
+    public boolean[] getLaplacianPositive() {
+        return laplacianPositive;
+    }
+
+    /**
+     * @param index Index of a feature.
+     * @return Index of the first descriptor element of the feature.
+     */
+    public int getOffset(int index) {
+        return index * length;
+    }
+
+    /**
+     * Creates a Surf Feature copy of a single feature.
+     *
+     * @param index Index of the feature.
+     * @return New Surf Feature.
+     */
+    public SurfFeature createSurfFeature(int index) {
+        SurfFeature feature = new SurfFeature(length);
+        if (quantized != null) {
+            for (int k = 0; k < length; k++)
+                feature.value[k] = quantized.get(index, k);
+        } else {
+            System.arraycopy(descriptors, index * length, feature.value, 0, length);
+        }
+        feature.laplacianPositive = laplacianPositive[index];
+        return feature;
+    }
+
+    @Override
+    public String toString() {
+        return "PackedFeatures{" +
+                "size=" + size +
+                ", length=" + length +
+                ", precision=" + getPrecision() +
+                '}';
+    }
+}
@@ -0,0 +1,781 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Inverted file index of product quantized descriptors (IVF-PQ) for searching the features of a large
+ * catalog of reference images.  A coarse quantizer assigns every descriptor to one of a number of
+ * inverted lists.  The residual of the descriptor to the centroid of its list is split into subspaces and
+ * every subspace is replaced by the byte index of its nearest subspace centroid, so a descriptor costs
+ * one byte per subspace plus its id.
+ * <b>Searches are asymmetric: the query is not quantized.  For every probed list a lookup table of the
+ * squared distances between the query residual and all subspace centroids is built, after which every code
+ * in the list is scored with one table lookup per subspace.  The squared distance splits into the distance
+ * to the coarse centroid, a term of the list and the centroids that is computed when the index is created,
+ * and a term of the query and the centroids that is computed once per query, so a table costs one addition
+ * per entry.</b>
+ * <b>Scores are approximate squared Euclidean distances.  Only the lists closest to the query are probed,
+ * so the true nearest neighbor can be missed; more probes trade speed for recall.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class ProductQuantizationIndex {
+
+    // Default Values.
+    public static final int DEFAULT_SUBSPACES = 16;
+    public static final int DEFAULT_CENTROIDS = 256;
+    public static final int DEFAULT_PROBES = 8;
+    public static final int DEFAULT_ITERATIONS = 20;
+    public static final int DEFAULT_TRAINING_PER_CLUSTER = 64;
+
+    /**
+     * File header values used to reject foreign or outdated files.
+     */
+    private static final int MAGIC = 0x41525051;
+    private static final int VERSION = 1;
+
+    /**
+     * Number of elements of a descriptor, of a subspace and the number of subspaces.
+     */
+    private final int length, subLength, subspaces;
+
+    /**
+     * Number of inverted lists and number of centroids in every subspace.
+     */
+    private final int lists, centroids;
+
+    /**
+     * Coarse centroids, lists rows of length values.
+     */
+    private final double[] coarse;
+
+    /**
+     * Subspace centroids.  Centroid k of subspace m starts at (m * centroids + k) * subLength.
+     */
+    private final double[] codebooks;
+
+    /**
+     * Query independent part of the lookup tables, ||c||^2 + 2 &lt;C, c&gt; of every subspace centroid c and
+     * the coarse centroid C of every list.  The table of list l starts at l * subspaces * centroids.
+     */
+    private final double[] listTerms;
+
+    /**
+     * Codes and ids of every inverted list.  Code m of the n-th entry of list c is codes[c][n * subspaces + m].
+     */
+    private final byte[][] codes;
+    private final int[][] ids;
+    private final int[] counts;
+
+    /**
+     * Location of every indexed descriptor by id.
+     */
+    private float[] x, y;
+    private int size;
+
+    /**
+     * Id of the first descriptor of every reference.
+     */
+    private int[] referenceStarts;
+    private int references;
+
+    /**
+     * Number of inverted lists searched per query.
+     */
+    private int probes = DEFAULT_PROBES;
+
+    /**
+     * Creates an empty index from trained quantizers.
+     *
+     * @param length Number of elements of a descriptor.
+     * @param subspaces Number of subspaces, a divisor of length.
+     * @param coarse Coarse centroids, row after row.
+     * @param codebooks Subspace centroids, subspace after subspace.
+     */
+    public ProductQuantizationIndex(int length, int subspaces, double[] coarse, double[] codebooks) {
+        String prefix = getClass().getSimpleName() + "() ";
+        if (coarse == null || codebooks == null)
+            throw new NullPointerException(prefix + "Null centroids");
+        if (length <= 0 || subspaces <= 0 || length % subspaces != 0)
+            throw new IllegalArgumentException(prefix + "Subspaces must divide the descriptor length");
+        if (coarse.length == 0 || coarse.length % length != 0 || codebooks.length == 0
+                || codebooks.length % length != 0 || codebooks.length / length > DEFAULT_CENTROIDS)
+            throw new IllegalArgumentException(prefix + "Array sizes do not agree");
+        this.length = length;
+        this.subspaces = subspaces;
+        this.subLength = length / subspaces;
+        this.lists = coarse.length / length;
+        this.centroids = codebooks.length / length;
+        this.coarse = coarse.clone();
+        this.codebooks = codebooks.clone();
+
+        this.listTerms = new double[lists * subspaces * centroids];
+        for (int c = 0; c < lists; c++) {
+            for (int m = 0; m < subspaces; m++) {
+                int start = c * length + m * subLength;
+                for (int k = 0; k < centroids; k++) {
+                    int row = (m * centroids + k) * subLength;
+                    double term = 0;
+                    for (int d = 0; d < subLength; d++)
+                        term += codebooks[row + d] * (codebooks[row + d] + 2 * coarse[start + d]);
+                    listTerms[(c * subspaces + m) * centroids + k] = term;
+                }
+            }
+        }
+
+        this.codes = new byte[lists][];
+        this.ids = new int[lists][];
+        this.counts = new int[lists];
+        for (int c = 0; c < lists; c++) {
+            codes[c] = new byte[0];
+            ids[c] = new int[0];
+        }
+        this.x = new float[0];
+        this.y = new float[0];
+        this.referenceStarts = new int[0];
+    }
+
+    /**
+     * Trains an index on the reference features and adds all of them.  References are numbered in
+     * iteration order.
+     *
+     * @param references Detection results of the reference images.
+     * @param lists Number of inverted lists, 1 for a plain product quantizer.
+     * @param subspaces Number of subspaces, the number of bytes per descriptor.
+     * @param seed Seed of the training, equal seeds produce equal indexes.
+     * @return Index of all reference features.
+     */
+    public static ProductQuantizationIndex build(Collection<DetectionResultArgument> references, int lists,
+                                                 int subspaces, long seed) {
+        if (references == null)
+            throw new NullPointerException("ProductQuantizationIndex.build() Null references");
+        List<PackedFeatures> corpus = new ArrayList<PackedFeatures>(references.size());
+        for (DetectionResultArgument reference : references)
+            corpus.add(reference.getPackedFeatures());
+        ProductQuantizationIndex index = train(corpus, lists, subspaces, DEFAULT_CENTROIDS, seed);
+        for (PackedFeatures features : corpus)
+            index.add(features);
+        return index;
+    }
+
+    /**
+     * Trains the coarse and the subspace quantizers with k-means on a random sample of at most
+     * {@link #DEFAULT_TRAINING_PER_CLUSTER} descriptors per cluster of the larger quantizer.
+     * The returned index is empty.
+     *
+     * @param corpus Features of the same descriptor length.
+     * @param lists Number of inverted lists, 1 for a plain product quantizer.
+     * @param subspaces Number of subspaces, a divisor of the descriptor length.
+     * @param centroids Number of centroids per subspace within [1, 256].
+     * @param seed Seed of the sampling and the k-means initialization.
+     * @return Empty index with trained quantizers.
+     */
+    public static ProductQuantizationIndex train(Collection<PackedFeatures> corpus, int lists, int subspaces,
+                                                 int centroids, long seed) {
+        if (corpus == null)
+            throw new NullPointerException("ProductQuantizationIndex.train() Null corpus");
+        if (lists <= 0)
+            throw new IllegalArgumentException("ProductQuantizationIndex.train() Need at least one list");
+        if (centroids <= 0 || centroids > DEFAULT_CENTROIDS)
+            throw new IllegalArgumentException("ProductQuantizationIndex.train() Centroids must be within " +
+                    "[1, " + DEFAULT_CENTROIDS + "]");
+        int length = -1, count = 0;
+        for (PackedFeatures features : corpus) {
+            if (features.size() == 0) continue;
+            if (length != -1 && features.getDescriptorLength() != length)
+                throw new IllegalArgumentException("ProductQuantizationIndex.train() Descriptor lengths differ");
+            length = features.getDescriptorLength();
+            count += features.size();
+        }
+        int sampleSize = Math.min(count, DEFAULT_TRAINING_PER_CLUSTER * Math.max(lists, centroids));
+        if (sampleSize < Math.max(lists, centroids))
+            throw new IllegalArgumentException("ProductQuantizationIndex.train() Need at least " +
+                    Math.max(lists, centroids) + " training descriptors");
+        if (subspaces <= 0 || length % subspaces != 0)
+            throw new IllegalArgumentException("ProductQuantizationIndex.train() Subspaces must divide " +
+                    "the descriptor length " + length);
+
+        // Reservoir sample of the corpus.
+        Random rand = new Random(seed);
+        double[] sample = new double[sampleSize * length];
+        int seen = 0;
+        for (PackedFeatures features : corpus) {
+            double[] descriptors = features.getDescriptors();
+            for (int i = 0; i < features.size(); i++, seen++) {
+                int slot = seen < sampleSize ? seen : rand.nextInt(seen + 1);
+                if (slot < sampleSize)
+                    System.arraycopy(descriptors, i * length, sample, slot * length, length);
+            }
+        }
+
+        double[] coarse = kmeans(sample, sampleSize, length, 0, length, lists, rand);
+        double[] residuals = new double[sample.length];
+        for (int i = 0; i < sampleSize; i++) {
+            int c = nearest(coarse, lists, length, sample, i * length);
+            for (int k = 0; k < length; k++)
+                residuals[i * length + k] = sample[i * length + k] - coarse[c * length + k];
+        }
+
+        int subLength = length / subspaces;
+        double[] codebooks = new double[subspaces * centroids * subLength];
+        for (int m = 0; m < subspaces; m++) {
+            double[] codebook = kmeans(residuals, sampleSize, length, m * subLength, subLength, centroids, rand);
+            System.arraycopy(codebook, 0, codebooks, m * centroids * subLength, codebook.length);
+        }
+        return new ProductQuantizationIndex(length, subspaces, coarse, codebooks);
+    }
+
+    /**
+     * Lloyd's k-means on a subspace of the data.  Centroids start at distinct random points and empty
+     * clusters are moved to a random point.
+     *
+     * @param data Points, stride values apart.
+     * @param count Number of points.
+     * @param stride Number of values between consecutive points.
+     * @param offset Index of the subspace within a point.
+     * @param dimension Number of values of the subspace.
+     * @param k Number of clusters.
+     * @param rand Random source.
+     * @return Centroids, k rows of dimension values.
+     */
+    private static double[] kmeans(double[] data, int count, int stride, int offset, int dimension, int k,
+                                   Random rand) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+        double[] means = new double[k * dimension];
+        for (int c = 0; c < k; c++) {
+            int swap = c + rand.nextInt(count - c);
+            int tmp = order[c];
+            order[c] = order[swap];
+            order[swap] = tmp;
+            System.arraycopy(data, order[c] * stride + offset, means, c * dimension, dimension);
+        }
+
+        int[] assignment = new int[count];
+        int[] sizes = new int[k];
+        double[] point = new double[dimension];
+        for (int iteration = 0; iteration < DEFAULT_ITERATIONS; iteration++) {
+            boolean changed = false;
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(data, i * stride + offset, point, 0, dimension);
+                int c = nearest(means, k, dimension, point, 0);
+                if (iteration == 0 || c != assignment[i]) {
+                    assignment[i] = c;
+                    changed = true;
+                }
+            }
+            if (!changed) break;
+
+            Arrays.fill(means, 0);
+            Arrays.fill(sizes, 0);
+            for (int i = 0; i < count; i++) {
+                int c = assignment[i];
+                sizes[c]++;
+                for (int d = 0; d < dimension; d++)
+                    means[c * dimension + d] += data[i * stride + offset + d];
+            }
+            for (int c = 0; c < k; c++) {
+                if (sizes[c] == 0) {
+                    System.arraycopy(data, rand.nextInt(count) * stride + offset, means, c * dimension, dimension);
+                    continue;
+                }
+                for (int d = 0; d < dimension; d++)
+                    means[c * dimension + d] /= sizes[c];
+            }
+        }
+        return means;
+    }
+
+    /**
+     * @return Index of the centroid closest to the point that starts at offset.
+     */
+    private static int nearest(double[] centroids, int k, int dimension, double[] point, int offset) {
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            double distance = 0;
+            int row = c * dimension;
+            for (int d = 0; d < dimension && distance < bestDistance; d++) {
+                double diff = point[offset + d] - centroids[row + d];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Mutators
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Adds the detection result of a reference image.
+     *
+     * @param reference Detection result of a reference image.
+     * @return Number of the reference.
+     */
+    public int add(DetectionResultArgument reference) {
+        if (reference == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".add() Null reference");
+        return add(reference.getPackedFeatures());
+    }
+
+    /**
+     * Encodes and adds the features of a reference image.  Ids of the features are consecutive and
+     * follow the ids of the previous reference.
+     *
+     * @param features Features of a reference image.
+     * @return Number of the reference.
+     */
+    public synchronized int add(PackedFeatures features) {
+        if (features == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".add() Null features");
+        if (features.size() > 0 && features.getDescriptorLength() != length)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".add() Expected descriptors " +
+                    "of length " + length + " not " + features.getDescriptorLength());
+        if (references == referenceStarts.length)
+            referenceStarts = Arrays.copyOf(referenceStarts, Math.max(16, references * 2));
+        referenceStarts[references] = size;
+
+        int n = features.size();
+        if (x.length < size + n) {
+            int capacity = Math.max(size + n, x.length * 2);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+        }
+        double[] descriptors = features.getDescriptors();
+        double[] fx = features.getX(), fy = features.getY();
+        double[] residual = new double[length];
+        for (int i = 0; i < n; i++) {
+            int offset = i * length;
+            int c = nearest(coarse, lists, length, descriptors, offset);
+            for (int k = 0; k < length; k++)
+                residual[k] = descriptors[offset + k] - coarse[c * length + k];
+
+            if (counts[c] == ids[c].length) {
+                int capacity = Math.max(16, counts[c] * 2);
+                ids[c] = Arrays.copyOf(ids[c], capacity);
+                codes[c] = Arrays.copyOf(codes[c], capacity * subspaces);
+            }
+            int position = counts[c] * subspaces;
+            for (int m = 0; m < subspaces; m++) {
+                int code = nearestCode(m, residual);
+                codes[c][position + m] = (byte) code;
+            }
+            ids[c][counts[c]++] = size;
+            x[size] = (float) fx[i];
+            y[size] = (float) fy[i];
+            size++;
+        }
+        return references++;
+    }
+
+    /**
+     * @return Index of the centroid of subspace m closest to the residual.
+     */
+    private int nearestCode(int m, double[] residual) {
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int k = 0; k < centroids; k++) {
+            double distance = 0;
+            int row = (m * centroids + k) * subLength;
+            for (int d = 0; d < subLength; d++) {
+                double diff = residual[m * subLength + d] - codebooks[row + d];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Search
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Associates every query descriptor with its approximate nearest indexed descriptor.  Matches have
+     * the indexed id as source and the query index as destination, mirroring the reference to other image
+     * direction of {@link uw.cse.mag.appliancereader.lib.cv.associate.AssociatePacked}.
+     * <b>With backwards validation an id keeps only the query that scores strictly best against it.</b>
+     *
+     * @param queries Features to search for.
+     * @param maxDistance Scores must be strictly below this value.
+     * @param ratio Maximum ratio between the best and second best score, 1 disables the test.
+     * @param backwardsValidation Whether every id may be matched by one query only.
+     * @param squared Whether scores are squared distances.  Thresholds apply to the same kind of score.
+     * @return Matches from indexed id to query index.
+     */
+    public synchronized FastQueue<AssociatedIndex> associate(PackedFeatures queries, double maxDistance,
+                                                             double ratio, boolean backwardsValidation,
+                                                             boolean squared) {
+        if (queries == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".associate() Null queries");
+        if (queries.size() > 0 && queries.getDescriptorLength() != length)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".associate() Expected " +
+                    "descriptors of length " + length + " not " + queries.getDescriptorLength());
+        FastQueue<AssociatedIndex> matches = new FastQueue<AssociatedIndex>(10, AssociatedIndex.class, true);
+        int n = queries.size();
+        if (n == 0 || size == 0)
+            return matches;
+
+        double[] descriptors = queries.getDescriptors();
+        Search search = new Search();
+        int[] bestId = new int[n];
+        double[] bestScore = new double[n];
+        Map<Integer, Integer> claims = new HashMap<Integer, Integer>();
+        for (int i = 0; i < n; i++) {
+            search.search(descriptors, i * length);
+            double best = squared ? search.best : Math.sqrt(search.best);
+            double second = squared ? search.second : Math.sqrt(search.second);
+            bestId[i] = -1;
+            if (search.id == -1 || !(best < maxDistance) || (ratio < 1 && best > ratio * second))
+                continue;
+            bestId[i] = search.id;
+            bestScore[i] = best;
+            if (!backwardsValidation) continue;
+
+            // Claims of -1 mark ids that two queries reached with the same score.
+            Integer claim = claims.get(search.id);
+            if (claim == null || (claim != -1 && best < bestScore[claim]))
+                claims.put(search.id, i);
+            else if (claim != -1 && best == bestScore[claim])
+                claims.put(search.id, -1);
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (bestId[i] == -1) continue;
+            if (backwardsValidation && claims.get(bestId[i]) != i) continue;
+            matches.grow().setAssociation(bestId[i], i, bestScore[i]);
+        }
+        return matches;
+    }
+
+    /**
+     * Work space and result of a single query.
+     */
+    private class Search {
+
+        private final double[] queryTerms = new double[subspaces * centroids];
+        private final double[] table = new double[subspaces * centroids];
+        private final int[] probed = new int[Math.min(probes, lists)];
+        private final double[] probedDistance = new double[probed.length];
+
+        /**
+         * Best id and the best and second best squared distance of the last query.
+         */
+        private int id;
+        private double best, second;
+
+        /**
+         * Searches the closest lists for the query that starts at offset.
+         */
+        private void search(double[] query, int offset) {
+            selectLists(query, offset);
+            fillQueryTerms(query, offset);
+            id = -1;
+            best = Double.MAX_VALUE;
+            second = Double.MAX_VALUE;
+            for (int p = 0; p < probed.length; p++) {
+                int c = probed[p];
+                if (counts[c] == 0) continue;
+                // Distance to the coarse centroid is spread over the first subspace.
+                int start = c * table.length;
+                for (int t = 0; t < table.length; t++)
+                    table[t] = listTerms[start + t] + queryTerms[t];
+                for (int k = 0; k < centroids; k++)
+                    table[k] += probedDistance[p];
+
+                byte[] listCodes = codes[c];
+                int[] listIds = ids[c];
+                for (int e = 0, position = 0; e < counts[c]; e++, position += subspaces) {
+                    double distance = 0;
+                    for (int m = 0, row = 0; m < subspaces; m++, row += centroids)
+                        distance += table[row + (listCodes[position + m] & 0xFF)];
+                    if (distance < best) {
+                        second = best;
+                        best = distance;
+                        id = listIds[e];
+                    } else if (distance < second) {
+                        second = distance;
+                    }
+                }
+            }
+            // Rounding of the expanded terms can push exact matches slightly below zero.
+            best = Math.max(best, 0);
+            second = Math.max(second, 0);
+        }
+
+        /**
+         * Keeps the lists with the closest coarse centroids, closest first.
+         */
+        private void selectLists(double[] query, int offset) {
+            int kept = 0;
+            for (int c = 0; c < lists; c++) {
+                double distance = 0;
+                for (int k = 0; k < length; k++) {
+                    double diff = query[offset + k] - coarse[c * length + k];
+                    distance += diff * diff;
+                }
+                if (kept == probed.length && distance >= probedDistance[kept - 1]) continue;
+                int position = kept == probed.length ? kept - 1 : kept++;
+                while (position > 0 && probedDistance[position - 1] > distance) {
+                    probed[position] = probed[position - 1];
+                    probedDistance[position] = probedDistance[position - 1];
+                    position--;
+                }
+                probed[position] = c;
+                probedDistance[position] = distance;
+            }
+        }
+
+        /**
+         * Computes -2 &lt;q, c&gt; of the query and every subspace centroid.
+         */
+        private void fillQueryTerms(double[] query, int offset) {
+            for (int m = 0; m < subspaces; m++) {
+                int start = offset + m * subLength;
+                for (int k = 0; k < centroids; k++) {
+                    int row = (m * centroids + k) * subLength;
+                    double dot = 0;
+                    for (int d = 0; d < subLength; d++)
+                        dot += query[start + d] * codebooks[row + d];
+                    queryTerms[m * centroids + k] = -2 * dot;
+                }
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Persistence
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Writes the quantizers, codes and locations of the index to a file.
+     *
+     * @param file File to write.
+     * @throws IOException The file could not be written.
+     */
+    public synchronized void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(length);
+            out.writeInt(subspaces);
+            out.writeInt(lists);
+            out.writeInt(centroids);
+            for (double value : coarse)
+                out.writeDouble(value);
+            for (double value : codebooks)
+                out.writeDouble(value);
+            out.writeInt(references);
+            for (int r = 0; r < references; r++)
+                out.writeInt(referenceStarts[r]);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeFloat(x[i]);
+                out.writeFloat(y[i]);
+            }
+            for (int c = 0; c < lists; c++) {
+                out.writeInt(counts[c]);
+                for (int e = 0; e < counts[c]; e++)
+                    out.writeInt(ids[c][e]);
+                out.write(codes[c], 0, counts[c] * subspaces);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(File)}.
+     *
+     * @param file File to read.
+     * @return The index of the file.
+     * @throws IOException The file could not be read or is not an index.
+     */
+    public static ProductQuantizationIndex read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Unrecognized header in " + file);
+            int length = in.readInt();
+            int subspaces = in.readInt();
+            int lists = in.readInt();
+            int centroids = in.readInt();
+            if (length <= 0 || subspaces <= 0 || length % subspaces != 0 || lists <= 0
+                    || centroids <= 0 || centroids > DEFAULT_CENTROIDS)
+                throw new IOException("Invalid dimensions in " + file);
+            double[] coarse = readDoubles(in, lists * length);
+            double[] codebooks = readDoubles(in, centroids * length);
+            ProductQuantizationIndex index = new ProductQuantizationIndex(length, subspaces, coarse, codebooks);
+
+            index.references = in.readInt();
+            index.referenceStarts = new int[index.references];
+            for (int r = 0; r < index.references; r++)
+                index.referenceStarts[r] = in.readInt();
+            index.size = in.readInt();
+            index.x = new float[index.size];
+            index.y = new float[index.size];
+            for (int i = 0; i < index.size; i++) {
+                index.x[i] = in.readFloat();
+                index.y[i] = in.readFloat();
+            }
+            for (int c = 0; c < lists; c++) {
+                int count = in.readInt();
+                index.counts[c] = count;
+                index.ids[c] = new int[count];
+                for (int e = 0; e < count; e++)
+                    index.ids[c][e] = in.readInt();
+                index.codes[c] = new byte[count * subspaces];
+                in.readFully(index.codes[c]);
+            }
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return The next count doubles of the stream.
+     */
+    private static double[] readDoubles(DataInputStream in, int count) throws IOException {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++)
+            values[i] = in.readDouble();
+        return values;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Setters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Sets the number of inverted lists searched per query.  More probes find the true nearest
+     * neighbor more often and take proportionally longer.
+     *
+     * @param probes Number of lists to search.
+     */
+    public synchronized void setProbes(int probes) {
+        if (probes <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".setProbes() " +
+                    "Can't have nonpositive probes");
+        this.probes = probes;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Getters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the reference a descriptor belongs to.
+     *
+     * @param id Id of an indexed descriptor.
+     * @return Number of the reference the descriptor was added with.
+     */
+    public synchronized int getReference(int id) {
+        if (id < 0 || id >= size)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".getReference() Invalid id " + id);
+        // Last reference that starts at or before the id, empty references share their start.
+        int low = 0, high = references - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (referenceStarts[middle] <= id)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return X coordinate of an indexed descriptor.
+     */
+    public synchronized double getX(int id) {
+        return x[id];
+    }
+
+    /**
+     * @return Y coordinate of an indexed descriptor.
+     */
+    public synchronized double getY(int id) {
+        return y[id];
+    }
+
+    /**
+     * @return Number of indexed descriptors.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of references added.
+     */
+    public synchronized int getReferenceCount() {
+        return references;
+    }
+
+    /**
+     * @return Number of elements of indexed descriptors.
+     */
+    public int getDescriptorLength() {
+        return length;
+    }
+
+    /**
+     * @return Number of bytes of a descriptor code.
+     */
+    public int getSubspaces() {
+        return subspaces;
+    }
+
+    /**
+     * @return Number of inverted lists.
+     */
+    public int getLists() {
+        return lists;
+    }
+
+    /**
+     * @return Number of inverted lists searched per query.
+     */
+    public synchronized int getProbes() {
+        return probes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ProductQuantizationIndex{" +
+                "length=" + length +
+                ", subspaces=" + subspaces +
+                ", lists=" + lists +
+                ", size=" + size +
+                ", references=" + references +
+                '}';
+    }
+}
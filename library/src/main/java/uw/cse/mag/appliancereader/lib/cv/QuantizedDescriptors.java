@@ -0,0 +1,254 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import uw.cse.mag.appliancereader.lib.cv.params.core.DescriptorPrecision;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Descriptors stored with reduced precision, back to back with a stride of the descriptor length.
+ * {@link DescriptorPrecision#FLOAT} descriptors are single precision copies.
+ * {@link DescriptorPrecision#INT8} descriptors are scalar quantized, element k of a descriptor is
+ * <b>codes[i * length + k] * scales[k]</b>.
+ * Descriptors quantized with the same scales can be compared without being restored.
+ * <b>Getters return the backing arrays without copying.  Clients must not modify them.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class QuantizedDescriptors {
+
+    /**
+     * Largest magnitude of a code.
+     */
+    public static final int MAX_CODE = 127;
+
+    private final DescriptorPrecision precision;
+
+    /**
+     * Number of descriptors and number of elements in each descriptor.
+     */
+    private final int size, length;
+
+    /**
+     * Single precision elements.  Null unless the precision is float.
+     */
+    private final float[] floats;
+
+    /**
+     * Quantized elements and the scale of every dimension.  Null unless the precision is int8.
+     */
+    private final byte[] codes;
+    private final double[] scales;
+
+    /**
+     * Wraps single precision descriptors.  The array is not copied.
+     *
+     * @param length Number of elements in each descriptor.
+     * @param floats Descriptor elements, size * length values.
+     */
+    public QuantizedDescriptors(int length, float[] floats) {
+        this(DescriptorPrecision.FLOAT, length, floats, null, null,
+                floats == null ? 0 : floats.length);
+    }
+
+    /**
+     * Wraps scalar quantized descriptors.  The arrays are not copied.
+     *
+     * @param length Number of elements in each descriptor.
+     * @param codes Quantized descriptor elements, size * length values.
+     * @param scales Scale of every dimension, length values.
+     */
+    public QuantizedDescriptors(int length, byte[] codes, double[] scales) {
+        this(DescriptorPrecision.INT8, length, null, codes, scales,
+                codes == null ? 0 : codes.length);
+    }
+
+    private QuantizedDescriptors(DescriptorPrecision precision, int length, float[] floats,
+                                 byte[] codes, double[] scales, int elements) {
+        String prefix = getClass().getSimpleName() + "() ";
+        if (floats == null && codes == null)
+            throw new NullPointerException(prefix + "Null descriptors");
+        if (codes != null && scales == null)
+            throw new NullPointerException(prefix + "Null scales");
+        if (length <= 0)
+            throw new IllegalArgumentException(prefix + "Descriptor length must be positive");
+        if (elements % length != 0 || (scales != null && scales.length != length))
+            throw new IllegalArgumentException(prefix + "Array sizes do not agree");
+        this.precision = precision;
+        this.size = elements / length;
+        this.length = length;
+        this.floats = floats;
+        this.codes = codes;
+        this.scales = scales;
+    }
+
+    /**
+     * Reduces the precision of packed descriptors.
+     *
+     * @param descriptors Descriptor elements, size * length values.
+     * @param size Number of descriptors.
+     * @param length Number of elements in each descriptor.
+     * @param precision {@link DescriptorPrecision#FLOAT} or {@link DescriptorPrecision#INT8}.
+     * @param scales Scale of every dimension, only used for int8.  Elements beyond
+     *               {@link #MAX_CODE} times the scale are clamped.
+     * @return Descriptors with reduced precision.
+     */
+    public static QuantizedDescriptors quantize(double[] descriptors, int size, int length,
+                                                DescriptorPrecision precision, double[] scales) {
+        int elements = size * length;
+        switch (precision) {
+            case FLOAT:
+                float[] floats = new float[elements];
+                for (int i = 0; i < elements; i++)
+                    floats[i] = (float) descriptors[i];
+                return new QuantizedDescriptors(length, floats);
+            case INT8:
+                if (scales == null || scales.length != length)
+                    throw new IllegalArgumentException("QuantizedDescriptors.quantize() Need a scale " +
+                            "for every dimension");
+                byte[] codes = new byte[elements];
+                for (int i = 0; i < elements; i++) {
+                    long code = Math.round(descriptors[i] / scales[i % length]);
+                    codes[i] = (byte) Math.max(-MAX_CODE, Math.min(MAX_CODE, code));
+                }
+                return new QuantizedDescriptors(length, codes, scales);
+            default:
+                throw new IllegalArgumentException("QuantizedDescriptors.quantize() Unsupported \"" +
+                        precision + "\"");
+        }
+    }
+
+    /**
+     * Concatenates descriptors of the same precision, length and scales.
+     *
+     * @param parts Descriptors to concatenate, at least one.
+     * @return Descriptors of all parts in order.
+     */
+    public static QuantizedDescriptors concat(List<QuantizedDescriptors> parts) {
+        QuantizedDescriptors first = parts.get(0);
+        int elements = 0;
+        for (QuantizedDescriptors part : parts) {
+            if (part.precision != first.precision || part.length != first.length
+                    || !Arrays.equals(part.scales, first.scales))
+                throw new IllegalArgumentException("QuantizedDescriptors.concat() Parts do not agree");
+            elements += part.size * part.length;
+        }
+        int index = 0;
+        if (first.precision == DescriptorPrecision.FLOAT) {
+            float[] floats = new float[elements];
+            for (QuantizedDescriptors part : parts) {
+                System.arraycopy(part.floats, 0, floats, index, part.floats.length);
+                index += part.floats.length;
+            }
+            return new QuantizedDescriptors(first.length, floats);
+        }
+        byte[] codes = new byte[elements];
+        for (QuantizedDescriptors part : parts) {
+            System.arraycopy(part.codes, 0, codes, index, part.codes.length);
+            index += part.codes.length;
+        }
+        return new QuantizedDescriptors(first.length, codes, first.scales);
+    }
+
+    /**
+     * Scales for unit length descriptors such as SURF and SIFT, whose elements never exceed 1.
+     *
+     * @param length Number of elements in each descriptor.
+     * @return Scale of 1 / {@link #MAX_CODE} for every dimension.
+     */
+    public static double[] uniformScales(int length) {
+        double[] scales = new double[length];
+        Arrays.fill(scales, 1.0 / MAX_CODE);
+        return scales;
+    }
+
+    /**
+     * Learns the scale of every dimension from a corpus of descriptors, so the largest
+     * magnitude of each dimension maps to {@link #MAX_CODE}.
+     *
+     * @param descriptors Descriptor elements, size * length values.
+     * @param size Number of descriptors.
+     * @param length Number of elements in each descriptor.
+     * @return Scale of every dimension.
+     */
+    public static double[] learnScales(double[] descriptors, int size, int length) {
+        double[] scales = new double[length];
+        for (int i = 0; i < size * length; i++)
+            scales[i % length] = Math.max(scales[i % length], Math.abs(descriptors[i]));
+        for (int k = 0; k < length; k++)
+            scales[k] = scales[k] > 0 ? scales[k] / MAX_CODE : 1.0 / MAX_CODE;
+        return scales;
+    }
+
+    ///////////////////////////////////////////////////////////////
+    ////    Getters
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * @param index Index of a descriptor.
+     * @param element Index of an element of the descriptor.
+     * @return Restored value of the element.
+     */
+    public double get(int index, int element) {
+        int i = index * length + element;
+        return floats != null ? floats[i] : codes[i] * scales[element];
+    }
+
+    /**
+     * @return Restored copy of all descriptor elements.
+     */
+    public double[] toDoubles() {
+        double[] descriptors = new double[size * length];
+        for (int i = 0; i < descriptors.length; i++)
+            descriptors[i] = floats != null ? floats[i] : codes[i] * scales[i % length];
+        return descriptors;
+    }
+
+    public DescriptorPrecision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return Number of descriptors.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of elements in each descriptor.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return Backing array of single precision elements, null unless the precision is float.
+     */
+    public float[] getFloats() {
+        return floats;
+    }
+
+    /**
+     * @return Backing array of quantized elements, null unless the precision is int8.
+     */
+    public byte[] getCodes() {
+        return codes;
+    }
+
+    /**
+     * @return Scale of every dimension, null unless the precision is int8.
+     */
+    public double[] getScales() {
+        return scales;
+    }
+
+    @Override
+    public String toString() {
+        return "QuantizedDescriptors{" +
+                "precision=" + precision +
+                ", size=" + size +
+                ", length=" + length +
+                '}';
+    }
+}
@@ -0,0 +1,138 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import org.ejml.data.DenseMatrix64F;
+import uw.cse.mag.appliancereader.lib.data.Appliance;
+import uw.cse.mag.appliancereader.lib.data.DisplayFeature;
+import uw.cse.mag.appliancereader.lib.data.RectangularBoundary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Builds the rectangular regions that restrict feature detection in {@link ImagePointAssociator}.
+ * Regions are either taken from the display boundaries of an appliance in reference image coordinates
+ * or projected into another image with a homography.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public final class RegionsOfInterest {
+
+    /**
+     * Cannot instantiate.
+     */
+    private RegionsOfInterest() {}
+
+    /**
+     * Collects the rectangular boundaries of every display feature of the appliance.
+     *
+     * @param appliance Appliance with display features.
+     * @return Regions in reference image coordinates.
+     */
+    public static List<RectangularBoundary> of(Appliance appliance) {
+        if (appliance == null)
+            throw new NullPointerException("RegionsOfInterest.of() Null appliance");
+        List<RectangularBoundary> regions = new ArrayList<RectangularBoundary>();
+        for (DisplayFeature feature : appliance.getDisplayFeatures()) {
+            if (feature.getBoundary() instanceof RectangularBoundary)
+                regions.add((RectangularBoundary) feature.getBoundary());
+        }
+        return regions;
+    }
+
+    /**
+     * Projects regions with a homography and pads the bounding box of every projected region.
+     * Regions that project behind the camera are dropped.
+     *
+     * @param regions Regions in the source image of the homography.
+     * @param homography 3x3 homography from the source image to the destination image.
+     * @param padding Number of pixels added to every side of the projected regions.
+     * @return Regions in destination image coordinates.
+     */
+    public static List<RectangularBoundary> project(Collection<RectangularBoundary> regions,
+                                                    DenseMatrix64F homography, int padding) {
+        if (regions == null)
+            throw new NullPointerException("RegionsOfInterest.project() Null regions");
+        if (homography == null)
+            throw new NullPointerException("RegionsOfInterest.project() Null homography");
+        if (homography.numRows != 3 || homography.numCols != 3)
+            throw new IllegalArgumentException("RegionsOfInterest.project() Homography must be 3x3");
+
+        List<RectangularBoundary> projected = new ArrayList<RectangularBoundary>(regions.size());
+        for (RectangularBoundary region : regions) {
+            double[] xs = {region.getX(), region.getX() + region.getWidth()};
+            double[] ys = {region.getY(), region.getY() + region.getHeight()};
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            boolean valid = true;
+            for (double x : xs) {
+                for (double y : ys) {
+                    double w = homography.get(2, 0) * x + homography.get(2, 1) * y + homography.get(2, 2);
+                    if (w <= 0) {
+                        valid = false;
+                        continue;
+                    }
+                    double px = (homography.get(0, 0) * x + homography.get(0, 1) * y + homography.get(0, 2)) / w;
+                    double py = (homography.get(1, 0) * x + homography.get(1, 1) * y + homography.get(1, 2)) / w;
+                    minX = Math.min(minX, px);
+                    minY = Math.min(minY, py);
+                    maxX = Math.max(maxX, px);
+                    maxY = Math.max(maxY, py);
+                }
+            }
+            if (!valid) continue;
+            int x0 = (int) Math.floor(minX) - padding;
+            int y0 = (int) Math.floor(minY) - padding;
+            int x1 = (int) Math.ceil(maxX) + padding;
+            int y1 = (int) Math.ceil(maxY) + padding;
+            projected.add(new RectangularBoundary(x0, y0, x1 - x0, y1 - y0));
+        }
+        return projected;
+    }
+
+    /**
+     * Clips regions to the image and merges overlapping regions into their bounding box,
+     * so no pixel is described twice.
+     *
+     * @param regions Regions to clip.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @return Disjoint non empty regions within the image.
+     */
+    static List<RectangularBoundary> clipAndMerge(Collection<RectangularBoundary> regions,
+                                                  int width, int height) {
+        List<int[]> boxes = new ArrayList<int[]>();
+        for (RectangularBoundary region : regions) {
+            int x0 = Math.max(region.getX(), 0);
+            int y0 = Math.max(region.getY(), 0);
+            int x1 = Math.min(region.getX() + region.getWidth(), width);
+            int y1 = Math.min(region.getY() + region.getHeight(), height);
+            if (x1 > x0 && y1 > y0)
+                boxes.add(new int[] {x0, y0, x1, y1});
+        }
+
+        // Merge until no two boxes overlap.
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < boxes.size() && !merged; i++) {
+                for (int j = i + 1; j < boxes.size() && !merged; j++) {
+                    int[] a = boxes.get(i), b = boxes.get(j);
+                    if (a[0] < b[2] && b[0] < a[2] && a[1] < b[3] && b[1] < a[3]) {
+                        a[0] = Math.min(a[0], b[0]);
+                        a[1] = Math.min(a[1], b[1]);
+                        a[2] = Math.max(a[2], b[2]);
+                        a[3] = Math.max(a[3], b[3]);
+                        boxes.remove(j);
+                        merged = true;
+                    }
+                }
+            }
+        }
+
+        List<RectangularBoundary> clipped = new ArrayList<RectangularBoundary>(boxes.size());
+        for (int[] box : boxes)
+            clipped.add(new RectangularBoundary(box[0], box[1], box[2] - box[0], box[3] - box[1]));
+        return clipped;
+    }
+}
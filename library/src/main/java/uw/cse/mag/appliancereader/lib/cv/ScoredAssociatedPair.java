@@ -0,0 +1,68 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.struct.geo.AssociatedPair;
+
+import java.util.Comparator;
+
+/**
+ * Associated pair of points that keeps the score its descriptors were associated with.
+ * <b>Lower scores are better, as for the associaters that created the pair.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class ScoredAssociatedPair extends AssociatedPair {
+
+    /**
+     * Orders pairs from the best to the worst association score.  Pairs without a score
+     * are ordered after scored pairs.
+     */
+    public static final Comparator<AssociatedPair> BEST_FIRST = new Comparator<AssociatedPair>() {
+        @Override
+        public int compare(AssociatedPair a, AssociatedPair b) {
+            return Double.compare(scoreOf(a), scoreOf(b));
+        }
+    };
+
+    /**
+     * Association score of the descriptors.
+     */
+    private final double score;
+
+    /**
+     * Creates a scored pair.
+     *
+     * @param x1 X coordinate in the first image.
+     * @param y1 Y coordinate in the first image.
+     * @param x2 X coordinate in the second image.
+     * @param y2 Y coordinate in the second image.
+     * @param score Association score, lower is better.
+     */
+    public ScoredAssociatedPair(double x1, double y1, double x2, double y2, double score) {
+        super(x1, y1, x2, y2);
+        this.score = score;
+    }
+
+    /**
+     * @return Association score, lower is better.
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @param pair Pair to get the score of.
+     * @return Score of a scored pair, positive infinity for other pairs.
+     */
+    public static double scoreOf(AssociatedPair pair) {
+        return pair instanceof ScoredAssociatedPair ? ((ScoredAssociatedPair) pair).score : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public String toString() {
+        return "ScoredAssociatedPair{" +
+                "p1=" + p1 +
+                ", p2=" + p2 +
+                ", score=" + score +
+                '}';
+    }
+}
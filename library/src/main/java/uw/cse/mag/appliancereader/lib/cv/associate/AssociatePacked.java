@@ -0,0 +1,315 @@
+package uw.cse.mag.appliancereader.lib.cv.associate;
+
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+import org.ejml.data.DenseMatrix64F;
+import uw.cse.mag.appliancereader.lib.cv.params.core.Scorer;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * Greedy association of descriptors that are stored back to back in {@link DoubleBuffer}s.
+ * Descriptors are read in place, so heap buffers and memory mapped buffers are matched without
+ * creating a descriptor object per feature.
+ * <b>Every source is assigned the destination with the lowest score below the maximum distance.
+ * With backwards validation a match is dropped if another source scores equal or better against
+ * the same destination.  This mirrors the greedy association of BoofCV.</b>
+ * <b>If a ratio below 1 is set, the best score must also be at most ratio times the second best score.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class AssociatePacked {
+
+    /**
+     * Type of score.  Only Euclidean and sum of absolute difference scores are supported.
+     */
+    private final Scorer scorer;
+
+    /**
+     * Whether Euclidean scores are squared.
+     */
+    private final boolean squareEuclidean;
+
+    /**
+     * Scores must be strictly below this value to be associated.
+     */
+    private final double maxDistance;
+
+    /**
+     * Whether a match must also be the best match for its destination.
+     */
+    private final boolean backwardsValidation;
+
+    /**
+     * Required ratio between the best and the second best score.
+     */
+    private double scoreRatio = 1;
+
+    /**
+     * Output matches.
+     */
+    private final FastQueue<AssociatedIndex> matches =
+            new FastQueue<AssociatedIndex>(10, AssociatedIndex.class, true);
+
+    /**
+     * Work space.
+     */
+    private int[] bestIndex = new int[0];
+    private double[] bestScore = new double[0];
+
+    /**
+     * Best source of every destination with its score and the second best score of any other source.
+     */
+    private int[] dstBest = new int[0];
+    private double[] dstBestScore = new double[0], dstSecondScore = new double[0];
+
+    /**
+     * Creates a packed associater.
+     *
+     * @param scorer Type of score to use.
+     * @param squareEuclidean Whether Euclidean scores are squared.  Default scores are always squared.
+     * @param maxDistance Scores must be below this value to be associated.
+     * @param backwardsValidation Whether matches are validated from destination to source.
+     */
+    public AssociatePacked(Scorer scorer, boolean squareEuclidean, double maxDistance,
+                           boolean backwardsValidation) {
+        if (scorer == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null scorer");
+        if (scorer != Scorer.DEFAULT && scorer != Scorer.EUCLIDEAN && scorer != Scorer.SAD)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Unsupported " +
+                    "\"" + scorer + "\"");
+        this.scorer = scorer;
+        this.squareEuclidean = scorer == Scorer.DEFAULT || squareEuclidean;
+        this.maxDistance = maxDistance;
+        this.backwardsValidation = backwardsValidation;
+    }
+
+    /**
+     * Sets the ratio between the best and the second best score.  The ratio is
+     * applied to distances, for squared scores it is squared internally.
+     *
+     * @param ratio Ratio in (0, 1], 1 disables the test.
+     */
+    public void setRatio(double ratio) {
+        if (ratio <= 0 || ratio > 1)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".setRatio() " +
+                    "Ratio must be in (0, 1]");
+        this.scoreRatio = scorer != Scorer.SAD && squareEuclidean ? ratio * ratio : ratio;
+    }
+
+    /**
+     * Associates every source descriptor with the destination descriptors.
+     * Descriptor i of a buffer starts at absolute index i * length.
+     *
+     * @param src Source descriptors.
+     * @param numSrc Number of source descriptors.
+     * @param dst Destination descriptors.
+     * @param numDst Number of destination descriptors.
+     * @param length Number of elements of each descriptor.
+     * @return Matches from source index to destination index.
+     */
+    public FastQueue<AssociatedIndex> associate(DoubleBuffer src, int numSrc,
+                                                DoubleBuffer dst, int numDst, int length) {
+        matches.reset();
+        if (numSrc == 0 || numDst == 0)
+            return matches;
+        if (bestIndex.length < numSrc) {
+            bestIndex = new int[numSrc];
+            bestScore = new double[numSrc];
+        }
+        if (backwardsValidation) {
+            if (dstBest.length < numDst) {
+                dstBest = new int[numDst];
+                dstBestScore = new double[numDst];
+                dstSecondScore = new double[numDst];
+            }
+            Arrays.fill(dstBest, 0, numDst, -1);
+            Arrays.fill(dstBestScore, 0, numDst, Double.MAX_VALUE);
+            Arrays.fill(dstSecondScore, 0, numDst, Double.MAX_VALUE);
+        }
+
+        for (int i = 0; i < numSrc; i++) {
+            double best = Double.MAX_VALUE, second = Double.MAX_VALUE;
+            int index = -1;
+            for (int j = 0; j < numDst; j++) {
+                double score = score(src, i * length, dst, j * length, length);
+                if (backwardsValidation) {
+                    if (score < dstBestScore[j]) {
+                        dstSecondScore[j] = dstBestScore[j];
+                        dstBestScore[j] = score;
+                        dstBest[j] = i;
+                    } else if (score < dstSecondScore[j]) {
+                        dstSecondScore[j] = score;
+                    }
+                }
+                if (score < best) {
+                    second = best;
+                    best = score;
+                    index = j;
+                } else if (score < second) {
+                    second = score;
+                }
+            }
+            if (!(best < maxDistance) || (scoreRatio < 1 && best > scoreRatio * second))
+                index = -1;
+            bestIndex[i] = index;
+            bestScore[i] = best;
+        }
+
+        for (int i = 0; i < numSrc; i++) {
+            int index = bestIndex[i];
+            if (index == -1) continue;
+            // No other source may score equal or better against the destination.
+            if (backwardsValidation && (dstBest[index] != i || !(dstSecondScore[index] > bestScore[i])))
+                continue;
+            matches.grow().setAssociation(i, index, bestScore[i]);
+        }
+        return matches;
+    }
+
+    /**
+     * Associates every source descriptor with the destination descriptors inside a window around its
+     * location mapped by a homography.  Destinations are bucketed into a grid of window sized cells, so
+     * only nearby destinations are scored.  Thresholds apply as in
+     * {@link #associate(DoubleBuffer, int, DoubleBuffer, int, int)}, and backwards validation compares a
+     * match against every source that scored the same destination.
+     *
+     * @param src Source descriptors.
+     * @param srcX X coordinate of every source.
+     * @param srcY Y coordinate of every source.
+     * @param numSrc Number of source descriptors.
+     * @param dst Destination descriptors.
+     * @param dstX X coordinate of every destination.
+     * @param dstY Y coordinate of every destination.
+     * @param numDst Number of destination descriptors.
+     * @param length Number of elements of each descriptor.
+     * @param homography Homography from source to destination coordinates.
+     * @param window Maximum distance in pixels between a mapped source and its destination.
+     * @return Matches from source index to destination index.
+     */
+    public FastQueue<AssociatedIndex> associateWindowed(DoubleBuffer src, double[] srcX, double[] srcY,
+                                                        int numSrc, DoubleBuffer dst, double[] dstX,
+                                                        double[] dstY, int numDst, int length,
+                                                        DenseMatrix64F homography, double window) {
+        if (window <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".associateWindowed() " +
+                    "Window must be positive");
+        matches.reset();
+        if (numSrc == 0 || numDst == 0)
+            return matches;
+        if (bestIndex.length < numSrc) {
+            bestIndex = new int[numSrc];
+            bestScore = new double[numSrc];
+        }
+
+        // Bucket the destinations into window sized cells.
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int j = 0; j < numDst; j++) {
+            minX = Math.min(minX, dstX[j]);
+            minY = Math.min(minY, dstY[j]);
+            maxX = Math.max(maxX, dstX[j]);
+            maxY = Math.max(maxY, dstY[j]);
+        }
+        int columns = (int) ((maxX - minX) / window) + 1;
+        int rows = (int) ((maxY - minY) / window) + 1;
+        int[] head = new int[rows * columns];
+        Arrays.fill(head, -1);
+        int[] next = new int[numDst];
+        for (int j = 0; j < numDst; j++) {
+            int cell = (int) ((dstY[j] - minY) / window) * columns + (int) ((dstX[j] - minX) / window);
+            next[j] = head[cell];
+            head[cell] = j;
+        }
+
+        // Best score of any source against every destination, -1 sources mark ties.
+        int[] dstBest = new int[numDst];
+        double[] dstBestScore = new double[numDst];
+        Arrays.fill(dstBestScore, Double.MAX_VALUE);
+
+        double[] h = homography.data;
+        double windowSq = window * window;
+        for (int i = 0; i < numSrc; i++) {
+            bestIndex[i] = -1;
+            double w = h[6] * srcX[i] + h[7] * srcY[i] + h[8];
+            if (w == 0) continue;
+            double px = (h[0] * srcX[i] + h[1] * srcY[i] + h[2]) / w;
+            double py = (h[3] * srcX[i] + h[4] * srcY[i] + h[5]) / w;
+            int left = (int) Math.floor((px - window - minX) / window);
+            int right = (int) Math.floor((px + window - minX) / window);
+            int top = (int) Math.floor((py - window - minY) / window);
+            int bottom = (int) Math.floor((py + window - minY) / window);
+            if (right < 0 || bottom < 0 || left >= columns || top >= rows) continue;
+
+            double best = Double.MAX_VALUE, second = Double.MAX_VALUE;
+            int index = -1;
+            for (int row = Math.max(0, top); row <= Math.min(rows - 1, bottom); row++) {
+                for (int column = Math.max(0, left); column <= Math.min(columns - 1, right); column++) {
+                    for (int j = head[row * columns + column]; j != -1; j = next[j]) {
+                        double dx = dstX[j] - px, dy = dstY[j] - py;
+                        if (dx * dx + dy * dy > windowSq) continue;
+                        double score = score(src, i * length, dst, j * length, length);
+                        if (score < dstBestScore[j]) {
+                            dstBestScore[j] = score;
+                            dstBest[j] = i;
+                        } else if (score == dstBestScore[j]) {
+                            dstBest[j] = -1;
+                        }
+                        if (score < best) {
+                            second = best;
+                            best = score;
+                            index = j;
+                        } else if (score < second) {
+                            second = score;
+                        }
+                    }
+                }
+            }
+            if (!(best < maxDistance) || (scoreRatio < 1 && best > scoreRatio * second))
+                index = -1;
+            bestIndex[i] = index;
+            bestScore[i] = best;
+        }
+
+        for (int i = 0; i < numSrc; i++) {
+            int index = bestIndex[i];
+            if (index == -1) continue;
+            if (backwardsValidation && dstBest[index] != i) continue;
+            matches.grow().setAssociation(i, index, bestScore[i]);
+        }
+        return matches;
+    }
+
+    /**
+     * Scores two descriptors.  Lower is better.
+     *
+     * @param a First buffer.
+     * @param offsetA Index of the first element in the first buffer.
+     * @param b Second buffer.
+     * @param offsetB Index of the first element in the second buffer.
+     * @param length Number of elements.
+     * @return Score between the descriptors.
+     */
+    public double score(DoubleBuffer a, int offsetA, DoubleBuffer b, int offsetB, int length) {
+        double total = 0;
+        if (scorer == Scorer.SAD) {
+            for (int k = 0; k < length; k++)
+                total += Math.abs(a.get(offsetA + k) - b.get(offsetB + k));
+            return total;
+        }
+        for (int k = 0; k < length; k++) {
+            double d = a.get(offsetA + k) - b.get(offsetB + k);
+            total += d * d;
+        }
+        return squareEuclidean ? total : Math.sqrt(total);
+    }
+
+    /**
+     * @return Matches of the last association.
+     */
+    public FastQueue<AssociatedIndex> getMatches() {
+        return matches;
+    }
+
+}
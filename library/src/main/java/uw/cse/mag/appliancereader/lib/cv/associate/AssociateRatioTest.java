@@ -0,0 +1,190 @@
+package uw.cse.mag.appliancereader.lib.cv.associate;
+
+import boofcv.abst.feature.associate.AssociateDescription;
+import boofcv.abst.feature.associate.ScoreAssociation;
+import boofcv.alg.feature.associate.FindUnassociated;
+import boofcv.struct.FastQueue;
+import boofcv.struct.GrowQueue_I32;
+import boofcv.struct.feature.AssociatedIndex;
+import boofcv.struct.feature.MatchScoreType;
+
+/**
+ * Associates descriptors with Lowe's ratio test.  For every source descriptor the best and
+ * second best destination descriptors are found in one pass.  A match is only accepted if the best
+ * score is clearly better than the second best, which rejects ambiguous matches between repeated
+ * structures such as identical buttons.
+ * <b>Only supports scores where lower is better.</b>
+ * <b>{@link uw.cse.mag.appliancereader.lib.cv.ImagePointAssociator} does not run this associater, it filters
+ * a {@link ScoreTable} with {@link ScoreTable#selectRatio(double, double, boolean)} instead.  This class is the
+ * reference implementation that selection is tested against, and the associater
+ * {@link uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams#getCurrentAssociater()}
+ * returns for clients that associate Surf Features on their own.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class AssociateRatioTest<D> implements AssociateDescription<D> {
+
+    /**
+     * Scores the fit between two descriptors.
+     */
+    private final ScoreAssociation<D> score;
+
+    /**
+     * Maximum allowed ratio between the best and the second best score.
+     */
+    private final double ratio;
+
+    /**
+     * Whether the source descriptor must also be the best match of its destination.
+     */
+    private final boolean backwardsValidation;
+
+    /**
+     * Accepted matches score strictly below this value.
+     */
+    private double maxDistance;
+
+    /**
+     * Descriptors to associate.
+     */
+    private FastQueue<D> source, destination;
+
+    /**
+     * Found matches.
+     */
+    private final FastQueue<AssociatedIndex> matches;
+
+    /**
+     * Helper to find unmatched features.
+     */
+    private final FindUnassociated unassociated;
+
+    /**
+     * Creates a ratio test associater.
+     *
+     * @param score Scores descriptors, lower must be better.
+     * @param ratio Ratio in (0, 1] that the best score must be below relative to the second best score.
+     * @param maxDistance Scores must be strictly below this value.
+     * @param backwardsValidation Whether the match must be the best in the other direction too.
+     */
+    public AssociateRatioTest(ScoreAssociation<D> score, double ratio,
+                              double maxDistance, boolean backwardsValidation) {
+        if (score == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null score");
+        if (!score.getScoreType().isZeroBest())
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Scores must " +
+                    "be lower for better matches");
+        if (ratio <= 0.0 || ratio > 1.0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Ratio must be " +
+                    "in (0, 1]");
+        this.score = score;
+        this.ratio = ratio;
+        this.maxDistance = maxDistance;
+        this.backwardsValidation = backwardsValidation;
+        this.matches = new FastQueue<AssociatedIndex>(10, AssociatedIndex.class, true);
+        this.unassociated = new FindUnassociated();
+    }
+
+    @Override
+    public void setSource(FastQueue<D> source) {
+        this.source = source;
+    }
+
+    @Override
+    public void setDestination(FastQueue<D> destination) {
+        this.destination = destination;
+    }
+
+    @Override
+    public void associate() {
+        if (source == null || destination == null)
+            throw new IllegalStateException(getClass().getSimpleName() + ".associate() " +
+                    "Source and destination must be set");
+        matches.reset();
+
+        for (int i = 0; i < source.size; i++) {
+            D a = source.data[i];
+
+            // Single pass that keeps the two best neighbors.
+            double best = Double.MAX_VALUE, secondBest = Double.MAX_VALUE;
+            int bestIndex = -1;
+            for (int j = 0; j < destination.size; j++) {
+                double s = score.score(a, destination.data[j]);
+                if (s < best) {
+                    secondBest = best;
+                    best = s;
+                    bestIndex = j;
+                } else if (s < secondBest) {
+                    secondBest = s;
+                }
+            }
+
+            if (bestIndex == -1 || !(best < maxDistance)) continue;
+            // Ambiguous match.
+            if (secondBest != Double.MAX_VALUE && best > ratio * secondBest) continue;
+            if (backwardsValidation && !isBestForDestination(i, bestIndex, best)) continue;
+
+            matches.grow().setAssociation(i, bestIndex, best);
+        }
+    }
+
+    /**
+     * Checks that no other source descriptor fits the destination at least as well.
+     *
+     * @param src Index of the source descriptor.
+     * @param dst Index of the destination descriptor.
+     * @param fit Score between the source and destination.
+     * @return Whether the source is the unique best fit of the destination.
+     */
+    private boolean isBestForDestination(int src, int dst, double fit) {
+        D b = destination.data[dst];
+        for (int k = 0; k < source.size; k++) {
+            if (k == src) continue;
+            if (score.score(source.data[k], b) <= fit)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public FastQueue<AssociatedIndex> getMatches() {
+        return matches;
+    }
+
+    @Override
+    public GrowQueue_I32 getUnassociatedSource() {
+        return unassociated.checkSource(matches, source.size);
+    }
+
+    @Override
+    public GrowQueue_I32 getUnassociatedDestination() {
+        return unassociated.checkDestination(matches, destination.size);
+    }
+
+    @Override
+    public void setThreshold(double score) {
+        this.maxDistance = score;
+    }
+
+    @Override
+    public MatchScoreType getScoreType() {
+        return score.getScoreType();
+    }
+
+    @Override
+    public boolean uniqueSource() {
+        return true;
+    }
+
+    @Override
+    public boolean uniqueDestination() {
+        return backwardsValidation;
+    }
+
+    /**
+     * @return Maximum allowed ratio between the best and second best score.
+     */
+    public double getRatio() {
+        return ratio;
+    }
+}
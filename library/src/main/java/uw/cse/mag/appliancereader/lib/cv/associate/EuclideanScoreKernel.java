@@ -0,0 +1,379 @@
+package uw.cse.mag.appliancereader.lib.cv.associate;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes a {@link ScoreTable} of Euclidean distances between packed descriptors.
+ * Distances are expanded as ||a||^2 + ||b||^2 - 2 a.b so the inner loop is a plain dot product.
+ * Source rows are split into blocks that run in a {@link ForkJoinPool}, and every block walks the
+ * destinations in tiles so a tile of destination descriptors stays in cache while all rows of the block
+ * are scored against it.  Only the best and second best scores are kept, per row and per column.
+ * Descriptors can be double, single precision or 8 bit codes with a scale per dimension, reduced
+ * precision descriptors are scored without being restored.
+ * <b>Descriptor i of an array starts at index i * length.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class EuclideanScoreKernel {
+
+    /**
+     * Number of source rows of the smallest task.
+     */
+    public static final int ROW_BLOCK = 32;
+
+    /**
+     * Number of destination descriptors in a tile.
+     */
+    public static final int COLUMN_BLOCK = 128;
+
+    /**
+     * Shared kernel, lazily created.
+     */
+    private static EuclideanScoreKernel defaultKernel;
+
+    /**
+     * Pool the row blocks run in.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a kernel that runs in the argument pool.
+     *
+     * @param pool Pool to run row blocks in.
+     */
+    public EuclideanScoreKernel(ForkJoinPool pool) {
+        if (pool == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null pool");
+        this.pool = pool;
+    }
+
+    /**
+     * @return Kernel with a pool that has one thread per available processor.
+     */
+    public static synchronized EuclideanScoreKernel getDefault() {
+        if (defaultKernel == null)
+            defaultKernel = new EuclideanScoreKernel(new ForkJoinPool());
+        return defaultKernel;
+    }
+
+    /**
+     * Scores every source descriptor against every destination descriptor.
+     *
+     * @param src Source descriptors.
+     * @param numSrc Number of source descriptors.
+     * @param dst Destination descriptors.
+     * @param numDst Number of destination descriptors.
+     * @param length Number of elements of each descriptor.
+     * @param squared Whether the scores are squared distances.
+     * @return Table of the best and second best scores.
+     */
+    public ScoreTable score(double[] src, int numSrc, double[] dst, int numDst, int length, boolean squared) {
+        if (src.length < numSrc * length || dst.length < numDst * length)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".score() Arrays too small");
+        return score(new DoublePairs(src, numSrc, dst, numDst, length), numSrc, numDst, squared);
+    }
+
+    /**
+     * Scores every single precision source descriptor against every destination descriptor.
+     *
+     * @param src Source descriptors.
+     * @param numSrc Number of source descriptors.
+     * @param dst Destination descriptors.
+     * @param numDst Number of destination descriptors.
+     * @param length Number of elements of each descriptor.
+     * @param squared Whether the scores are squared distances.
+     * @return Table of the best and second best scores.
+     */
+    public ScoreTable score(float[] src, int numSrc, float[] dst, int numDst, int length, boolean squared) {
+        if (src.length < numSrc * length || dst.length < numDst * length)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".score() Arrays too small");
+        return score(new FloatPairs(src, numSrc, dst, numDst, length), numSrc, numDst, squared);
+    }
+
+    /**
+     * Scores every quantized source descriptor against every destination descriptor.  Both sets must
+     * be quantized with the same scales.
+     *
+     * @param src Source codes.
+     * @param numSrc Number of source descriptors.
+     * @param dst Destination codes.
+     * @param numDst Number of destination descriptors.
+     * @param scales Scale of every dimension.
+     * @param squared Whether the scores are squared distances.
+     * @return Table of the best and second best scores.
+     */
+    public ScoreTable score(byte[] src, int numSrc, byte[] dst, int numDst, double[] scales, boolean squared) {
+        int length = scales.length;
+        if (src.length < numSrc * length || dst.length < numDst * length)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".score() Arrays too small");
+        return score(new BytePairs(src, numSrc, dst, numDst, scales), numSrc, numDst, squared);
+    }
+
+    /**
+     * Runs the row blocks over the argument descriptor pairs.
+     */
+    private ScoreTable score(Pairs pairs, int numSrc, int numDst, boolean squared) {
+        int[] bestDst = new int[numSrc];
+        double[] bestDstScore = new double[numSrc];
+        double[] secondDstScore = new double[numSrc];
+        Arrays.fill(bestDst, -1);
+        Arrays.fill(bestDstScore, Double.MAX_VALUE);
+        Arrays.fill(secondDstScore, Double.MAX_VALUE);
+
+        Columns columns;
+        if (numSrc == 0) {
+            columns = new Columns(numDst);
+        } else {
+            RowBlock task = new RowBlock(pairs, numDst, 0, numSrc, bestDst, bestDstScore, secondDstScore);
+            columns = pool.invoke(task);
+        }
+
+        if (!squared) {
+            sqrt(bestDstScore);
+            sqrt(secondDstScore);
+            sqrt(columns.best);
+            sqrt(columns.second);
+        }
+        return new ScoreTable(bestDst, bestDstScore, secondDstScore,
+                columns.index, columns.best, columns.second);
+    }
+
+    /**
+     * Takes the square root of every score that is not a place holder.
+     */
+    private static void sqrt(double[] scores) {
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] != Double.MAX_VALUE)
+                scores[i] = Math.sqrt(scores[i]);
+        }
+    }
+
+    /**
+     * Best and second best source of every destination over a range of rows.
+     */
+    private static class Columns {
+        final int[] index;
+        final double[] best, second;
+
+        Columns(int numDst) {
+            index = new int[numDst];
+            best = new double[numDst];
+            second = new double[numDst];
+            Arrays.fill(index, -1);
+            Arrays.fill(best, Double.MAX_VALUE);
+            Arrays.fill(second, Double.MAX_VALUE);
+        }
+
+        /**
+         * Merges the columns of the rows that follow the rows of this.  Ties keep the lower row.
+         */
+        void merge(Columns after) {
+            for (int j = 0; j < index.length; j++) {
+                if (after.best[j] < best[j]) {
+                    second[j] = Math.min(best[j], after.second[j]);
+                    best[j] = after.best[j];
+                    index[j] = after.index[j];
+                } else {
+                    second[j] = Math.min(second[j], after.best[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Source and destination descriptors with their squared norms.
+     */
+    private static abstract class Pairs {
+        double[] srcNorms, dstNorms;
+
+        /**
+         * @return Dot product of a source and a destination descriptor.
+         */
+        abstract double dot(int src, int dst);
+    }
+
+    private static class DoublePairs extends Pairs {
+        private final double[] src, dst;
+        private final int length;
+
+        DoublePairs(double[] src, int numSrc, double[] dst, int numDst, int length) {
+            this.src = src;
+            this.dst = dst;
+            this.length = length;
+            srcNorms = new double[numSrc];
+            for (int i = 0; i < numSrc; i++)
+                srcNorms[i] = dot(src, i, src, i);
+            dstNorms = new double[numDst];
+            for (int j = 0; j < numDst; j++)
+                dstNorms[j] = dot(dst, j, dst, j);
+        }
+
+        @Override
+        double dot(int i, int j) {
+            return dot(src, i, dst, j);
+        }
+
+        private double dot(double[] a, int i, double[] b, int j) {
+            int offA = i * length, offB = j * length;
+            double total = 0;
+            for (int k = 0; k < length; k++)
+                total += a[offA + k] * b[offB + k];
+            return total;
+        }
+    }
+
+    private static class FloatPairs extends Pairs {
+        private final float[] src, dst;
+        private final int length;
+
+        FloatPairs(float[] src, int numSrc, float[] dst, int numDst, int length) {
+            this.src = src;
+            this.dst = dst;
+            this.length = length;
+            srcNorms = new double[numSrc];
+            for (int i = 0; i < numSrc; i++)
+                srcNorms[i] = dot(src, i, src, i);
+            dstNorms = new double[numDst];
+            for (int j = 0; j < numDst; j++)
+                dstNorms[j] = dot(dst, j, dst, j);
+        }
+
+        @Override
+        double dot(int i, int j) {
+            return dot(src, i, dst, j);
+        }
+
+        private double dot(float[] a, int i, float[] b, int j) {
+            int offA = i * length, offB = j * length;
+            float total = 0;
+            for (int k = 0; k < length; k++)
+                total += a[offA + k] * b[offB + k];
+            return total;
+        }
+    }
+
+    /**
+     * Codes with a scale per dimension.  Element k of a descriptor is code * scales[k], so dot products
+     * weight the product of two codes by scales[k]^2.  With equal scales the codes are multiplied as
+     * integers and weighted once.
+     */
+    private static class BytePairs extends Pairs {
+        private final byte[] src, dst;
+        private final int length;
+        private final double[] weights;
+        private final double uniformWeight;
+
+        BytePairs(byte[] src, int numSrc, byte[] dst, int numDst, double[] scales) {
+            this.src = src;
+            this.dst = dst;
+            this.length = scales.length;
+            weights = new double[length];
+            boolean uniform = true;
+            for (int k = 0; k < length; k++) {
+                weights[k] = scales[k] * scales[k];
+                uniform &= scales[k] == scales[0];
+            }
+            uniformWeight = uniform && length > 0 ? weights[0] : Double.NaN;
+            srcNorms = new double[numSrc];
+            for (int i = 0; i < numSrc; i++)
+                srcNorms[i] = dot(src, i, src, i);
+            dstNorms = new double[numDst];
+            for (int j = 0; j < numDst; j++)
+                dstNorms[j] = dot(dst, j, dst, j);
+        }
+
+        @Override
+        double dot(int i, int j) {
+            return dot(src, i, dst, j);
+        }
+
+        private double dot(byte[] a, int i, byte[] b, int j) {
+            int offA = i * length, offB = j * length;
+            if (!Double.isNaN(uniformWeight)) {
+                int total = 0;
+                for (int k = 0; k < length; k++)
+                    total += a[offA + k] * b[offB + k];
+                return total * uniformWeight;
+            }
+            double total = 0;
+            for (int k = 0; k < length; k++)
+                total += a[offA + k] * b[offB + k] * weights[k];
+            return total;
+        }
+    }
+
+    /**
+     * Scores a range of source rows.  Row results are written into the shared row arrays,
+     * column results are returned and merged in row order.
+     */
+    private static class RowBlock extends RecursiveTask<Columns> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Pairs pairs;
+        private final int numDst, start, end;
+        private final int[] bestDst;
+        private final double[] bestDstScore, secondDstScore;
+
+        RowBlock(Pairs pairs, int numDst, int start, int end,
+                 int[] bestDst, double[] bestDstScore, double[] secondDstScore) {
+            this.pairs = pairs;
+            this.numDst = numDst;
+            this.start = start;
+            this.end = end;
+            this.bestDst = bestDst;
+            this.bestDstScore = bestDstScore;
+            this.secondDstScore = secondDstScore;
+        }
+
+        @Override
+        protected Columns compute() {
+            if (end - start > ROW_BLOCK) {
+                int middle = (start + end) >>> 1;
+                RowBlock lower = new RowBlock(pairs, numDst, start, middle, bestDst, bestDstScore, secondDstScore);
+                RowBlock upper = new RowBlock(pairs, numDst, middle, end, bestDst, bestDstScore, secondDstScore);
+                upper.fork();
+                Columns columns = lower.compute();
+                columns.merge(upper.join());
+                return columns;
+            }
+
+            Columns columns = new Columns(numDst);
+            double[] srcNorms = pairs.srcNorms, dstNorms = pairs.dstNorms;
+            for (int tile = 0; tile < numDst; tile += COLUMN_BLOCK) {
+                int tileEnd = Math.min(tile + COLUMN_BLOCK, numDst);
+                for (int i = start; i < end; i++) {
+                    double norm = srcNorms[i];
+                    double best = bestDstScore[i], second = secondDstScore[i];
+                    int index = bestDst[i];
+                    for (int j = tile; j < tileEnd; j++) {
+                        double score = norm + dstNorms[j] - 2 * pairs.dot(i, j);
+                        // Rounding can make the distance of identical descriptors negative.
+                        if (score < 0) score = 0;
+
+                        if (score < best) {
+                            second = best;
+                            best = score;
+                            index = j;
+                        } else if (score < second) {
+                            second = score;
+                        }
+                        if (score < columns.best[j]) {
+                            columns.second[j] = columns.best[j];
+                            columns.best[j] = score;
+                            columns.index[j] = i;
+                        } else if (score < columns.second[j]) {
+                            columns.second[j] = score;
+                        }
+                    }
+                    bestDst[i] = index;
+                    bestDstScore[i] = best;
+                    secondDstScore[i] = second;
+                }
+            }
+            return columns;
+        }
+    }
+}
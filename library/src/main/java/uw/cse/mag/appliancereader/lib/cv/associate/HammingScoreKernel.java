@@ -0,0 +1,102 @@
+package uw.cse.mag.appliancereader.lib.cv.associate;
+
+import java.util.Arrays;
+
+/**
+ * Computes a {@link ScoreTable} of Hamming distances between bit packed binary descriptors.
+ * The distance of two descriptors is the number of set bits of their exclusive or, counted
+ * 64 bits at a time with {@link Long#bitCount}.
+ * <b>Descriptor i of an array starts at index i * words.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public final class HammingScoreKernel {
+
+    /**
+     * Cannot instantiate.
+     */
+    private HammingScoreKernel() {}
+
+    /**
+     * Computes the Hamming distance between two descriptors.
+     *
+     * @param a First descriptors.
+     * @param offA Index of the first word of the first descriptor.
+     * @param b Second descriptors.
+     * @param offB Index of the first word of the second descriptor.
+     * @param words Number of words of each descriptor.
+     * @return Number of bits that differ.
+     */
+    public static int distance(long[] a, int offA, long[] b, int offB, int words) {
+        int total = 0;
+        for (int k = 0; k < words; k++)
+            total += Long.bitCount(a[offA + k] ^ b[offB + k]);
+        return total;
+    }
+
+    /**
+     * Scores every source descriptor against every destination descriptor.
+     *
+     * @param src Source descriptors.
+     * @param numSrc Number of source descriptors.
+     * @param dst Destination descriptors.
+     * @param numDst Number of destination descriptors.
+     * @param words Number of words of each descriptor.
+     * @return Table of the best and second best Hamming distances.
+     */
+    public static ScoreTable score(long[] src, int numSrc, long[] dst, int numDst, int words) {
+        if (src.length < numSrc * words || dst.length < numDst * words)
+            throw new IllegalArgumentException("HammingScoreKernel.score() Arrays too small");
+
+        int[] bestDst = new int[numSrc];
+        double[] bestDstScore = new double[numSrc];
+        double[] secondDstScore = new double[numSrc];
+        int[] bestSrc = new int[numDst];
+        int[] bestSrcScore = new int[numDst];
+        int[] secondSrcScore = new int[numDst];
+        Arrays.fill(bestSrc, -1);
+        Arrays.fill(bestSrcScore, Integer.MAX_VALUE);
+        Arrays.fill(secondSrcScore, Integer.MAX_VALUE);
+
+        for (int i = 0; i < numSrc; i++) {
+            int a = i * words;
+            int best = Integer.MAX_VALUE, second = Integer.MAX_VALUE;
+            int index = -1;
+            for (int j = 0; j < numDst; j++) {
+                int score = distance(src, a, dst, j * words, words);
+                if (score < best) {
+                    second = best;
+                    best = score;
+                    index = j;
+                } else if (score < second) {
+                    second = score;
+                }
+                if (score < bestSrcScore[j]) {
+                    secondSrcScore[j] = bestSrcScore[j];
+                    bestSrcScore[j] = score;
+                    bestSrc[j] = i;
+                } else if (score < secondSrcScore[j]) {
+                    secondSrcScore[j] = score;
+                }
+            }
+            bestDst[i] = index;
+            bestDstScore[i] = toScore(best);
+            secondDstScore[i] = toScore(second);
+        }
+
+        double[] bestSrcDouble = new double[numDst];
+        double[] secondSrcDouble = new double[numDst];
+        for (int j = 0; j < numDst; j++) {
+            bestSrcDouble[j] = toScore(bestSrcScore[j]);
+            secondSrcDouble[j] = toScore(secondSrcScore[j]);
+        }
+        return new ScoreTable(bestDst, bestDstScore, secondDstScore, bestSrc, bestSrcDouble, secondSrcDouble);
+    }
+
+    /**
+     * @return Score of a distance, keeping the place holder of missing neighbors.
+     */
+    private static double toScore(int distance) {
+        return distance == Integer.MAX_VALUE ? Double.MAX_VALUE : distance;
+    }
+}
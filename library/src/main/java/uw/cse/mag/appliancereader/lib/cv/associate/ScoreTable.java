@@ -0,0 +1,167 @@
+package uw.cse.mag.appliancereader.lib.cv.associate;
+
+import boofcv.abst.feature.associate.ScoreAssociation;
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+
+import java.util.Arrays;
+
+/**
+ * Summary of every pairwise score between a source and a destination set of descriptors.
+ * For every source the two best destinations are kept, and for every destination the two best sources.
+ * That is all greedy and ratio test association need, so once a table is computed a change of the
+ * maximum distance, the ratio or backwards validation only filters the table instead of scoring
+ * every pair again.
+ * <b>Memory is linear in the number of descriptors, the full score matrix is never stored.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class ScoreTable {
+
+    /**
+     * Best and second best destination of every source.
+     */
+    private final int[] bestDst;
+    private final double[] bestDstScore, secondDstScore;
+
+    /**
+     * Best and second best source of every destination.
+     */
+    private final int[] bestSrc;
+    private final double[] bestSrcScore, secondSrcScore;
+
+    /**
+     * Output matches.
+     */
+    private final FastQueue<AssociatedIndex> matches =
+            new FastQueue<AssociatedIndex>(10, AssociatedIndex.class, true);
+
+    private ScoreTable(int numSrc, int numDst) {
+        this(new int[numSrc], new double[numSrc], new double[numSrc],
+                new int[numDst], new double[numDst], new double[numDst]);
+    }
+
+    /**
+     * Wraps precomputed best and second best scores.  Used by {@link EuclideanScoreKernel}.
+     */
+    ScoreTable(int[] bestDst, double[] bestDstScore, double[] secondDstScore,
+               int[] bestSrc, double[] bestSrcScore, double[] secondSrcScore) {
+        this.bestDst = bestDst;
+        this.bestDstScore = bestDstScore;
+        this.secondDstScore = secondDstScore;
+        this.bestSrc = bestSrc;
+        this.bestSrcScore = bestSrcScore;
+        this.secondSrcScore = secondSrcScore;
+    }
+
+    /**
+     * Scores every pair of descriptors once.
+     *
+     * @param score Scores descriptors, lower must be better.
+     * @param source Source descriptors.
+     * @param destination Destination descriptors.
+     * @param <D> Descriptor type.
+     * @return Table of the source and destination descriptors.
+     */
+    public static <D> ScoreTable compute(ScoreAssociation<D> score, FastQueue<D> source,
+                                         FastQueue<D> destination) {
+        if (!score.getScoreType().isZeroBest())
+            throw new IllegalArgumentException("ScoreTable.compute() Lower scores must be better");
+        int numSrc = source.size, numDst = destination.size;
+        ScoreTable table = new ScoreTable(numSrc, numDst);
+        Arrays.fill(table.bestSrc, -1);
+        Arrays.fill(table.bestSrcScore, Double.MAX_VALUE);
+        Arrays.fill(table.secondSrcScore, Double.MAX_VALUE);
+
+        for (int i = 0; i < numSrc; i++) {
+            D a = source.data[i];
+            double best = Double.MAX_VALUE, second = Double.MAX_VALUE;
+            int index = -1;
+            for (int j = 0; j < numDst; j++) {
+                double s = score.score(a, destination.data[j]);
+                if (s < best) {
+                    second = best;
+                    best = s;
+                    index = j;
+                } else if (s < second) {
+                    second = s;
+                }
+
+                if (s < table.bestSrcScore[j]) {
+                    table.secondSrcScore[j] = table.bestSrcScore[j];
+                    table.bestSrcScore[j] = s;
+                    table.bestSrc[j] = i;
+                } else if (s < table.secondSrcScore[j]) {
+                    table.secondSrcScore[j] = s;
+                }
+            }
+            table.bestDst[i] = index;
+            table.bestDstScore[i] = best;
+            table.secondDstScore[i] = second;
+        }
+        return table;
+    }
+
+    /**
+     * Selects matches the way greedy association does.  A source matches its best destination if the
+     * score is below the maximum distance.
+     *
+     * @param maxDistance Scores must be strictly below this value.
+     * @param backwardsValidation Whether no other source may score equal or better against the destination.
+     * @return Matches from source index to destination index.
+     */
+    public FastQueue<AssociatedIndex> selectGreedy(double maxDistance, boolean backwardsValidation) {
+        matches.reset();
+        for (int i = 0; i < bestDst.length; i++) {
+            int j = bestDst[i];
+            if (j == -1 || !(bestDstScore[i] < maxDistance)) continue;
+            if (backwardsValidation && !isBestForDestination(i, j)) continue;
+            matches.grow().setAssociation(i, j, bestDstScore[i]);
+        }
+        return matches;
+    }
+
+    /**
+     * Selects matches the way {@link AssociateRatioTest} does.  The best score must be strictly below the
+     * maximum distance and at most ratio times the second best score.
+     *
+     * @param scoreRatio Ratio applied to scores, already squared for squared scores.
+     * @param maxDistance Scores must be strictly below this value.
+     * @param backwardsValidation Whether no other source may score equal or better against the destination.
+     * @return Matches from source index to destination index.
+     */
+    public FastQueue<AssociatedIndex> selectRatio(double scoreRatio, double maxDistance,
+                                                  boolean backwardsValidation) {
+        matches.reset();
+        for (int i = 0; i < bestDst.length; i++) {
+            int j = bestDst[i];
+            double best = bestDstScore[i], second = secondDstScore[i];
+            if (j == -1 || !(best < maxDistance)) continue;
+            if (second != Double.MAX_VALUE && best > scoreRatio * second) continue;
+            if (backwardsValidation && !isBestForDestination(i, j)) continue;
+            matches.grow().setAssociation(i, j, best);
+        }
+        return matches;
+    }
+
+    /**
+     * @return Whether the source is the only source with the lowest score for the destination.
+     */
+    private boolean isBestForDestination(int src, int dst) {
+        return bestSrc[dst] == src && secondSrcScore[dst] > bestDstScore[src];
+    }
+
+    /**
+     * @return Number of source descriptors.
+     */
+    public int getNumSource() {
+        return bestDst.length;
+    }
+
+    /**
+     * @return Number of destination descriptors.
+     */
+    public int getNumDestination() {
+        return bestSrc.length;
+    }
+}
@@ -0,0 +1,112 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import org.ddogleg.fitting.modelset.DistanceFromModel;
+import org.ddogleg.fitting.modelset.ModelGenerator;
+import org.ddogleg.fitting.modelset.ransac.Ransac;
+
+import java.util.List;
+
+/**
+ * RANSAC that stops once an all inlier sample has been drawn with the required confidence.  Every time
+ * a better model is found the number of iterations is recomputed from its inlier ratio, so frames with
+ * many inliers finish after a few samples and the maximum is only spent on hard frames.
+ * <b>The maximum number of iterations is a hard cap that is restored for every call to process.</b>
+ *
+ * @param <Model> Type of model.
+ * @param <Point> Type of point.
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class AdaptiveRansac<Model, Point> extends Ransac<Model, Point> {
+
+    /**
+     * Hard cap on the number of iterations.
+     */
+    private final int iterationCap;
+
+    /**
+     * Probability that an all inlier sample is drawn before stopping.
+     */
+    private final double confidence;
+
+    /**
+     * Number of points of the current call to process.
+     */
+    private int dataSize;
+
+    /**
+     * Creates an adaptive RANSAC.
+     *
+     * @param randSeed Seed of the random number generator.
+     * @param modelGenerator Creates models from minimal samples.
+     * @param modelDistance Distance of a point from a model.
+     * @param maxIterations Maximum number of iterations.
+     * @param thresholdFit Points closer than this to a model are inliers.
+     * @param confidence Confidence in (0, 1], 1 always runs the maximum number of iterations.
+     */
+    public AdaptiveRansac(long randSeed, ModelGenerator<Model, Point> modelGenerator,
+                          DistanceFromModel<Model, Point> modelDistance, int maxIterations,
+                          double thresholdFit, double confidence) {
+        super(randSeed, modelGenerator, modelDistance, maxIterations, thresholdFit);
+        if (confidence <= 0 || confidence > 1)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Confidence must be in (0, 1]");
+        this.iterationCap = maxIterations;
+        this.confidence = confidence;
+    }
+
+    @Override
+    public boolean process(List<Point> dataSet) {
+        dataSize = dataSet.size();
+        setMaxIterations(iterationCap);
+        return super.process(dataSet);
+    }
+
+    @Override
+    protected void swapCandidateWithBest() {
+        super.swapCandidateWithBest();
+        int required = requiredSamples(goodSampleProbability((double) bestFitPoints.size() / dataSize), confidence);
+        setMaxIterations(Math.min(iterationCap, required));
+    }
+
+    /**
+     * Probability that a sample yields an accepted model of the inliers.
+     *
+     * @param inlierRatio Fraction of inliers.
+     * @return Probability that a sample consists only of inliers.
+     */
+    protected double goodSampleProbability(double inlierRatio) {
+        return Math.pow(inlierRatio, sampleSize);
+    }
+
+    /**
+     * Number of samples required to draw an all inlier sample with a confidence.
+     *
+     * @param inlierRatio Fraction of inliers.
+     * @param sampleSize Number of points per sample.
+     * @param confidence Probability of drawing an all inlier sample.
+     * @return Number of samples, Integer.MAX_VALUE if it can't be bounded.
+     */
+    public static int requiredIterations(double inlierRatio, int sampleSize, double confidence) {
+        return requiredSamples(Math.pow(inlierRatio, sampleSize), confidence);
+    }
+
+    /**
+     * Number of samples required to draw a good sample with a confidence.
+     *
+     * @param goodProbability Probability that a single sample is good.
+     * @param confidence Probability of drawing a good sample.
+     * @return Number of samples, Integer.MAX_VALUE if it can't be bounded.
+     */
+    public static int requiredSamples(double goodProbability, double confidence) {
+        if (goodProbability >= 1) return 1;
+        if (goodProbability <= 0 || confidence >= 1) return Integer.MAX_VALUE;
+        double samples = Math.ceil(Math.log(1 - confidence) / Math.log(1 - goodProbability));
+        return samples >= Integer.MAX_VALUE ? Integer.MAX_VALUE : Math.max(1, (int) samples);
+    }
+
+    /**
+     * @return Probability that an all inlier sample is drawn before stopping.
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+}
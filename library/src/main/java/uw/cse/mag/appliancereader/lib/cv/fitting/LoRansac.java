@@ -0,0 +1,102 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import boofcv.struct.geo.GeoModelRefine;
+import org.ddogleg.fitting.modelset.DistanceFromModel;
+import org.ddogleg.fitting.modelset.ModelGenerator;
+
+import java.util.List;
+
+/**
+ * Adaptive RANSAC with local optimization, as in LO-RANSAC of Chum, Matas and Kittler.  Every time a
+ * better model is found it is estimated again from all of its inliers, and the new inliers are used for the
+ * next estimate until the inliers stop growing.  Minimal samples of inliers are noisy, so without this the
+ * best model is usually short of the full inlier set and many more samples are drawn before stopping.
+ * <b>The generator estimates the local models, so it must accept more points than the minimum.</b>
+ * <b>An optional refinement, such as Levenberg-Marquardt, polishes the final model over its inliers.</b>
+ *
+ * @param <Model> Type of model.
+ * @param <Point> Type of point.
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class LoRansac<Model, Point> extends AdaptiveRansac<Model, Point> {
+
+    /**
+     * Maximum number of estimates from the inliers of every new best model.
+     */
+    private final int localIterations;
+
+    /**
+     * Refines the final model over its inliers, null to skip.
+     */
+    private final GeoModelRefine<Model, Point> refine;
+
+    /**
+     * Points of the current call to process.
+     */
+    private List<Point> dataSet;
+
+    /**
+     * Number of local estimates of the last call to process that added inliers.
+     */
+    private int improvements;
+
+    /**
+     * Creates a locally optimized RANSAC.
+     *
+     * @param randSeed Seed of the random number generator.
+     * @param modelGenerator Creates models from minimal samples and from all inliers.
+     * @param modelDistance Distance of a point from a model.
+     * @param maxIterations Maximum number of iterations.
+     * @param thresholdFit Points closer than this to a model are inliers.
+     * @param confidence Confidence in (0, 1], 1 always runs the maximum number of iterations.
+     * @param localIterations Maximum number of local estimates per new best model, 0 to skip.
+     * @param refine Refines the final model over its inliers, null to skip.
+     */
+    public LoRansac(long randSeed, ModelGenerator<Model, Point> modelGenerator,
+                    DistanceFromModel<Model, Point> modelDistance, int maxIterations,
+                    double thresholdFit, double confidence, int localIterations,
+                    GeoModelRefine<Model, Point> refine) {
+        super(randSeed, modelGenerator, modelDistance, maxIterations, thresholdFit, confidence);
+        if (localIterations < 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Negative local iterations");
+        this.localIterations = localIterations;
+        this.refine = refine;
+    }
+
+    @Override
+    public boolean process(List<Point> dataSet) {
+        this.dataSet = dataSet;
+        improvements = 0;
+        try {
+            if (!super.process(dataSet)) return false;
+            if (refine != null && refine.process(bestFitParam, bestFitPoints, candidateParam)) {
+                // Keep the refined model unless it loses inliers.
+                selectMatchSet(dataSet, thresholdFit, candidateParam);
+                if (candidatePoints.size() >= bestFitPoints.size())
+                    super.swapCandidateWithBest();
+            }
+            return true;
+        } finally {
+            this.dataSet = null;
+        }
+    }
+
+    @Override
+    protected void swapCandidateWithBest() {
+        super.swapCandidateWithBest();
+        for (int i = 0; i < localIterations; i++) {
+            if (!modelGenerator.generate(bestFitPoints, candidateParam)) return;
+            selectMatchSet(dataSet, thresholdFit, candidateParam);
+            if (candidatePoints.size() <= bestFitPoints.size()) return;
+            super.swapCandidateWithBest();
+            improvements++;
+        }
+    }
+
+    /**
+     * @return Number of local estimates of the last call to process that added inliers.
+     */
+    public int getImprovements() {
+        return improvements;
+    }
+}
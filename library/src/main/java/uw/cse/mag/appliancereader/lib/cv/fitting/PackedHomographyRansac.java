@@ -0,0 +1,400 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import boofcv.struct.geo.AssociatedPair;
+import org.ddogleg.fitting.modelset.ModelMatcher;
+import org.ejml.data.DenseMatrix64F;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.ErrorMetric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Adaptive RANSAC for homographies that works on packed coordinate arrays and doesn't allocate once its
+ * buffers have grown to the number of matches.  All points are normalized once per call, every hypothesis
+ * is solved from four normalized matches with a preallocated linear system and the inliers are written into
+ * a reusable index array.
+ * <b>Distances are the same as the ones of {@link ErrorMetric}, measured in the original coordinates.</b>
+ * <b>As a {@link ModelMatcher} the pairs are copied into the packed arrays and the match set list is
+ * reused, so both are only valid until the next call to process.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class PackedHomographyRansac implements ModelMatcher<DenseMatrix64F, AssociatedPair> {
+
+    /**
+     * Number of matches of a minimal sample.
+     */
+    public static final int SAMPLE_SIZE = 4;
+
+    /**
+     * Pivots smaller than this mark a degenerate sample.
+     */
+    private static final double SINGULAR_PIVOT = 1e-10;
+
+    private final Random rand;
+    private final boolean sampson;
+    private final int maxIterations;
+    private final double thresholdFit;
+    private final double confidence;
+
+    /**
+     * Normalized coordinates of the reference and other points.
+     */
+    private double[] nx1 = new double[0], ny1 = new double[0], nx2 = new double[0], ny2 = new double[0];
+
+    /**
+     * Packed coordinates of the pairs given to {@link #process(List)}.
+     */
+    private double[] px1 = new double[0], py1 = new double[0], px2 = new double[0], py2 = new double[0];
+
+    /**
+     * Normalization of the reference and other points, x' = scale * (x - mean).
+     */
+    private double scale1, meanX1, meanY1, scale2, meanX2, meanY2;
+
+    /**
+     * Augmented 8x9 linear system of a sample, the normalized and the denormalized hypothesis.
+     */
+    private final double[] system = new double[8 * 9];
+    private final double[] normalized = new double[9];
+    private final double[] temp = new double[9];
+    private final double[] hypothesis = new double[9];
+
+    /**
+     * Indexes of the current sample.
+     */
+    private final int[] sample = new int[SAMPLE_SIZE];
+
+    /**
+     * Inlier indexes of the candidate and the best model, in input order.
+     */
+    private int[] candidateInliers = new int[0], bestInliers = new int[0];
+    private int bestCount;
+
+    /**
+     * Mean distance of the inliers of the best model.
+     */
+    private double bestError;
+
+    /**
+     * Best model found by the last call to process.
+     */
+    private final DenseMatrix64F model = new DenseMatrix64F(3, 3);
+
+    /**
+     * Pairs of the last call to {@link #process(List)} and its inliers.
+     */
+    private final List<AssociatedPair> matchSet = new ArrayList<AssociatedPair>();
+
+    /**
+     * Number of hypotheses of the last call to process.
+     */
+    private int iterations;
+
+    /**
+     * Creates an allocation free homography RANSAC.
+     *
+     * @param randSeed Seed of the random number generator.
+     * @param errorMetric Distance of a match from a homography.
+     * @param maxIterations Maximum number of iterations.
+     * @param thresholdFit Matches closer than this to a homography are inliers.
+     * @param confidence Confidence in (0, 1], 1 always runs the maximum number of iterations.
+     */
+    public PackedHomographyRansac(long randSeed, ErrorMetric errorMetric, int maxIterations,
+                                  double thresholdFit, double confidence) {
+        if (errorMetric == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null error metric");
+        if (maxIterations <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Nonpositive iterations");
+        if (confidence <= 0 || confidence > 1)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Confidence must be in (0, 1]");
+        this.rand = new Random(randSeed);
+        this.sampson = errorMetric == ErrorMetric.RESIDUAL_SAMPSON;
+        this.maxIterations = maxIterations;
+        this.thresholdFit = thresholdFit;
+        this.confidence = confidence;
+    }
+
+    /**
+     * Finds the homography from the reference to the other points with the most inliers.
+     *
+     * @param x1 X coordinates of the reference points.
+     * @param y1 Y coordinates of the reference points.
+     * @param x2 X coordinates of the other points.
+     * @param y2 Y coordinates of the other points.
+     * @param size Number of matches, the first size entries of every array.
+     * @return Whether a homography was found.
+     */
+    public boolean process(double[] x1, double[] y1, double[] x2, double[] y2, int size) {
+        if (x1.length < size || y1.length < size || x2.length < size || y2.length < size)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".process() Arrays shorter than size");
+        matchSet.clear();
+        bestCount = 0;
+        bestError = 0;
+        iterations = 0;
+        if (size < SAMPLE_SIZE) return false;
+        ensureCapacity(size);
+        normalize(x1, y1, x2, y2, size);
+
+        int limit = maxIterations;
+        while (iterations < limit && bestCount < size) {
+            iterations++;
+            selectSample(size);
+            if (!solveSample()) continue;
+
+            int count = 0;
+            double error = 0;
+            for (int i = 0; i < size; i++) {
+                double distance = distance(hypothesis, x1[i], y1[i], x2[i], y2[i]);
+                if (distance < thresholdFit) {
+                    candidateInliers[count++] = i;
+                    error += distance;
+                }
+            }
+            if (count <= bestCount) continue;
+
+            int[] swap = bestInliers;
+            bestInliers = candidateInliers;
+            candidateInliers = swap;
+            bestCount = count;
+            bestError = error / count;
+            System.arraycopy(hypothesis, 0, model.data, 0, 9);
+            limit = Math.min(maxIterations,
+                    AdaptiveRansac.requiredIterations((double) count / size, SAMPLE_SIZE, confidence));
+        }
+        return bestCount > 0;
+    }
+
+    @Override
+    public boolean process(List<AssociatedPair> dataSet) {
+        int size = dataSet.size();
+        if (px1.length < size) {
+            px1 = new double[size];
+            py1 = new double[size];
+            px2 = new double[size];
+            py2 = new double[size];
+        }
+        for (int i = 0; i < size; i++) {
+            AssociatedPair pair = dataSet.get(i);
+            px1[i] = pair.p1.x;
+            py1[i] = pair.p1.y;
+            px2[i] = pair.p2.x;
+            py2[i] = pair.p2.y;
+        }
+        if (!process(px1, py1, px2, py2, size)) return false;
+        for (int i = 0; i < bestCount; i++)
+            matchSet.add(dataSet.get(bestInliers[i]));
+        return true;
+    }
+
+    /**
+     * Grows the buffers to hold the matches.
+     */
+    private void ensureCapacity(int size) {
+        if (nx1.length >= size) return;
+        nx1 = new double[size];
+        ny1 = new double[size];
+        nx2 = new double[size];
+        ny2 = new double[size];
+        candidateInliers = new int[size];
+        bestInliers = new int[size];
+    }
+
+    /**
+     * Moves the centroid of each image to the origin and scales the mean distance from it to sqrt(2).
+     */
+    private void normalize(double[] x1, double[] y1, double[] x2, double[] y2, int size) {
+        double sx1 = 0, sy1 = 0, sx2 = 0, sy2 = 0;
+        for (int i = 0; i < size; i++) {
+            sx1 += x1[i];
+            sy1 += y1[i];
+            sx2 += x2[i];
+            sy2 += y2[i];
+        }
+        meanX1 = sx1 / size;
+        meanY1 = sy1 / size;
+        meanX2 = sx2 / size;
+        meanY2 = sy2 / size;
+
+        double d1 = 0, d2 = 0;
+        for (int i = 0; i < size; i++) {
+            d1 += Math.hypot(x1[i] - meanX1, y1[i] - meanY1);
+            d2 += Math.hypot(x2[i] - meanX2, y2[i] - meanY2);
+        }
+        scale1 = d1 > 0 ? Math.sqrt(2) * size / d1 : 1;
+        scale2 = d2 > 0 ? Math.sqrt(2) * size / d2 : 1;
+
+        for (int i = 0; i < size; i++) {
+            nx1[i] = scale1 * (x1[i] - meanX1);
+            ny1[i] = scale1 * (y1[i] - meanY1);
+            nx2[i] = scale2 * (x2[i] - meanX2);
+            ny2[i] = scale2 * (y2[i] - meanY2);
+        }
+    }
+
+    /**
+     * Draws distinct random matches into the sample.
+     */
+    private void selectSample(int size) {
+        for (int k = 0; k < SAMPLE_SIZE; k++) {
+            int index;
+            boolean taken;
+            do {
+                index = rand.nextInt(size);
+                taken = false;
+                for (int j = 0; j < k; j++)
+                    taken |= sample[j] == index;
+            } while (taken);
+            sample[k] = index;
+        }
+    }
+
+    /**
+     * Solves the homography of the sample in normalized coordinates with the last element fixed to one,
+     * and maps it back to the original coordinates.
+     *
+     * @return False if the sample is degenerate.
+     */
+    private boolean solveSample() {
+        double[] a = system;
+        for (int k = 0; k < SAMPLE_SIZE; k++) {
+            int i = sample[k];
+            double x = nx1[i], y = ny1[i], u = nx2[i], v = ny2[i];
+            int r = 2 * k * 9;
+            a[r] = x; a[r + 1] = y; a[r + 2] = 1;
+            a[r + 3] = 0; a[r + 4] = 0; a[r + 5] = 0;
+            a[r + 6] = -u * x; a[r + 7] = -u * y; a[r + 8] = u;
+            r += 9;
+            a[r] = 0; a[r + 1] = 0; a[r + 2] = 0;
+            a[r + 3] = x; a[r + 4] = y; a[r + 5] = 1;
+            a[r + 6] = -v * x; a[r + 7] = -v * y; a[r + 8] = v;
+        }
+
+        // Gaussian elimination with partial pivoting.
+        for (int col = 0; col < 8; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < 8; row++) {
+                if (Math.abs(a[row * 9 + col]) > Math.abs(a[pivot * 9 + col]))
+                    pivot = row;
+            }
+            if (Math.abs(a[pivot * 9 + col]) < SINGULAR_PIVOT) return false;
+            if (pivot != col) {
+                for (int j = col; j < 9; j++) {
+                    double swap = a[col * 9 + j];
+                    a[col * 9 + j] = a[pivot * 9 + j];
+                    a[pivot * 9 + j] = swap;
+                }
+            }
+            for (int row = col + 1; row < 8; row++) {
+                double factor = a[row * 9 + col] / a[col * 9 + col];
+                if (factor == 0) continue;
+                for (int j = col; j < 9; j++)
+                    a[row * 9 + j] -= factor * a[col * 9 + j];
+            }
+        }
+        for (int row = 7; row >= 0; row--) {
+            double sum = a[row * 9 + 8];
+            for (int j = row + 1; j < 8; j++)
+                sum -= a[row * 9 + j] * normalized[j];
+            normalized[row] = sum / a[row * 9 + row];
+        }
+        normalized[8] = 1;
+
+        // H = inv(T2) * Hn * T1
+        double[] n = normalized;
+        for (int row = 0; row < 3; row++) {
+            int r = row * 3;
+            temp[r] = n[r] * scale1;
+            temp[r + 1] = n[r + 1] * scale1;
+            temp[r + 2] = n[r + 2] - scale1 * (n[r] * meanX1 + n[r + 1] * meanY1);
+        }
+        double inv = 1.0 / scale2;
+        for (int j = 0; j < 3; j++) {
+            hypothesis[j] = temp[j] * inv + meanX2 * temp[6 + j];
+            hypothesis[3 + j] = temp[3 + j] * inv + meanY2 * temp[6 + j];
+            hypothesis[6 + j] = temp[6 + j];
+        }
+        return true;
+    }
+
+    /**
+     * Distance of a match from a homography, as computed by {@link ErrorMetric#getMetric()}.
+     *
+     * @param h Row major homography from the reference to the other image.
+     * @return Squared distance.
+     */
+    double distance(double[] h, double x1, double y1, double x2, double y2) {
+        double a = h[0] * x1 + h[1] * y1 + h[2];
+        double b = h[3] * x1 + h[4] * y1 + h[5];
+        double c = h[6] * x1 + h[7] * y1 + h[8];
+        if (!sampson) {
+            double dx = a / c - x2, dy = b / c - y2;
+            return dx * dx + dy * dy;
+        }
+        // Sampson approximation of the geometric error of both algebraic equations.
+        double e1 = y2 * c - b, e2 = a - x2 * c;
+        double j1x = y2 * h[6] - h[3], j1y = y2 * h[7] - h[4];
+        double j2x = h[0] - x2 * h[6], j2y = h[1] - x2 * h[7];
+        double m11 = j1x * j1x + j1y * j1y + c * c;
+        double m12 = j1x * j2x + j1y * j2y;
+        double m22 = j2x * j2x + j2y * j2y + c * c;
+        double det = m11 * m22 - m12 * m12;
+        if (det == 0) return Double.POSITIVE_INFINITY;
+        return (m22 * e1 * e1 - 2 * m12 * e1 * e2 + m11 * e2 * e2) / det;
+    }
+
+    @Override
+    public DenseMatrix64F getModel() {
+        return model;
+    }
+
+    /**
+     * Only filled by {@link #process(List)}.
+     */
+    @Override
+    public List<AssociatedPair> getMatchSet() {
+        return matchSet;
+    }
+
+    @Override
+    public int getInputIndex(int matchIndex) {
+        return bestInliers[matchIndex];
+    }
+
+    /**
+     * @return Mean distance of the inliers of the best model, lower is better.
+     */
+    @Override
+    public double getError() {
+        return bestError;
+    }
+
+    @Override
+    public int getMinimumSize() {
+        return SAMPLE_SIZE;
+    }
+
+    /**
+     * Indexes of the inliers of the last call to process in input order, the array is reused.
+     *
+     * @return Array with {@link #getInlierCount()} valid entries.
+     */
+    public int[] getInliers() {
+        return bestInliers;
+    }
+
+    /**
+     * @return Number of inliers of the last call to process.
+     */
+    public int getInlierCount() {
+        return bestCount;
+    }
+
+    /**
+     * @return Number of hypotheses of the last call to process.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+}
@@ -0,0 +1,171 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import org.ddogleg.fitting.modelset.ModelMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several robust estimators with their own seeds at the same time and keeps the model with the most
+ * inliers.  The iteration budget is split across the workers, and so is the confidence: the workers
+ * together reach the confidence of a single estimator.
+ * <b>Worker i is seeded with seed + i * {@link #SEED_STEP} and ties go to the lowest worker, so results
+ * only depend on the seed and the number of workers, not on the pool or scheduling.</b>
+ *
+ * @param <Model> Type of model.
+ * @param <Point> Type of point.
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class ParallelModelMatcher<Model, Point> implements ModelMatcher<Model, Point> {
+
+    /**
+     * Difference between the seeds of consecutive workers.
+     */
+    public static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Shared pool, lazily created.
+     */
+    private static ForkJoinPool defaultPool;
+
+    /**
+     * Robust estimators run by the workers.
+     */
+    private final List<ModelMatcher<Model, Point>> workers;
+
+    /**
+     * Pool the workers run in.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Worker with the best model of the last call to process, null if none found a model.
+     */
+    private ModelMatcher<Model, Point> best;
+
+    /**
+     * Creates a parallel model matcher.
+     *
+     * @param factory Creates the estimator of every worker.
+     * @param numWorkers Number of workers.
+     * @param seed Seed of the first worker.
+     * @param maxIterations Total maximum number of iterations.
+     * @param confidence Confidence of all workers together in (0, 1].
+     * @param pool Pool to run the workers in.
+     */
+    public ParallelModelMatcher(Factory<Model, Point> factory, int numWorkers, long seed, int maxIterations,
+                                double confidence, ForkJoinPool pool) {
+        if (factory == null || pool == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null factory or pool");
+        if (numWorkers <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Nonpositive workers");
+        if (confidence <= 0 || confidence > 1)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Confidence must be in (0, 1]");
+        this.pool = pool;
+        int iterations = Math.max(1, (maxIterations + numWorkers - 1) / numWorkers);
+        double workerConfidence = confidence >= 1 ? 1 : 1 - Math.pow(1 - confidence, 1.0 / numWorkers);
+        this.workers = new ArrayList<ModelMatcher<Model, Point>>(numWorkers);
+        for (int i = 0; i < numWorkers; i++)
+            workers.add(factory.create(seed + i * SEED_STEP, iterations, workerConfidence));
+    }
+
+    /**
+     * @return Pool with one thread per available processor.
+     */
+    public static synchronized ForkJoinPool getDefaultPool() {
+        if (defaultPool == null)
+            defaultPool = new ForkJoinPool();
+        return defaultPool;
+    }
+
+    @Override
+    public boolean process(final List<Point> dataSet) {
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(workers.size());
+        for (final ModelMatcher<Model, Point> worker : workers) {
+            tasks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return worker.process(dataSet);
+                }
+            });
+        }
+        List<Future<Boolean>> results = pool.invokeAll(tasks);
+
+        best = null;
+        for (int i = 0; i < workers.size(); i++) {
+            boolean found;
+            try {
+                found = results.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(getClass().getSimpleName() + ".process() " +
+                        "Interrupted while fitting");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(getClass().getSimpleName() + ".process() " +
+                        "Unable to fit", e.getCause());
+            }
+            ModelMatcher<Model, Point> worker = workers.get(i);
+            if (found && (best == null || worker.getMatchSet().size() > best.getMatchSet().size()))
+                best = worker;
+        }
+        return best != null;
+    }
+
+    @Override
+    public Model getModel() {
+        return best == null ? null : best.getModel();
+    }
+
+    @Override
+    public List<Point> getMatchSet() {
+        return best == null ? Collections.<Point>emptyList() : best.getMatchSet();
+    }
+
+    @Override
+    public int getInputIndex(int matchIndex) {
+        return best.getInputIndex(matchIndex);
+    }
+
+    @Override
+    public double getError() {
+        return best == null ? 0 : best.getError();
+    }
+
+    @Override
+    public int getMinimumSize() {
+        return workers.get(0).getMinimumSize();
+    }
+
+    /**
+     * @return Number of workers.
+     */
+    public int getNumWorkers() {
+        return workers.size();
+    }
+
+    /**
+     * Creates the robust estimator of a worker.
+     *
+     * @param <Model> Type of model.
+     * @param <Point> Type of point.
+     */
+    public interface Factory<Model, Point> {
+
+        /**
+         * Creates a robust estimator.
+         *
+         * @param seed Seed of the random number generator.
+         * @param maxIterations Maximum number of iterations.
+         * @param confidence Confidence in (0, 1].
+         * @return New robust estimator that doesn't share state with other estimators.
+         */
+        public ModelMatcher<Model, Point> create(long seed, int maxIterations, double confidence);
+    }
+}
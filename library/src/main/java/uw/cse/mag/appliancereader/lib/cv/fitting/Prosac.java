@@ -0,0 +1,316 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import org.ddogleg.fitting.modelset.DistanceFromModel;
+import org.ddogleg.fitting.modelset.ModelGenerator;
+import org.ddogleg.fitting.modelset.ModelMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Progressive sample consensus, PROSAC.  Points are ordered by the quality of their association and
+ * hypotheses are drawn from a growing set of the best points first, rather than uniformly from all points
+ * as in RANSAC.  When good associations are likely inliers a good model is found after few samples.
+ * <b>Sampling stops once the best model is non-random and a better model restricted to the best points
+ * is unlikely to be found, or after the maximum number of iterations.</b>
+ * <b>The match set is returned in input order, so it can be used in place of a RANSAC match set.</b>
+ *
+ * @param <Model> Type of model.
+ * @param <Point> Type of point.
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class Prosac<Model, Point> implements ModelMatcher<Model, Point> {
+
+    /**
+     * Probability that a model supported by chance is not taken for non-random.
+     */
+    private static final double NON_RANDOM_CONFIDENCE = 0.95;
+
+    /**
+     * Probability that a point unrelated to a wrong model is consistent with it.
+     */
+    private static final double BETA = 0.05;
+
+    private final ModelGenerator<Model, Point> modelGenerator;
+    private final DistanceFromModel<Model, Point> modelDistance;
+    private final Comparator<? super Point> quality;
+    private final Random rand;
+    private final int maxIterations;
+    private final double thresholdFit;
+    private final double confidence;
+    private final int sampleSize;
+
+    /**
+     * Current and best model.
+     */
+    private Model candidateParam, bestFitParam;
+
+    /**
+     * Points ordered by quality and the input index of every ordered point.
+     */
+    private final List<Point> ordered = new ArrayList<Point>();
+    private int[] orderToInput = new int[0];
+
+    /**
+     * Inlier flags of the ordered points for the current and best model.
+     */
+    private boolean[] candidateInliers = new boolean[0], bestInliers = new boolean[0];
+
+    /**
+     * Work space for samples.
+     */
+    private final List<Point> sample = new ArrayList<Point>();
+    private final int[] sampleIndexes;
+
+    /**
+     * Best match set in input order.
+     */
+    private final List<Point> bestFitPoints = new ArrayList<Point>();
+    private int[] bestMatchToInput = new int[0];
+
+    /**
+     * Number of hypotheses drawn by the last call to process.
+     */
+    private int iterations;
+
+    /**
+     * Creates a PROSAC model matcher.
+     *
+     * @param randSeed Seed of the random number generator.
+     * @param modelGenerator Creates models from minimal samples.
+     * @param modelDistance Distance of a point from a model.
+     * @param maxIterations Maximum number of hypotheses.
+     * @param thresholdFit Points closer than this to a model are inliers.
+     * @param confidence Probability that a better model among the best points is not missed by stopping,
+     *                   1 always draws the maximum number of hypotheses.
+     * @param quality Orders points from best to worst, null to use the input order.
+     */
+    public Prosac(long randSeed, ModelGenerator<Model, Point> modelGenerator,
+                  DistanceFromModel<Model, Point> modelDistance, int maxIterations, double thresholdFit,
+                  double confidence, Comparator<? super Point> quality) {
+        if (modelGenerator == null || modelDistance == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null generator or distance");
+        if (maxIterations <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Nonpositive iterations");
+        if (confidence <= 0 || confidence > 1)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Confidence must be in (0, 1]");
+        this.modelGenerator = modelGenerator;
+        this.modelDistance = modelDistance;
+        this.maxIterations = maxIterations;
+        this.thresholdFit = thresholdFit;
+        this.confidence = confidence;
+        this.quality = quality;
+        this.rand = new Random(randSeed);
+        this.sampleSize = modelGenerator.getMinimumPoints();
+        this.sampleIndexes = new int[sampleSize];
+        this.candidateParam = modelGenerator.createModelInstance();
+        this.bestFitParam = modelGenerator.createModelInstance();
+    }
+
+    @Override
+    public boolean process(List<Point> dataSet) {
+        bestFitPoints.clear();
+        iterations = 0;
+        int size = dataSet.size();
+        int m = sampleSize;
+        if (size < m) return false;
+        order(dataSet);
+        int[] nonRandom = nonRandomSupport(size);
+
+        // Growth function, the number of samples drawn from the best n points in a RANSAC of maxIterations.
+        double growth = maxIterations;
+        for (int i = 0; i < m; i++)
+            growth *= (double) (m - i) / (size - i);
+        int n = m, growthIteration = 1;
+        int stopSize = size, stopIteration = maxIterations;
+        int bestCount = 0;
+
+        for (int t = 1; t <= stopIteration; t++) {
+            if (t > growthIteration && n < stopSize) {
+                double next = growth * (n + 1) / (n + 1 - m);
+                growthIteration += (int) Math.ceil(next - growth);
+                growth = next;
+                n++;
+            }
+            // Samples contain the newest point until the set stops growing.
+            if (t > growthIteration) {
+                drawSample(n, m);
+            } else {
+                drawSample(n - 1, m - 1);
+                sample.add(ordered.get(n - 1));
+            }
+            iterations = t;
+            if (!modelGenerator.generate(sample, candidateParam)) continue;
+
+            int count = selectInliers(candidateParam);
+            if (count <= bestCount) continue;
+            bestCount = count;
+            Model swapModel = bestFitParam;
+            bestFitParam = candidateParam;
+            candidateParam = swapModel;
+            boolean[] swapInliers = bestInliers;
+            bestInliers = candidateInliers;
+            candidateInliers = swapInliers;
+            if (count == size) break;
+
+            // Find the prefix with the highest non-random inlier ratio and the samples it requires.
+            int prefixCount = 0, stopCount = 0;
+            int candidateSize = -1;
+            for (int i = 0; i < size; i++) {
+                if (bestInliers[i]) prefixCount++;
+                int prefix = i + 1;
+                if (prefix <= m || prefixCount < nonRandom[prefix]) continue;
+                if (candidateSize < 0 || (long) prefixCount * candidateSize >= (long) stopCount * prefix) {
+                    candidateSize = prefix;
+                    stopCount = prefixCount;
+                }
+            }
+            if (candidateSize > 0) {
+                stopSize = candidateSize;
+                stopIteration = Math.min(maxIterations,
+                        AdaptiveRansac.requiredIterations((double) stopCount / candidateSize, m, confidence));
+            }
+        }
+
+        if (bestCount == 0) return false;
+        boolean[] inputInliers = new boolean[size];
+        for (int i = 0; i < size; i++)
+            inputInliers[orderToInput[i]] = bestInliers[i];
+        if (bestMatchToInput.length < bestCount)
+            bestMatchToInput = new int[bestCount];
+        for (int i = 0; i < size; i++) {
+            if (!inputInliers[i]) continue;
+            bestMatchToInput[bestFitPoints.size()] = i;
+            bestFitPoints.add(dataSet.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * Orders the points by quality.  Equal points keep their input order.
+     */
+    private void order(final List<Point> dataSet) {
+        int size = dataSet.size();
+        Integer[] indexes = new Integer[size];
+        for (int i = 0; i < size; i++)
+            indexes[i] = i;
+        if (quality != null) {
+            Arrays.sort(indexes, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return quality.compare(dataSet.get(a), dataSet.get(b));
+                }
+            });
+        }
+        if (orderToInput.length < size) {
+            orderToInput = new int[size];
+            candidateInliers = new boolean[size];
+            bestInliers = new boolean[size];
+        }
+        ordered.clear();
+        for (int i = 0; i < size; i++) {
+            orderToInput[i] = indexes[i];
+            ordered.add(dataSet.get(indexes[i]));
+        }
+    }
+
+    /**
+     * Draws a sample of distinct points from the best points.
+     *
+     * @param limit Number of best points to draw from.
+     * @param count Number of points to draw.
+     */
+    private void drawSample(int limit, int count) {
+        sample.clear();
+        for (int k = 0; k < count; k++) {
+            int index;
+            boolean repeated;
+            do {
+                index = rand.nextInt(limit);
+                repeated = false;
+                for (int j = 0; j < k && !repeated; j++)
+                    repeated = sampleIndexes[j] == index;
+            } while (repeated);
+            sampleIndexes[k] = index;
+            sample.add(ordered.get(index));
+        }
+    }
+
+    /**
+     * Flags the ordered points that fit the model.
+     *
+     * @return Number of inliers.
+     */
+    private int selectInliers(Model model) {
+        modelDistance.setModel(model);
+        int count = 0;
+        for (int i = 0; i < ordered.size(); i++) {
+            candidateInliers[i] = modelDistance.computeDistance(ordered.get(i)) < thresholdFit;
+            if (candidateInliers[i]) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Minimum number of inliers among the best n points for a model not to be supported by chance.
+     * The support of a wrong model beyond its sample is binomial with {@link #BETA}, the minimum is the
+     * smallest support that such a model reaches with probability below 1 - {@link #NON_RANDOM_CONFIDENCE}.
+     *
+     * @return Element n is the minimum support within the best n points.
+     */
+    private int[] nonRandomSupport(int size) {
+        int[] support = new int[size + 1];
+        for (int n = sampleSize; n <= size; n++) {
+            int trials = n - sampleSize;
+            // Probability of exactly j supporting points, updated from j - 1.
+            double probability = Math.pow(1 - BETA, trials);
+            double tail = 1;
+            int j = 0;
+            while (j < trials && tail >= 1 - NON_RANDOM_CONFIDENCE) {
+                tail -= probability;
+                probability *= (double) (trials - j) / (j + 1) * BETA / (1 - BETA);
+                j++;
+            }
+            support[n] = sampleSize + j;
+        }
+        return support;
+    }
+
+    @Override
+    public Model getModel() {
+        return bestFitParam;
+    }
+
+    @Override
+    public List<Point> getMatchSet() {
+        return bestFitPoints;
+    }
+
+    @Override
+    public int getInputIndex(int matchIndex) {
+        return bestMatchToInput[matchIndex];
+    }
+
+    /**
+     * Same as {@link org.ddogleg.fitting.modelset.ransac.Ransac}, the size of the match set.
+     */
+    @Override
+    public double getError() {
+        return bestFitPoints.size();
+    }
+
+    @Override
+    public int getMinimumSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return Number of hypotheses drawn by the last call to process.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+}
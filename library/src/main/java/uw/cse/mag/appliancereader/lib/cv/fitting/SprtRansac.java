@@ -0,0 +1,200 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import org.ddogleg.fitting.modelset.DistanceFromModel;
+import org.ddogleg.fitting.modelset.ModelGenerator;
+
+import java.util.List;
+
+/**
+ * Adaptive RANSAC that verifies hypotheses with Wald's sequential probability ratio test, as in
+ * randomized RANSAC with SPRT of Matas and Chum.  Points are checked in random order and a hypothesis is
+ * abandoned as soon as the likelihood ratio of it being a bad model rather than a good model exceeds a
+ * threshold.  Bad hypotheses are then rejected after a few points instead of all of them.
+ * <b>The probability that a point fits a good model is the inlier ratio of the best model.  The probability
+ * that it fits a bad model is estimated from the rejected hypotheses.</b>
+ * <b>Good hypotheses are occasionally rejected, which the number of iterations accounts for.</b>
+ *
+ * @param <Model> Type of model.
+ * @param <Point> Type of point.
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class SprtRansac<Model, Point> extends AdaptiveRansac<Model, Point> {
+
+    /**
+     * Cost of generating a model in number of point verifications.
+     */
+    public static final double MODEL_COST = 200;
+
+    /**
+     * Initial probability that a point fits a good model.
+     */
+    private static final double INITIAL_EPSILON = 0.1;
+
+    /**
+     * Initial probability that a point fits a bad model.
+     */
+    private static final double INITIAL_DELTA = 0.01;
+
+    /**
+     * Relative change of the bad model probability that updates the test.
+     */
+    private static final double DELTA_CHANGE = 0.1;
+
+    /**
+     * Probabilities that a point fits a good and a bad model.
+     */
+    private double epsilon, delta;
+
+    /**
+     * Decision threshold of the likelihood ratio and its factors for fitting and other points.
+     */
+    private double decisionThreshold, fitFactor, otherFactor;
+
+    /**
+     * Points fitting and points checked by rejected hypotheses.
+     */
+    private long rejectedFits, rejectedChecks;
+
+    /**
+     * Number of points, their random order of verification and fit flags of the candidate.
+     */
+    private int dataSize;
+    private int[] order = new int[0];
+    private boolean[] fits = new boolean[0];
+
+    /**
+     * Number of hypotheses rejected by the last call to process.
+     */
+    private int rejected;
+
+    /**
+     * Creates a RANSAC with SPRT verification.
+     *
+     * @param randSeed Seed of the random number generator.
+     * @param modelGenerator Creates models from minimal samples.
+     * @param modelDistance Distance of a point from a model.
+     * @param maxIterations Maximum number of iterations.
+     * @param thresholdFit Points closer than this to a model are inliers.
+     * @param confidence Confidence in (0, 1], 1 always runs the maximum number of iterations.
+     */
+    public SprtRansac(long randSeed, ModelGenerator<Model, Point> modelGenerator,
+                      DistanceFromModel<Model, Point> modelDistance, int maxIterations,
+                      double thresholdFit, double confidence) {
+        super(randSeed, modelGenerator, modelDistance, maxIterations, thresholdFit, confidence);
+    }
+
+    @Override
+    public void initialize(List<Point> dataSet) {
+        super.initialize(dataSet);
+        int size = dataSet.size();
+        dataSize = size;
+        if (order.length < size) {
+            order = new int[size];
+            fits = new boolean[size];
+        }
+        // Shuffle the verification order, points may be ordered by quality.
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        for (int i = size - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        epsilon = INITIAL_EPSILON;
+        delta = INITIAL_DELTA;
+        rejectedFits = 0;
+        rejectedChecks = 0;
+        rejected = 0;
+        updateTest();
+    }
+
+    @Override
+    protected void selectMatchSet(List<Point> dataSet, double threshold, Model param) {
+        candidatePoints.clear();
+        modelDistance.setModel(param);
+        int size = dataSet.size();
+        double ratio = 1;
+        int fitCount = 0;
+        for (int k = 0; k < size; k++) {
+            int i = order[k];
+            fits[i] = modelDistance.computeDistance(dataSet.get(i)) < threshold;
+            if (fits[i]) {
+                fitCount++;
+                ratio *= fitFactor;
+            } else {
+                ratio *= otherFactor;
+            }
+            if (ratio > decisionThreshold) {
+                rejectHypothesis(fitCount, k + 1);
+                return;
+            }
+        }
+
+        // Accepted, the match set is in input order.
+        for (int i = 0; i < size; i++) {
+            if (!fits[i]) continue;
+            matchToInput[candidatePoints.size()] = i;
+            candidatePoints.add(dataSet.get(i));
+        }
+    }
+
+    @Override
+    protected void swapCandidateWithBest() {
+        epsilon = (double) candidatePoints.size() / dataSize;
+        updateTest();
+        super.swapCandidateWithBest();
+    }
+
+    @Override
+    protected double goodSampleProbability(double inlierRatio) {
+        // Good models are accepted unless the test wrongly rejects them.
+        return super.goodSampleProbability(inlierRatio) * (1 - 1 / decisionThreshold);
+    }
+
+    /**
+     * Updates the estimate of the probability that a point fits a bad model from a rejected hypothesis.
+     */
+    private void rejectHypothesis(int fitCount, int checked) {
+        rejected++;
+        rejectedFits += fitCount;
+        rejectedChecks += checked;
+        double estimate = Math.max((double) rejectedFits / rejectedChecks, 1e-4);
+        if (Math.abs(estimate - delta) > DELTA_CHANGE * delta) {
+            delta = estimate;
+            updateTest();
+        }
+    }
+
+    /**
+     * Computes the decision threshold from the current probabilities.  The threshold minimizes the
+     * expected time per hypothesis, found by iterating A = K + ln(A).
+     */
+    private void updateTest() {
+        if (epsilon <= delta) {
+            // Good and bad models can't be told apart, verify every point.
+            decisionThreshold = Double.POSITIVE_INFINITY;
+            fitFactor = 1;
+            otherFactor = 1;
+            return;
+        }
+        fitFactor = delta / epsilon;
+        otherFactor = (1 - delta) / (1 - epsilon);
+        double c = (1 - delta) * Math.log(otherFactor) + delta * Math.log(fitFactor);
+        double k = MODEL_COST * c + 1;
+        double a = k;
+        for (int i = 0; i < 10; i++) {
+            double next = k + Math.log(a);
+            if (Math.abs(next - a) < 1e-8) break;
+            a = next;
+        }
+        decisionThreshold = a;
+    }
+
+    /**
+     * @return Number of hypotheses rejected by the last call to process.
+     */
+    public int getRejected() {
+        return rejected;
+    }
+}
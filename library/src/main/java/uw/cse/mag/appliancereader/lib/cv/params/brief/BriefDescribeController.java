@@ -0,0 +1,164 @@
+package uw.cse.mag.appliancereader.lib.cv.params.brief;
+
+import boofcv.abst.feature.describe.ConfigBrief;
+import boofcv.struct.Configuration;
+import uw.cse.mag.appliancereader.lib.cv.params.core.BaseController;
+import uw.cse.mag.appliancereader.lib.cv.params.core.ConfigException;
+import uw.cse.mag.appliancereader.lib.cv.params.core.ConfigurationType;
+import uw.cse.mag.appliancereader.lib.cv.params.core.OnConfigurationChangedListener;
+
+/**
+ * BRIEF describer Controller.
+ * <b>See {@link boofcv.abst.feature.describe.ConfigBrief} for more information.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class BriefDescribeController extends BaseController {
+
+    // Default Values.
+    public static final int DEFAULT_RADIUS = 16;
+    public static final int DEFAULT_NUM_POINTS = 512;
+    public static final double DEFAULT_BLUR_SIGMA = -1;
+    public static final int DEFAULT_BLUR_RADIUS = 4;
+
+    /**
+     * See {@link boofcv.abst.feature.describe.ConfigBrief}
+     */
+    private int radius, numPoints, blurRadius;
+    private double blurSigma;
+
+    public BriefDescribeController() {
+        this(null);
+    }
+
+    public BriefDescribeController(OnConfigurationChangedListener listener) {
+        super(listener);
+        radius = DEFAULT_RADIUS;
+        numPoints = DEFAULT_NUM_POINTS;
+        blurSigma = DEFAULT_BLUR_SIGMA;
+        blurRadius = DEFAULT_BLUR_RADIUS;
+        try {
+            update();
+        } catch (ConfigException e) {
+            throw new IllegalStateException(this.getClass().getSimpleName() + " Illegal default fields");
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    ////    Mutator and Setters
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Radius of the square region that is sampled around a feature.
+     * <b>Try 16.</b>
+     *
+     * @param radius Region radius.
+     * @throws ConfigException Invalid input
+     */
+    public void setRadius(int radius) throws ConfigException {
+        if (this.radius == radius) return;
+        this.radius = radius;
+        update();
+    }
+
+    /**
+     * Number of pixel comparisons, which is the number of bits of a descriptor.
+     * <b>Multiples of 64 pack without waste.</b>
+     *
+     * @param numPoints Number of comparisons.
+     * @throws ConfigException Invalid input
+     */
+    public void setNumPoints(int numPoints) throws ConfigException {
+        if (this.numPoints == numPoints) return;
+        this.numPoints = numPoints;
+        update();
+    }
+
+    /**
+     * Sigma of the blur applied before sampling.
+     * <b>Set to a value less then or equal to 0 to derive it from the blur radius.</b>
+     *
+     * @param blurSigma Blur sigma.
+     * @throws ConfigException Invalid input
+     */
+    public void setBlurSigma(double blurSigma) throws ConfigException {
+        if (Double.compare(this.blurSigma, blurSigma) == 0) return;
+        this.blurSigma = blurSigma;
+        update();
+    }
+
+    /**
+     * Radius of the blur applied before sampling.
+     *
+     * @param blurRadius Blur radius.
+     * @throws ConfigException Invalid input
+     */
+    public void setBlurRadius(int blurRadius) throws ConfigException {
+        if (this.blurRadius == blurRadius) return;
+        this.blurRadius = blurRadius;
+        update();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    ////    Getters
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    public double getBlurSigma() {
+        return blurSigma;
+    }
+
+    public int getBlurRadius() {
+        return blurRadius;
+    }
+
+    @Override
+    protected Configuration getCurrentConfiguration() {
+        // Features are described at a fixed scale and orientation.
+        return new ConfigBrief(radius, numPoints, blurSigma, blurRadius, true);
+    }
+
+    @Override
+    public ConfigurationType getConfigurationType() {
+        return ConfigurationType.BRIEF_DESCRIBE;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    ////    Equals and HashCode
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BriefDescribeController)) return false;
+        if (!super.equals(o)) return false;
+
+        BriefDescribeController that = (BriefDescribeController) o;
+
+        if (radius != that.radius) return false;
+        if (numPoints != that.numPoints) return false;
+        if (blurRadius != that.blurRadius) return false;
+        if (Double.compare(that.blurSigma, blurSigma) != 0) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        long temp;
+        result = 31 * result + radius;
+        result = 31 * result + numPoints;
+        result = 31 * result + blurRadius;
+        temp = Double.doubleToLongBits(blurSigma);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package uw.cse.mag.appliancereader.lib.cv.params.brief;
+
+/**
+ * Interest point detectors that can feed a BRIEF describer.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public enum BriefDetector {
+    FAST("FAST"),
+    FAST_HESSIAN("Fast Hessian");
+
+    private final String mName;
+
+    private BriefDetector(String name) {
+        mName = name;
+    }
+
+    public String toString() {
+        return mName;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+}
@@ -0,0 +1,378 @@
+package uw.cse.mag.appliancereader.lib.cv.params.brief;
+
+import boofcv.abst.feature.describe.ConfigBrief;
+import boofcv.abst.feature.describe.DescribeRegionPoint;
+import boofcv.abst.feature.detdesc.DetectDescribePoint;
+import boofcv.abst.feature.detect.interest.ConfigFast;
+import boofcv.abst.feature.detect.interest.ConfigFastHessian;
+import boofcv.abst.feature.detect.interest.ConfigGeneralDetector;
+import boofcv.abst.feature.detect.interest.InterestPointDetector;
+import boofcv.alg.feature.detect.interest.GeneralFeatureDetector;
+import boofcv.factory.feature.describe.FactoryDescribeRegionPoint;
+import boofcv.factory.feature.detdesc.FactoryDetectDescribe;
+import boofcv.factory.feature.detect.interest.FactoryDetectPoint;
+import boofcv.factory.feature.detect.interest.FactoryInterestPoint;
+import boofcv.struct.Configuration;
+import boofcv.struct.feature.TupleDesc_B;
+import boofcv.struct.image.ImageFloat32;
+import uw.cse.mag.appliancereader.lib.cv.params.core.Associater;
+import uw.cse.mag.appliancereader.lib.cv.params.core.BaseController;
+import uw.cse.mag.appliancereader.lib.cv.params.core.ConfigException;
+import uw.cse.mag.appliancereader.lib.cv.params.core.ConfigurationType;
+import uw.cse.mag.appliancereader.lib.cv.params.core.OnConfigurationChangedListener;
+import uw.cse.mag.appliancereader.lib.cv.params.surf.FastHessianController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parameters that define how to Associate Points with binary BRIEF descriptors.
+ * Interest points come from a FAST corner or a Fast Hessian detector and are described at a fixed
+ * scale and orientation.  Descriptors are compared by Hamming distance, so only greedy and ratio test
+ * association are supported.
+ * <b>Binary descriptors are not {@link boofcv.struct.feature.SurfFeature}s, these parameters are used by
+ * {@link uw.cse.mag.appliancereader.lib.cv.BinaryPointAssociator} instead of the
+ * {@link uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams} family.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class BriefParams implements OnConfigurationChangedListener {
+
+    // Default Values.
+    public static final BriefDetector DEFAULT_DETECTOR = BriefDetector.FAST;
+    public static final Associater DEFAULT_ASSOCIATER = Associater.GREEDY;
+    public static final int DEFAULT_MAX_FEATURES = 500;
+    public static final int DEFAULT_EXTRACT_RADIUS = 2;
+    public static final float DEFAULT_DETECT_THRESHOLD = 1;
+    public static final double DEFAULT_RATIO = 0.8;
+    public static final int DEFAULT_MAX_DISTANCE = Integer.MAX_VALUE;
+    public static final boolean DEFAULT_BACKWARDS_VALIDATION = true;
+
+    /**
+     * Controllers of the detectors and the describer.
+     */
+    private final FastCornerController mFastCorner;
+    private final FastHessianController mFastHessian;
+    private final BriefDescribeController mBrief;
+
+    /**
+     * Detector that finds interest points.
+     */
+    private BriefDetector detector;
+
+    /**
+     * Maximum number of FAST corners per image.
+     */
+    private int maxFeatures;
+
+    /**
+     * Greedy or ratio test association.
+     */
+    private Associater associater;
+
+    /**
+     * Maximum ratio between the best and second best Hamming distance.
+     */
+    private double ratio;
+
+    /**
+     * Matches must have a Hamming distance below this number of bits.
+     */
+    private int maxDistance;
+
+    /**
+     * Backwards validation for association.
+     */
+    private boolean backwardsValidation;
+
+    /**
+     * Listener for changes in state.
+     */
+    private OnBriefParamsChangedListener listener;
+
+    /**
+     * Creates a default set of parameters for BRIEF on FAST corners.
+     */
+    public BriefParams() {
+        this(new FastCornerController(), new FastHessianController(), new BriefDescribeController());
+    }
+
+    /**
+     * Creates BRIEF parameters with the argument controllers.
+     *
+     * @param fastCornerController Controller for the FAST corner detector.
+     * @param fastHessianController Controller for the Fast Hessian detector.
+     * @param briefController Controller for the BRIEF describer.
+     */
+    public BriefParams(FastCornerController fastCornerController,
+                       FastHessianController fastHessianController,
+                       BriefDescribeController briefController) {
+        String prefix = getClass().getSimpleName() + "(), ";
+        if (fastCornerController == null)
+            throw new NullPointerException(prefix + "Null FAST Corner Controller");
+        if (fastHessianController == null)
+            throw new NullPointerException(prefix + "Null Fast Hessian Controller");
+        if (briefController == null)
+            throw new NullPointerException(prefix + "Null BRIEF Controller");
+        mFastCorner = fastCornerController;
+        mFastHessian = fastHessianController;
+        mBrief = briefController;
+
+        this.detector = DEFAULT_DETECTOR;
+        this.maxFeatures = DEFAULT_MAX_FEATURES;
+        this.associater = DEFAULT_ASSOCIATER;
+        this.ratio = DEFAULT_RATIO;
+        this.maxDistance = DEFAULT_MAX_DISTANCE;
+        this.backwardsValidation = DEFAULT_BACKWARDS_VALIDATION;
+
+        mFastCorner.setListener(this);
+        mFastHessian.setListener(this);
+        mBrief.setListener(this);
+    }
+
+    /**
+     * Notifies the listener that features must be described again.
+     */
+    protected void updateDetector() {
+        if (this.listener != null)
+            listener.onDetDescChanged();
+    }
+
+    /**
+     * Notifies the listener that features must be matched again.
+     */
+    protected void updateAssociater() {
+        if (this.listener != null)
+            listener.onAssociaterChanged();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    ////    Getters
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a detector and describer configured with the current state of this.
+     * Detectors are stateful, so every thread that describes images needs its own instance.
+     *
+     * @return New Detector and Describer of binary descriptors.
+     */
+    public DetectDescribePoint<ImageFloat32, TupleDesc_B> newDetectorAndDescriber() {
+        InterestPointDetector<ImageFloat32> interest;
+        switch (detector) {
+            case FAST:
+                GeneralFeatureDetector<ImageFloat32, ImageFloat32> corners = FactoryDetectPoint.createFast(
+                        getFast(), new ConfigGeneralDetector(maxFeatures, DEFAULT_EXTRACT_RADIUS,
+                                DEFAULT_DETECT_THRESHOLD), ImageFloat32.class);
+                interest = FactoryInterestPoint.wrapPoint(corners, 1, ImageFloat32.class, ImageFloat32.class);
+                break;
+            case FAST_HESSIAN:
+                interest = FactoryInterestPoint.fastHessian(getFastHessian());
+                break;
+            default:
+                throw new IllegalStateException(getClass().getSimpleName() + ".newDetectorAndDescriber() " +
+                        "Unsupported \"" + detector + "\"");
+        }
+        DescribeRegionPoint<ImageFloat32, TupleDesc_B> describe =
+                FactoryDescribeRegionPoint.brief(getBrief(), ImageFloat32.class);
+        return FactoryDetectDescribe.fuseTogether(interest, null, describe);
+    }
+
+    /**
+     * Creates a canonical fingerprint of everything that affects how features are detected and
+     * described.  Association parameters are not included.
+     *
+     * @return Fingerprint of the detector and describer configuration.
+     */
+    public String getFingerprint() {
+        StringBuilder builder = new StringBuilder(getClass().getName());
+        builder.append("|detector=").append(detector.name());
+        builder.append("|maxFeatures=").append(maxFeatures);
+        for (BaseController controller : getControllers())
+            builder.append('|').append(controller.getFingerprint());
+        return builder.toString();
+    }
+
+    /**
+     * @return Controllers in a fixed order.
+     */
+    protected List<BaseController> getControllers() {
+        List<BaseController> controllers = new ArrayList<BaseController>();
+        controllers.add(detector == BriefDetector.FAST ? mFastCorner : mFastHessian);
+        controllers.add(mBrief);
+        return controllers;
+    }
+
+    public FastCornerController getFastCornerController() {
+        return mFastCorner;
+    }
+
+    public FastHessianController getFastHessianController() {
+        return mFastHessian;
+    }
+
+    public BriefDescribeController getBriefController() {
+        return mBrief;
+    }
+
+    /**
+     * @return FAST corner configuration.
+     */
+    public ConfigFast getFast() {
+        return (ConfigFast) mFastCorner.getConfiguration();
+    }
+
+    /**
+     * @return Fast Hessian configuration.
+     */
+    public ConfigFastHessian getFastHessian() {
+        return (ConfigFastHessian) mFastHessian.getConfiguration();
+    }
+
+    /**
+     * @return BRIEF configuration.
+     */
+    public ConfigBrief getBrief() {
+        return (ConfigBrief) mBrief.getConfiguration();
+    }
+
+    /**
+     * @return Detector that finds interest points.
+     */
+    public BriefDetector getDetector() {
+        return detector;
+    }
+
+    /**
+     * @return The maximum number of FAST corners per image.
+     */
+    public int getMaxFeatures() {
+        return maxFeatures;
+    }
+
+    /**
+     * @return The type of associater used to match descriptors.
+     */
+    public Associater getAssociater() {
+        return associater;
+    }
+
+    /**
+     * @return Maximum ratio between the best and second best Hamming distance.
+     */
+    public double getRatio() {
+        return ratio;
+    }
+
+    /**
+     * @return Hamming distance in bits that matches must be below.
+     */
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * @return Whether or not to backward Validate
+     */
+    public boolean isBackwardsValidated() {
+        return backwardsValidation;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    ////    Setters
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param detector Detector that finds interest points.
+     */
+    public void setDetector(BriefDetector detector) {
+        if (detector == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".setDetector() " +
+                    "Null Detector argument");
+        if (this.detector == detector) return;
+        this.detector = detector;
+        updateDetector();
+    }
+
+    /**
+     * @param maxFeatures Maximum number of FAST corners per image.
+     * @throws ConfigException Nonpositive maximum
+     */
+    public void setMaxFeatures(int maxFeatures) throws ConfigException {
+        if (maxFeatures <= 0)
+            throw new ConfigException("Maximum number of features must be positive!");
+        if (this.maxFeatures == maxFeatures) return;
+        this.maxFeatures = maxFeatures;
+        updateDetector();
+    }
+
+    /**
+     * Sets the type of associater.  Hamming distances are searched exhaustively.
+     *
+     * @param associater {@link Associater#GREEDY} or {@link Associater#RATIO_TEST}.
+     * @throws ConfigException Associater that can't match binary descriptors
+     */
+    public void setAssociater(Associater associater) throws ConfigException {
+        if (associater == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".setAssociater() " +
+                    "Null Associater argument");
+        if (associater != Associater.GREEDY && associater != Associater.RATIO_TEST)
+            throw new ConfigException("Binary descriptors can't be associated with \"" + associater + "\"");
+        if (this.associater == associater) return;
+        this.associater = associater;
+        updateAssociater();
+    }
+
+    /**
+     * @param ratio Ratio of the ratio test within (0, 1].
+     * @throws ConfigException Ratio out of range
+     */
+    public void setRatio(double ratio) throws ConfigException {
+        if (ratio <= 0.0 || ratio > 1.0)
+            throw new ConfigException("Ratio must be in (0, 1]");
+        if (Double.compare(this.ratio, ratio) == 0) return;
+        this.ratio = ratio;
+        updateAssociater();
+    }
+
+    /**
+     * @param maxDistance Hamming distance in bits that matches must be below.
+     * @throws ConfigException Nonpositive distance
+     */
+    public void setMaxDistance(int maxDistance) throws ConfigException {
+        if (maxDistance <= 0)
+            throw new ConfigException("Maximum distance must be positive!");
+        if (this.maxDistance == maxDistance) return;
+        this.maxDistance = maxDistance;
+        updateAssociater();
+    }
+
+    /**
+     * @param backwardsValidation whether or not backwards validation will be used.
+     */
+    public void setBackwardsValidation(boolean backwardsValidation) {
+        if (this.backwardsValidation == backwardsValidation) return;
+        this.backwardsValidation = backwardsValidation;
+        updateAssociater();
+    }
+
+    /**
+     * Assign the listener that listens for changes in state.
+     *
+     * @param listener Listener to assign. Null to clear out any listeners.
+     */
+    public void setListener(OnBriefParamsChangedListener listener) {
+        this.listener = listener;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    ////    Implemented Interfaces
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void onConfigurationChanged(Configuration newVal,
+                                       Configuration oldVal,
+                                       ConfigurationType type) {
+        // Any controller change affects how features are detected or described.
+        updateDetector();
+    }
+}
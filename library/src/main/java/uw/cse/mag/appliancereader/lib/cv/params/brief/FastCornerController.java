@@ -0,0 +1,119 @@
+package uw.cse.mag.appliancereader.lib.cv.params.brief;
+
+import boofcv.abst.feature.detect.interest.ConfigFast;
+import boofcv.struct.Configuration;
+import uw.cse.mag.appliancereader.lib.cv.params.core.BaseController;
+import uw.cse.mag.appliancereader.lib.cv.params.core.ConfigException;
+import uw.cse.mag.appliancereader.lib.cv.params.core.ConfigurationType;
+import uw.cse.mag.appliancereader.lib.cv.params.core.OnConfigurationChangedListener;
+
+/**
+ * FAST corner Controller.
+ * <b>See {@link boofcv.abst.feature.detect.interest.ConfigFast} for more information.</b>
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class FastCornerController extends BaseController {
+
+    // Default Values.
+    public static final int DEFAULT_PIXEL_TOLERANCE = 20;
+    public static final int DEFAULT_MIN_CONTINUOUS = 9;
+
+    /**
+     * See {@link boofcv.abst.feature.detect.interest.ConfigFast}
+     */
+    private int pixelTolerance, minContinuous;
+
+    public FastCornerController() {
+        this(null);
+    }
+
+    public FastCornerController(OnConfigurationChangedListener listener) {
+        super(listener);
+        pixelTolerance = DEFAULT_PIXEL_TOLERANCE;
+        minContinuous = DEFAULT_MIN_CONTINUOUS;
+        try {
+            update();
+        } catch (ConfigException e) {
+            throw new IllegalStateException(this.getClass().getSimpleName() + " Illegal default fields");
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    ////    Mutator and Setters
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * How much brighter or darker a pixel on the circle must be than the center.
+     * <b>Try 20.</b>
+     *
+     * @param pixelTolerance Intensity tolerance.
+     * @throws ConfigException Invalid input
+     */
+    public void setPixelTolerance(int pixelTolerance) throws ConfigException {
+        if (this.pixelTolerance == pixelTolerance) return;
+        this.pixelTolerance = pixelTolerance;
+        update();
+    }
+
+    /**
+     * Minimum number of continuous pixels on the circle that must be brighter or darker.
+     * <b>Typically 9 to 12.</b>
+     *
+     * @param minContinuous Number of continuous pixels.
+     * @throws ConfigException Invalid input
+     */
+    public void setMinContinuous(int minContinuous) throws ConfigException {
+        if (this.minContinuous == minContinuous) return;
+        this.minContinuous = minContinuous;
+        update();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    ////    Getters
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public int getPixelTolerance() {
+        return pixelTolerance;
+    }
+
+    public int getMinContinuous() {
+        return minContinuous;
+    }
+
+    @Override
+    protected Configuration getCurrentConfiguration() {
+        return new ConfigFast(pixelTolerance, minContinuous);
+    }
+
+    @Override
+    public ConfigurationType getConfigurationType() {
+        return ConfigurationType.FAST_CORNER;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    ////    Equals and HashCode
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FastCornerController)) return false;
+        if (!super.equals(o)) return false;
+
+        FastCornerController that = (FastCornerController) o;
+
+        if (pixelTolerance != that.pixelTolerance) return false;
+        if (minContinuous != that.minContinuous) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + pixelTolerance;
+        result = 31 * result + minContinuous;
+        return result;
+    }
+}
@@ -0,0 +1,22 @@
+package uw.cse.mag.appliancereader.lib.cv.params.brief;
+
+/**
+ * Interface for any clients to listen for changes in BRIEF parameters.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public interface OnBriefParamsChangedListener {
+
+    /**
+     * Callback to notify that the detector or the describer changed.  Features described
+     * before no longer reflect the parameters.
+     */
+    public void onDetDescChanged();
+
+    /**
+     * Callback to notify that the associater or its thresholds changed.  Described features
+     * are still valid but must be matched again.
+     */
+    public void onAssociaterChanged();
+
+}
@@ -0,0 +1,28 @@
+package uw.cse.mag.appliancereader.lib.cv.params.core;
+
+/**
+ * Strategy used to associate descriptors of one image with descriptors of another.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public enum Associater {
+    GREEDY("Greedy"),
+    RATIO_TEST("Ratio Test"),
+    KD_TREE("K-D Tree"),
+    KD_FOREST("Randomized K-D Forest");
+
+    private final String mName;
+
+    private Associater(String name) {
+        mName = name;
+    }
+
+    public String toString() {
+        return mName;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+}
@@ -2,6 +2,10 @@ package uw.cse.mag.appliancereader.lib.cv.params.core;
 
 import boofcv.struct.Configuration;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.logging.Logger;
 
 /**
@@ -119,6 +123,39 @@ public abstract class BaseController {
         return mDefaulted;
     }
 
+    /**
+     * Creates a canonical description of the current state of this controller.  Two controllers
+     * of the same type that produce the same fingerprint configure a detector identically.
+     * <b>Public fields of the Configuration are listed in name order.</b>
+     *
+     * @return Fingerprint of this controller's configuration.
+     */
+    public String getFingerprint() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(getConfigurationType()).append('(');
+        builder.append("defaulted=").append(mDefaulted);
+        if (mConfiguration != null) {
+            Field[] fields = mConfiguration.getClass().getFields();
+            Arrays.sort(fields, new Comparator<Field>() {
+                @Override
+                public int compare(Field f1, Field f2) {
+                    return f1.getName().compareTo(f2.getName());
+                }
+            });
+            for (Field field : fields) {
+                if (Modifier.isStatic(field.getModifiers())) continue;
+                try {
+                    builder.append(',').append(field.getName()).append('=')
+                            .append(field.get(mConfiguration));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(getClass().getSimpleName() + ".getFingerprint() " +
+                            "Unable to read field " + field.getName());
+                }
+            }
+        }
+        return builder.append(')').toString();
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////
     ////    Supporting Interface
     ////////////////////////////////////////////////////////////////////////////////////
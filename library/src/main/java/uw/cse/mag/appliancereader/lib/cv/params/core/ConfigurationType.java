@@ -6,5 +6,5 @@ package uw.cse.mag.appliancereader.lib.cv.params.core;
 public enum ConfigurationType {
     SIFT_DESCRIBE, SIFT_DETECT, SIFT_ORIENTATION, SIFT_SCALE_SPACE,
     FAST_HESSIAN, SURF_DESCRIBE_SPEED, SURF_DESCRIBE_STABILITY, AVERAGE_INTEGRAL,
-    SLIDING_INTEGRAL
+    SLIDING_INTEGRAL, FAST_CORNER, BRIEF_DESCRIBE
 }
@@ -0,0 +1,27 @@
+package uw.cse.mag.appliancereader.lib.cv.params.core;
+
+/**
+ * Precision that descriptors are stored and associated with.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public enum DescriptorPrecision {
+    DOUBLE("Double"),
+    FLOAT("Float"),
+    INT8("8 Bit Integer");
+
+    private final String mName;
+
+    private DescriptorPrecision(String name) {
+        mName = name;
+    }
+
+    public String toString() {
+        return mName;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+}
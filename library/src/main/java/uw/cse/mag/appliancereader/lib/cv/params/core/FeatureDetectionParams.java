@@ -6,7 +6,15 @@ import boofcv.abst.feature.detdesc.DetectDescribePoint;
 import boofcv.factory.feature.associate.FactoryAssociation;
 import boofcv.struct.Configuration;
 import boofcv.struct.feature.SurfFeature;
+import boofcv.struct.feature.TupleDesc_F64;
 import boofcv.struct.image.ImageFloat32;
+import uw.cse.mag.appliancereader.lib.cv.DescriptorProjection;
+import uw.cse.mag.appliancereader.lib.cv.QuantizedDescriptors;
+import uw.cse.mag.appliancereader.lib.cv.associate.AssociatePacked;
+import uw.cse.mag.appliancereader.lib.cv.associate.AssociateRatioTest;
+
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Parameters that define how to Associate Points on corresponding images.
@@ -17,10 +25,20 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
 
     // Default Values.
     public static final Scorer DEFAULT_SCORER = Scorer.DEFAULT;
+    public static final Associater DEFAULT_ASSOCIATER = Associater.GREEDY;
+    public static final int DEFAULT_MAX_NODES_SEARCHED = 200;
+    public static final int DEFAULT_NUM_TREES = 8;
+    public static final int DEFAULT_NUM_CONSIDER_SPLIT = 5;
+    public static final long DEFAULT_FOREST_SEED = 0xBEEF;
+    public static final double DEFAULT_RATIO = 0.8;
     public static final boolean DEFAULT_SQUARE_EUCLIDEAN = false;
     public static final boolean DEFAULT_BACKWARDS_VALIDATION = true;
     public static final double DEFAULT_MAX_DISTANCE = Double.MAX_VALUE;
     public static final int DEFAULT_MAX_FEATURES = 100;
+    public static final FeatureSelector DEFAULT_FEATURE_SELECTOR = FeatureSelector.STRONGEST;
+    public static final int DEFAULT_GRID_ROWS = 1;
+    public static final int DEFAULT_GRID_COLUMNS = 1;
+    public static final DescriptorPrecision DEFAULT_PRECISION = DescriptorPrecision.DOUBLE;
     public static final Class IMAGE_TYPE = ImageFloat32.class;
 
     /**
@@ -29,6 +47,29 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
      */
     private Scorer scorer;
 
+    /**
+     * {@link Associater} Parameter
+     * <b>Selects how descriptors are searched during association.</b>
+     */
+    private Associater associater;
+
+    /**
+     * Maximum number of tree nodes examined by a best-bin-first search.
+     * <b>Only used by the k-d tree associaters.</b>
+     */
+    private int maxNodesSearched;
+
+    /**
+     * Number of trees in the randomized k-d forest.
+     */
+    private int numTrees;
+
+    /**
+     * Maximum ratio between the distance of the best and second best neighbor.
+     * <b>Only used by the ratio test associater.</b>
+     */
+    private double ratio;
+
     /**
      * <b>Square Euclidian distance for ScoreAssociation</b>
      * <b>Backwards validation for Associate Description.</b>
@@ -41,10 +82,35 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
     private double maxDistance;
 
     /**
-     * Maximum number of total features to associate between points.
+     * Maximum number of features kept per described image, the strongest by detector response.
      */
     private int maxFeatures;
 
+    /**
+     * Strategy that selects the kept features.
+     */
+    private FeatureSelector featureSelector;
+
+    /**
+     * Grid the kept features are spread over by {@link FeatureSelector#GRID}.
+     */
+    private int gridRows, gridColumns;
+
+    /**
+     * Precision descriptors are stored and associated with.
+     */
+    private DescriptorPrecision precision;
+
+    /**
+     * Scale of every descriptor dimension for int8 precision.  Null for uniform scales.
+     */
+    private double[] quantizationScales;
+
+    /**
+     * Projection applied to descriptors right after description.  Null for none.
+     */
+    private DescriptorProjection projection;
+
     /**
      * See {@link OnFeatureDetectionParamsChangedListener} for more information.
      * <b>Listener for changes in Feature Detection parameter changes.</b>
@@ -66,10 +132,18 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
      */
     protected FeatureDetectionParams() {
         this.scorer = DEFAULT_SCORER;
+        this.associater = DEFAULT_ASSOCIATER;
+        this.maxNodesSearched = DEFAULT_MAX_NODES_SEARCHED;
+        this.numTrees = DEFAULT_NUM_TREES;
+        this.ratio = DEFAULT_RATIO;
         this.squareEuclidian = DEFAULT_SQUARE_EUCLIDEAN;
         this.backwardsValidation = DEFAULT_BACKWARDS_VALIDATION;
         this.maxDistance = DEFAULT_MAX_DISTANCE;
         this.maxFeatures = DEFAULT_MAX_FEATURES;
+        this.featureSelector = DEFAULT_FEATURE_SELECTOR;
+        this.gridRows = DEFAULT_GRID_ROWS;
+        this.gridColumns = DEFAULT_GRID_COLUMNS;
+        this.precision = DEFAULT_PRECISION;
         currentDetDesc = null;
     }
 
@@ -81,6 +155,14 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
      */
     protected abstract DetectDescribePoint<ImageFloat32, SurfFeature> createNewDetectorAndDescriber();
 
+    /**
+     * Provides every controller that contributes to the detector and describer of this.
+     * <b>Subclasses must append to the list of their super class.</b>
+     *
+     * @return Modifiable list of controllers in a fixed order.
+     */
+    protected abstract List<BaseController> getControllers();
+
     ////////////////////////////////////////////////////////////////////////////////////
     ////    Mutators
     ////////////////////////////////////////////////////////////////////////////////////
@@ -103,13 +185,59 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
      */
     protected void updateAssociater() {
         AssociateDescription<SurfFeature> oldAssociater = currentAssociater;
-        currentAssociater = FactoryAssociation.greedy(
-                getScorer(), getMaxDistance(), isBackwardsValidated());
+        currentAssociater = createAssociater();
         if (this.listener != null)
             listener.onDescriptorAssociaterChanged(currentAssociater, oldAssociater);
         checkRep();
     }
 
+    /**
+     * Creates a new associater from the current state of this.
+     * <b>{@link uw.cse.mag.appliancereader.lib.cv.ImagePointAssociator} filters a score table for the
+     * greedy and ratio test modes instead, so those associaters only serve clients of
+     * {@link #getCurrentAssociater()}.</b>
+     * <b>Nearest neighbor associaters search the destination descriptors in a k-d tree with a
+     * best-bin-first search limited to {@link #getMaxNodesSearched()} nodes.  They always score by
+     * Euclidean distance and do not perform backwards validation.</b>
+     *
+     * @return New Feature Associater.
+     */
+    private AssociateDescription<SurfFeature> createAssociater() {
+        int dimension = getDescriptorLength();
+        AssociateDescription<SurfFeature> tree;
+        switch (this.associater) {
+            case GREEDY:
+                return FactoryAssociation.greedy(getScorer(), getMaxDistance(), isBackwardsValidated());
+            case RATIO_TEST:
+                // The ratio is defined on distances, squared scores need a squared ratio.
+                return new AssociateRatioTest<SurfFeature>(getScorer(), getScoreRatio(),
+                        getMaxDistance(), isBackwardsValidated());
+            case KD_TREE:
+                tree = forSurf(FactoryAssociation.kdtree(dimension, getMaxNodesSearched()));
+                break;
+            case KD_FOREST:
+                tree = forSurf(FactoryAssociation.kdRandomForest(dimension, getMaxNodesSearched(),
+                        getNumTrees(), DEFAULT_NUM_CONSIDER_SPLIT, DEFAULT_FOREST_SEED));
+                break;
+            default:
+                throw new IllegalStateException(getClass().getSimpleName() + ".createAssociater() " +
+                        "Unsupported \"" + this.associater + "\"");
+        }
+        tree.setThreshold(getMaxDistance());
+        return tree;
+    }
+
+    /**
+     * Surf Features are tuples of doubles so the tree associaters can process them.
+     *
+     * @param associater Associater of tuples of doubles.
+     * @return The same associater typed for Surf Features.
+     */
+    @SuppressWarnings("unchecked")
+    private static AssociateDescription<SurfFeature> forSurf(AssociateDescription<? extends TupleDesc_F64> associater) {
+        return (AssociateDescription<SurfFeature>) associater;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////
     ////    Getters
     ////////////////////////////////////////////////////////////////////////////////////
@@ -121,7 +249,7 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
      *
      * @return An object that can score fit quality between Surf Feature Descriptions
      */
-    protected ScoreAssociation<SurfFeature> getScorer() {
+    public ScoreAssociation<SurfFeature> getScorer() {
         DetectDescribePoint<ImageFloat32, SurfFeature> detector = getCurrentDetDesc();
         switch (this.scorer) {
             case DEFAULT:
@@ -138,6 +266,20 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
                 "\"" + scorer + "\"");
     }
 
+    /**
+     * @return The ratio of the ratio test in units of the scorer, squared for squared Euclidean scores.
+     */
+    public double getScoreRatio() {
+        return isSquaredScore() ? getRatio() * getRatio() : getRatio();
+    }
+
+    /**
+     * @return Whether the scorer produces squared Euclidean distances.
+     */
+    public boolean isSquaredScore() {
+        return scorer == Scorer.DEFAULT || (scorer == Scorer.EUCLIDEAN && isSquareEuclidian());
+    }
+
     /**
      *
      * @return
@@ -146,6 +288,34 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
          return this.scorer;
     }
 
+    /**
+     * @return The type of associater used to match descriptors.
+     */
+    public Associater getAssociater() {
+        return this.associater;
+    }
+
+    /**
+     * @return Maximum number of nodes a k-d tree search examines.
+     */
+    public int getMaxNodesSearched() {
+        return maxNodesSearched;
+    }
+
+    /**
+     * @return Number of trees in the randomized k-d forest.
+     */
+    public int getNumTrees() {
+        return numTrees;
+    }
+
+    /**
+     * @return Maximum ratio between the best and second best neighbor distance.
+     */
+    public double getRatio() {
+        return ratio;
+    }
+
 //    /**
 //     * Provides the associater between different features.  The Associater is based
 //     * on the scorer, maximum distance between features, and whether backwards validation is
@@ -183,12 +353,67 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
     }
 
     /**
-     * @return The maximum number of features for comparisons.
+     * @return The maximum number of features kept per described image.
      */
     public int getMaxFeatures() {
         return maxFeatures;
     }
 
+    /**
+     * @return Strategy that selects the kept features.
+     */
+    public FeatureSelector getFeatureSelector() {
+        return featureSelector;
+    }
+
+    /**
+     * @return Number of rows of the grid kept features are spread over.
+     */
+    public int getGridRows() {
+        return gridRows;
+    }
+
+    /**
+     * @return Number of columns of the grid kept features are spread over.
+     */
+    public int getGridColumns() {
+        return gridColumns;
+    }
+
+    /**
+     * @return Precision descriptors are stored and associated with.
+     */
+    public DescriptorPrecision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Provides the scale of every descriptor dimension used for int8 precision.  Unless scales were
+     * set every dimension has the scale of a unit length descriptor.
+     *
+     * @return Copy of the scale of every dimension.
+     */
+    public double[] getQuantizationScales() {
+        if (quantizationScales == null)
+            return QuantizedDescriptors.uniformScales(getDescriptorLength());
+        return quantizationScales.clone();
+    }
+
+    /**
+     * @return Projection applied to descriptors, null for none.
+     */
+    public DescriptorProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return Number of elements of the descriptors that are associated, after any projection.
+     */
+    public int getDescriptorLength() {
+        if (projection != null) return projection.getDimension();
+        return getCurrentDetDesc().getDescriptionLength();
+    }
+
     /**
      * Provide a feature detector and descriptor with the current state of this parameter.
      *
@@ -205,6 +430,42 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
         return currentDetDesc;
     }
 
+    /**
+     * Creates a canonical fingerprint of everything that affects how features are detected and
+     * described.  Two parameter instances with equal fingerprints produce identical descriptors
+     * for the same image.  Association parameters are not included.
+     *
+     * @return Fingerprint of the detector and describer configuration.
+     */
+    public String getFingerprint() {
+        StringBuilder builder = new StringBuilder(getClass().getName());
+        builder.append("|maxFeatures=").append(maxFeatures);
+        // Caches written before the selection kept every feature, so the selector is always included.
+        builder.append("|selector=").append(featureSelector.name());
+        if (featureSelector == FeatureSelector.GRID)
+            builder.append("|grid=").append(gridRows).append('x').append(gridColumns);
+        if (precision != DescriptorPrecision.DOUBLE)
+            builder.append("|precision=").append(precision.name());
+        if (precision == DescriptorPrecision.INT8 && quantizationScales != null)
+            builder.append("|scales=").append(Arrays.toString(quantizationScales));
+        if (projection != null)
+            builder.append('|').append(projection.getFingerprint());
+        for (BaseController controller : getControllers())
+            builder.append('|').append(controller.getFingerprint());
+        return builder.toString();
+    }
+
+    /**
+     * Creates a detector and describer configured with the current state of this that is
+     * independent of {@link #getCurrentDetDesc()}.  Detectors are stateful, so every thread that
+     * describes images concurrently needs its own instance.
+     *
+     * @return New Detector and Describer.
+     */
+    public DetectDescribePoint<ImageFloat32, SurfFeature> newDetectorAndDescriber() {
+        return createNewDetectorAndDescriber();
+    }
+
     /**
      * Provides a feature associater with the current state of this.
      *
@@ -214,14 +475,28 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
         // First time initialize feature associater.
         if (currentAssociater == null) {
             // Initialize the associater.
-            currentAssociater = FactoryAssociation.greedy(
-                    getScorer(), getMaxDistance(), isBackwardsValidated());
+            currentAssociater = createAssociater();
             assert currentAssociater != null: "updateAssociater() " +
                     "Failed to initialize the Detector and Descriptor.";
         }
         return currentAssociater;
     }
 
+    /**
+     * Creates an associater that matches descriptors stored in buffers, for example descriptors
+     * mapped from a {@link uw.cse.mag.appliancereader.lib.cv.MappedDescriptorStore}.
+     * <b>The k-d tree associaters are replaced with exhaustive greedy association.</b>
+     *
+     * @return New packed associater with the current state of this.
+     */
+    public AssociatePacked newPackedAssociater() {
+        AssociatePacked associater = new AssociatePacked(this.scorer, isSquareEuclidian(),
+                getMaxDistance(), isBackwardsValidated());
+        if (this.associater == Associater.RATIO_TEST)
+            associater.setRatio(getRatio());
+        return associater;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////
     ////    Setters
     ////////////////////////////////////////////////////////////////////////////////////
@@ -249,6 +524,64 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
         updateAssociater();
     }
 
+    /**
+     * Sets the type of associater used to match descriptors between images.
+     *
+     * @param associater The new associater type.
+     */
+    public void setAssociater(Associater associater) {
+        if (associater == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".setAssociater() " +
+                    "Null Associater argument");
+        if (associater.equals(this.associater)) return;
+        this.associater = associater;
+        updateAssociater();
+    }
+
+    /**
+     * Sets the budget of a best-bin-first search.  Larger values find more exact neighbors
+     * at the cost of more distance computations.
+     *
+     * @param maxNodesSearched Maximum number of nodes searched.
+     */
+    public void setMaxNodesSearched(int maxNodesSearched) {
+        if (maxNodesSearched <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".setMaxNodesSearched()" +
+                    " Can't have nonpositive maximum nodes searched.");
+        if (this.maxNodesSearched == maxNodesSearched) return;
+        this.maxNodesSearched = maxNodesSearched;
+        updateAssociater();
+    }
+
+    /**
+     * Sets the number of trees of the randomized k-d forest.
+     *
+     * @param numTrees Number of trees.
+     */
+    public void setNumTrees(int numTrees) {
+        if (numTrees <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".setNumTrees()" +
+                    " Can't have nonpositive number of trees.");
+        if (this.numTrees == numTrees) return;
+        this.numTrees = numTrees;
+        updateAssociater();
+    }
+
+    /**
+     * Sets the ratio of the ratio test.  A match is rejected if its distance is not below
+     * ratio times the distance of the second best neighbor.  Lower values reject more matches.
+     *
+     * @param ratio Ratio within (0, 1].
+     */
+    public void setRatio(double ratio) {
+        if (ratio <= 0.0 || ratio > 1.0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".setRatio()" +
+                    " Ratio must be within (0, 1].");
+        if (Double.compare(this.ratio, ratio) == 0) return;
+        this.ratio = ratio;
+        updateAssociater();
+    }
+
     /**
      * If the scorer is chosen to be Euclidian distance.  Clients are allowed to
      * have the Euclidian distances be more discriminate by squaring the values.
@@ -290,9 +623,10 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
     }
 
     /**
+     * Sets the maximum number of features kept per described image or region.  When more features are
+     * detected, the strongest by detector response are kept.  Images are described again.
      *
-     *
-     * @param maxFeatures
+     * @param maxFeatures Maximum number of features per description.
      */
     public void setMaxFeatures(int maxFeatures) {
         if (maxFeatures <= 0)
@@ -300,7 +634,101 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
             " Can't have nonpositive maximum amount of features.");
         if (this.maxFeatures == maxFeatures) return;
         this.maxFeatures = maxFeatures;
-        updateAssociater();
+        updateDetector();
+    }
+
+    /**
+     * Sets the strategy that selects the kept features when more than the maximum are detected.
+     * {@link FeatureSelector#GRID} and {@link FeatureSelector#ANMS} spread the features over the image,
+     * so dense clusters, for example around the text of a control panel, can't take the whole budget.
+     * Images are described again.
+     *
+     * @param selector Strategy that selects the kept features.
+     */
+    public void setFeatureSelector(FeatureSelector selector) {
+        if (selector == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".setFeatureSelector() " +
+                    "Null Feature Selector argument");
+        if (selector == this.featureSelector) return;
+        this.featureSelector = selector;
+        updateDetector();
+    }
+
+    /**
+     * Sets the grid that {@link FeatureSelector#GRID} spreads kept features over.  Every cell keeps its
+     * strongest features up to an equal share of the maximum before the rest is filled with the strongest
+     * features of any cell, so matches cover the whole image instead of its most textured part.
+     * Images are described again.
+     *
+     * @param rows Number of grid rows.
+     * @param columns Number of grid columns.
+     */
+    public void setFeatureGrid(int rows, int columns) {
+        if (rows <= 0 || columns <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".setFeatureGrid()" +
+                    " Can't have nonpositive grid dimensions.");
+        if (this.gridRows == rows && this.gridColumns == columns) return;
+        this.gridRows = rows;
+        this.gridColumns = columns;
+        updateDetector();
+    }
+
+    /**
+     * Sets the precision descriptors are stored, cached and associated with.  Lower precision
+     * reduces memory and speeds up Euclidean association at a small loss of accuracy.
+     * Images are described again.
+     *
+     * @param precision Descriptor precision.
+     */
+    public void setPrecision(DescriptorPrecision precision) {
+        if (precision == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".setPrecision() " +
+                    "Null Precision argument");
+        if (precision == this.precision) return;
+        this.precision = precision;
+        updateDetector();
+    }
+
+    /**
+     * Sets the scale of every descriptor dimension used for int8 precision, for example scales from
+     * {@link QuantizedDescriptors#learnScales} over a corpus of reference descriptors.
+     * Images are described again.
+     *
+     * @param scales Positive scale of every dimension, null for the scales of unit length descriptors.
+     */
+    public void setQuantizationScales(double[] scales) {
+        if (scales != null) {
+            if (scales.length != getDescriptorLength())
+                throw new IllegalArgumentException(getClass().getSimpleName() + ".setQuantizationScales()" +
+                        " Need a scale for every descriptor dimension.");
+            for (double scale : scales) {
+                if (!(scale > 0))
+                    throw new IllegalArgumentException(getClass().getSimpleName() +
+                            ".setQuantizationScales() Scales must be positive.");
+            }
+            scales = scales.clone();
+        }
+        if (Arrays.equals(scales, quantizationScales)) return;
+        this.quantizationScales = scales;
+        updateDetector();
+    }
+
+    /**
+     * Sets a projection that reduces the dimension of every descriptor before it is cached,
+     * quantized and associated, for example one from {@link DescriptorProjection#learn}.
+     * Quantization scales of another dimension are cleared.  Images are described again.
+     *
+     * @param projection Projection of descriptors of the current detector, null to disable.
+     */
+    public void setProjection(DescriptorProjection projection) {
+        if (projection != null && projection.getLength() != getCurrentDetDesc().getDescriptionLength())
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".setProjection()" +
+                    " Projection does not match the descriptor length.");
+        if (projection == null ? this.projection == null : projection.equals(this.projection)) return;
+        this.projection = projection;
+        if (quantizationScales != null && quantizationScales.length != getDescriptorLength())
+            quantizationScales = null;
+        updateDetector();
     }
 
     ////////////////////////////////////////////////////////////////////////////////////
@@ -330,8 +758,18 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
         if (backwardsValidation != that.backwardsValidation) return false;
         if (Double.compare(that.maxDistance, maxDistance) != 0) return false;
         if (maxFeatures != that.maxFeatures) return false;
+        if (featureSelector != that.featureSelector) return false;
+        if (gridRows != that.gridRows) return false;
+        if (gridColumns != that.gridColumns) return false;
         if (squareEuclidian != that.squareEuclidian) return false;
         if (scorer != that.scorer) return false;
+        if (associater != that.associater) return false;
+        if (maxNodesSearched != that.maxNodesSearched) return false;
+        if (numTrees != that.numTrees) return false;
+        if (Double.compare(that.ratio, ratio) != 0) return false;
+        if (precision != that.precision) return false;
+        if (!Arrays.equals(quantizationScales, that.quantizationScales)) return false;
+        if (projection != null ? !projection.equals(that.projection) : that.projection != null) return false;
         return true;
     }
 
@@ -345,6 +783,17 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
         temp = Double.doubleToLongBits(maxDistance);
         result = 31 * result + (int) (temp ^ (temp >>> 32));
         result = 31 * result + maxFeatures;
+        result = 31 * result + featureSelector.hashCode();
+        result = 31 * result + gridRows;
+        result = 31 * result + gridColumns;
+        result = 31 * result + associater.hashCode();
+        result = 31 * result + maxNodesSearched;
+        result = 31 * result + numTrees;
+        temp = Double.doubleToLongBits(ratio);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + precision.hashCode();
+        result = 31 * result + Arrays.hashCode(quantizationScales);
+        result = 31 * result + (projection != null ? projection.hashCode() : 0);
         return result;
     }
 
@@ -354,8 +803,15 @@ public abstract class FeatureDetectionParams implements OnConfigurationChangedLi
     protected void checkRep() {
         String prefix = this.getClass().getSimpleName() + ".checkRep() ";
         assert this.scorer != null: prefix + "Can't have null Scorer";
+        assert this.associater != null: prefix + "Can't have null Associater";
+        assert this.maxNodesSearched > 0: prefix + "Can't have non positive nodes searched";
+        assert this.numTrees > 0: prefix + "Can't have non positive number of trees";
+        assert this.ratio > 0.0 && this.ratio <= 1.0: prefix + "Ratio must be within (0, 1]";
         assert this.maxDistance > 0.0: prefix + "Can't have non positive maximum distance";
         assert this.maxFeatures > 0: prefix + "Can't have non positive maximum features";
+        assert this.featureSelector != null: prefix + "Can't have null Feature Selector";
+        assert this.gridRows > 0 && this.gridColumns > 0: prefix + "Can't have non positive grid dimensions";
+        assert this.precision != null: prefix + "Can't have null Precision";
     }
 
 }
@@ -0,0 +1,27 @@
+package uw.cse.mag.appliancereader.lib.cv.params.core;
+
+/**
+ * Strategy used to keep the maximum number of features when more features are detected.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public enum FeatureSelector {
+    STRONGEST("Strongest"),
+    GRID("Strongest per Grid Cell"),
+    ANMS("Adaptive Non-Maximal Suppression");
+
+    private final String mName;
+
+    private FeatureSelector(String name) {
+        mName = name;
+    }
+
+    public String toString() {
+        return mName;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+}
@@ -3,6 +3,7 @@ package uw.cse.mag.appliancereader.lib.cv.params.homography;
 import boofcv.abst.geo.fitting.DistanceFromModelResidualN;
 import boofcv.alg.geo.h.HomographyResidualSampson;
 import boofcv.alg.geo.h.HomographyResidualTransfer;
+import boofcv.factory.geo.EpipolarError;
 import boofcv.struct.geo.AssociatedPair;
 import org.ejml.data.DenseMatrix64F;
 
@@ -25,4 +26,21 @@ public enum ErrorMetric {
                         "Distance from model residual N");
         }
     }
+
+    /**
+     * @return Error that {@link boofcv.factory.geo.FactoryMultiView#refineHomography} minimizes with the
+     * residual of this metric.  BoofCV 0.15 refines with the Sampson residual for SIMPLE and with the
+     * transfer residual for SAMPSON.
+     */
+    public EpipolarError getRefineError() {
+        switch (this) {
+            case RESIDUAL_SAMPSON:
+                return EpipolarError.SIMPLE;
+            case RESIDUAL_TRANSFER:
+                return EpipolarError.SAMPSON;
+            default:
+                throw new IllegalStateException(this.getClass().getSimpleName() + ".getRefineError() Unsupported " +
+                        "Distance from model residual N");
+        }
+    }
 }
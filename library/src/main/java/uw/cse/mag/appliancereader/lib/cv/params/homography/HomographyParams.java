@@ -1,13 +1,20 @@
 package uw.cse.mag.appliancereader.lib.cv.params.homography;
 
 import boofcv.abst.geo.Estimate1ofEpipolar;
+import boofcv.abst.geo.RefineEpipolar;
 import boofcv.abst.geo.fitting.DistanceFromModelResidualN;
 import boofcv.abst.geo.fitting.GenerateEpipolarMatrix;
 import boofcv.factory.geo.FactoryMultiView;
 import boofcv.struct.geo.AssociatedPair;
 import org.ddogleg.fitting.modelset.ModelMatcher;
-import org.ddogleg.fitting.modelset.ransac.Ransac;
 import org.ejml.data.DenseMatrix64F;
+import uw.cse.mag.appliancereader.lib.cv.ScoredAssociatedPair;
+import uw.cse.mag.appliancereader.lib.cv.fitting.AdaptiveRansac;
+import uw.cse.mag.appliancereader.lib.cv.fitting.LoRansac;
+import uw.cse.mag.appliancereader.lib.cv.fitting.PackedHomographyRansac;
+import uw.cse.mag.appliancereader.lib.cv.fitting.ParallelModelMatcher;
+import uw.cse.mag.appliancereader.lib.cv.fitting.Prosac;
+import uw.cse.mag.appliancereader.lib.cv.fitting.SprtRansac;
 import uw.cse.mag.appliancereader.lib.cv.params.core.ConfigException;
 
 /**
@@ -23,6 +30,15 @@ public class HomographyParams {
     public static final long DEFAULT_RANDOMIZE_SEED = 123123;
     public static final int DEFAULT_NUM_ITERATIONS = 1000;
     public static final double DEFAULT_THRESHOLD_FIT = 1.0;
+    public static final double DEFAULT_CONFIDENCE = 0.99;
+    public static final int DEFAULT_NUM_THREADS = 1;
+    public static final boolean DEFAULT_GUIDED_MATCHING = false;
+    public static final double DEFAULT_GUIDED_WINDOW = 8.0;
+    public static final RobustEstimator DEFAULT_ROBUST_ESTIMATOR = RobustEstimator.RANSAC;
+    public static final boolean DEFAULT_WARM_START = false;
+    public static final double DEFAULT_WARM_START_RATIO = 0.5;
+    public static final int DEFAULT_LOCAL_ITERATIONS = 4;
+    public static final boolean DEFAULT_REFINE = false;
 
     /**
      * Flag that annotates whether the input needs to be normalized.
@@ -44,15 +60,70 @@ public class HomographyParams {
     /**
      * The maximum number of iterations the RANSAC algorithm will perform.
      * <b>Unit of measurement is in ones.</b>
+     * <b>Sampling stops earlier once the confidence is reached.</b>
      */
     private int numIterations;
 
+    /**
+     * Probability that an all inlier sample has been drawn when sampling stops.
+     * <b>1 always performs the maximum number of iterations.</b>
+     */
+    private double confidence = DEFAULT_CONFIDENCE;
+
+    /**
+     * Number of threads that split the iterations, each with its own seed.
+     * <b>Results are reproducible for a fixed seed and number of threads.</b>
+     */
+    private int numThreads = DEFAULT_NUM_THREADS;
+
     /**
      * How close of a fit two points need to be the model to be considered a fit.
      * <b>Unit is in Pixels.</b>
      */
     private double thresholdFit;
 
+    /**
+     * Whether features are associated again near their location mapped by the first homography,
+     * and the homography is estimated again from the resulting inliers.
+     */
+    private boolean guidedMatching = DEFAULT_GUIDED_MATCHING;
+
+    /**
+     * Search radius around every mapped reference feature during guided matching.
+     * <b>Unit is in Pixels.</b>
+     */
+    private double guidedWindow = DEFAULT_GUIDED_WINDOW;
+
+    /**
+     * Robust estimator that finds the inlier matches.
+     * <b>PROSAC samples the matches with the best association scores first.</b>
+     * <b>SPRT abandons the verification of bad hypotheses after few matches.</b>
+     * <b>PACKED runs RANSAC over primitive arrays without allocating per frame.</b>
+     * <b>LO_RANSAC estimates every new best model again from all of its inliers.</b>
+     */
+    private RobustEstimator robustEstimator = DEFAULT_ROBUST_ESTIMATOR;
+
+    /**
+     * Maximum number of estimates from the inliers of every new best model of LO-RANSAC.
+     */
+    private int localIterations = DEFAULT_LOCAL_ITERATIONS;
+
+    /**
+     * Whether LO-RANSAC refines the final homography over its inliers with Levenberg-Marquardt.
+     */
+    private boolean refine = DEFAULT_REFINE;
+
+    /**
+     * Whether new matches are first checked against the previous homography before running
+     * the robust estimator.
+     */
+    private boolean warmStart = DEFAULT_WARM_START;
+
+    /**
+     * Fraction of the new matches that must fit the previous homography for it to be kept.
+     */
+    private double warmStartRatio = DEFAULT_WARM_START_RATIO;
+
     /**
      * Model Matcher for finding inlier matches.
      */
@@ -106,18 +177,27 @@ public class HomographyParams {
      */
     private void updateHomographyComputer() {
         Estimate1ofEpipolar oldVal = homographyComputer;
-        homographyComputer = getHomographyComputer();
+        homographyComputer = FactoryMultiView.computeHomography(isNormalize());
         if (this.listener != null)
             listener.onHomographyComputerChanged(homographyComputer, oldVal);
         updateModelMatcher();
     }
 
+    /**
+     * Notifies the listener that the homography needs to be computed again from the current inliers, for
+     * changes that don't affect the model matcher.
+     */
+    private void notifyHomographyComputer() {
+        if (this.listener != null)
+            listener.onHomographyComputerChanged(getHomographyComputer(), homographyComputer);
+    }
+
     /**
      * Updates the model matcher with the most current parameters.
      */
     private void updateModelMatcher() {
         ModelMatcher<DenseMatrix64F, AssociatedPair> oldVal = modelMatcher;
-        modelMatcher = getModelMatcher();
+        modelMatcher = createMatcher();
         if (this.listener != null)
             listener.onModelMatcherChanged(modelMatcher, oldVal);
     }
@@ -178,6 +258,34 @@ public class HomographyParams {
         updateModelMatcher();
     }
 
+    /**
+     * Set the confidence at which sampling stops.  The number of iterations is recomputed from the
+     * inlier ratio of the best model found so far, up to the maximum number of iterations.
+     *
+     * @param confidence Confidence in (0, 1], 1 to always perform the maximum number of iterations.
+     */
+    public void setConfidence(double confidence) throws ConfigException {
+        if (confidence <= 0.0 || confidence > 1.0)
+            throw new ConfigException("Confidence must be in (0, 1]");
+        if (Double.compare(this.confidence, confidence) == 0) return;
+        this.confidence = confidence;
+        updateModelMatcher();
+    }
+
+    /**
+     * Set the number of threads that search for the model at the same time.  The iterations are split
+     * across the threads and the model with the most inliers is kept.
+     *
+     * @param numThreads Number of threads, 1 to search on the calling thread.
+     */
+    public void setNumThreads(int numThreads) throws ConfigException {
+        if (numThreads <= 0)
+            throw new ConfigException("Number of threads must be positive!");
+        if (this.numThreads == numThreads) return;
+        this.numThreads = numThreads;
+        updateModelMatcher();
+    }
+
     /**
      * Set the threshold of acceptance for seeing how close a point needs to
      * be to be considered a fit.
@@ -192,6 +300,96 @@ public class HomographyParams {
         updateModelMatcher();
     }
 
+    /**
+     * Enables a guided matching pass after the first homography is found.  Every reference feature is
+     * mapped through the homography and associated again only with the features in a window around it.
+     * The homography is then estimated again from the guided matches that fit it.
+     *
+     * @param guidedMatching Whether to match again guided by the first homography.
+     */
+    public void setGuidedMatching(boolean guidedMatching) {
+        if (this.guidedMatching == guidedMatching) return;
+        this.guidedMatching = guidedMatching;
+        notifyHomographyComputer();
+    }
+
+    /**
+     * Set the search radius of guided matching.
+     *
+     * @param guidedWindow Radius in pixels.
+     */
+    public void setGuidedWindow(double guidedWindow) throws ConfigException {
+        if (guidedWindow <= 0.0)
+            throw new ConfigException("Guided matching window must be positive");
+        if (Double.compare(this.guidedWindow, guidedWindow) == 0) return;
+        this.guidedWindow = guidedWindow;
+        if (guidedMatching)
+            notifyHomographyComputer();
+    }
+
+    /**
+     * Set the robust estimator that finds the inlier matches.
+     *
+     * @param robustEstimator Robust estimator to use.
+     */
+    public void setRobustEstimator(RobustEstimator robustEstimator) {
+        if (robustEstimator == null)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "setRobustEstimator(), Null input.");
+        if (this.robustEstimator == robustEstimator) return;
+        this.robustEstimator = robustEstimator;
+        updateModelMatcher();
+    }
+
+    /**
+     * Set the maximum number of times LO-RANSAC estimates a new best homography again from its inliers.
+     *
+     * @param localIterations Number of local estimates, 0 to skip the local optimization.
+     */
+    public void setLocalIterations(int localIterations) throws ConfigException {
+        if (localIterations < 0)
+            throw new ConfigException("Number of local iterations can't be negative!");
+        if (this.localIterations == localIterations) return;
+        this.localIterations = localIterations;
+        if (robustEstimator == RobustEstimator.LO_RANSAC)
+            updateModelMatcher();
+    }
+
+    /**
+     * Enables the Levenberg-Marquardt refinement of the final LO-RANSAC homography over its inliers.
+     *
+     * @param refine Whether to refine the final homography.
+     */
+    public void setRefine(boolean refine) {
+        if (this.refine == refine) return;
+        this.refine = refine;
+        if (robustEstimator == RobustEstimator.LO_RANSAC)
+            updateModelMatcher();
+    }
+
+    /**
+     * Enables warm starting from the previous homography.  New matches are scored against the previous
+     * homography first, and when enough of them fit it the homography is estimated again from those
+     * matches only.  The robust estimator runs only when too few matches fit.
+     *
+     * @param warmStart Whether to start from the previous homography.
+     */
+    public void setWarmStart(boolean warmStart) {
+        if (this.warmStart == warmStart) return;
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Set the fraction of matches that must fit the previous homography to skip the robust estimator.
+     *
+     * @param warmStartRatio Inlier ratio in (0, 1].
+     */
+    public void setWarmStartRatio(double warmStartRatio) throws ConfigException {
+        if (warmStartRatio <= 0.0 || warmStartRatio > 1.0)
+            throw new ConfigException("Warm start inlier ratio must be in (0, 1]");
+        if (Double.compare(this.warmStartRatio, warmStartRatio) == 0) return;
+        this.warmStartRatio = warmStartRatio;
+    }
+
     public void setListener(OnHomographyParametersChangedListener listener) {
         this.listener = listener;
     }
@@ -235,6 +433,24 @@ public class HomographyParams {
         return numIterations;
     }
 
+    /**
+     * Probability that an all inlier sample has been drawn when sampling stops.
+     *
+     * @return Confidence in (0, 1].
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Number of threads that search for the model at the same time.
+     *
+     * @return Number of threads.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
     /**
      * How close of a fit a points needs to be to the model to be considered a fit. In pixels
      *
@@ -244,6 +460,61 @@ public class HomographyParams {
         return thresholdFit;
     }
 
+    /**
+     * @return Whether features are matched again guided by the first homography.
+     */
+    public boolean isGuidedMatching() {
+        return guidedMatching;
+    }
+
+    /**
+     * Search radius around every mapped reference feature during guided matching. In pixels
+     *
+     * @return Number of pixels.
+     */
+    public double getGuidedWindow() {
+        return guidedWindow;
+    }
+
+    /**
+     * @return Robust estimator that finds the inlier matches.
+     */
+    public RobustEstimator getRobustEstimator() {
+        return robustEstimator;
+    }
+
+    /**
+     * Maximum number of times LO-RANSAC estimates a new best homography again from its inliers.
+     *
+     * @return Number of local estimates.
+     */
+    public int getLocalIterations() {
+        return localIterations;
+    }
+
+    /**
+     * @return Whether LO-RANSAC refines the final homography with Levenberg-Marquardt.
+     */
+    public boolean isRefine() {
+        return refine;
+    }
+
+    /**
+     * @return Whether new matches are first checked against the previous homography.
+     */
+    public boolean isWarmStart() {
+        return warmStart;
+    }
+
+    /**
+     * Fraction of the matches that must fit the previous homography to skip the robust estimator.
+     *
+     * @return Inlier ratio in (0, 1].
+     */
+    public double getWarmStartRatio() {
+        return warmStartRatio;
+    }
+
     /**
      * Provides a Model Matcher for gathering inliers.
      *
@@ -267,13 +538,38 @@ public class HomographyParams {
     }
 
     /**
-     * Creates Ransac model matcher.
+     * Creates the model matcher of the robust estimator.  With more than one thread the iterations are
+     * split across estimators with seeds derived from the randomization seed.
      * @return The model matcher of this.
      */
-    private ModelMatcher createMatcher() {
+    private ModelMatcher<DenseMatrix64F, AssociatedPair> createMatcher() {
+        if (getNumThreads() == 1)
+            return createMatcher(getRandomizeSeed(), getNumIterations(), getConfidence());
+        ParallelModelMatcher.Factory<DenseMatrix64F, AssociatedPair> factory =
+                new ParallelModelMatcher.Factory<DenseMatrix64F, AssociatedPair>() {
+                    @Override
+                    public ModelMatcher<DenseMatrix64F, AssociatedPair> create(long seed, int maxIterations,
+                                                                               double confidence) {
+                        return createMatcher(seed, maxIterations, confidence);
+                    }
+                };
+        return new ParallelModelMatcher<DenseMatrix64F, AssociatedPair>(factory, getNumThreads(),
+                getRandomizeSeed(), getNumIterations(), getConfidence(), ParallelModelMatcher.getDefaultPool());
+    }
+
+    /**
+     * Creates a model matcher of the robust estimator that shares no state with other matchers.
+     *
+     * @param seed Randomization seed.
+     * @param iterations Maximum number of iterations.
+     * @param confidence Confidence at which sampling stops.
+     * @return New model matcher.
+     */
+    private ModelMatcher<DenseMatrix64F, AssociatedPair> createMatcher(long seed, int iterations,
+                                                                       double confidence) {
         // Select which linear algorithm is to be used.
         // Currently we will use Homography to match different perspective views.
-        Estimate1ofEpipolar computeHomography = getHomographyComputer();
+        Estimate1ofEpipolar computeHomography = FactoryMultiView.computeHomography(isNormalize());
 
         // Wrapper so that this estimator can be used by the robust estimator
         GenerateEpipolarMatrix generateH = new GenerateEpipolarMatrix(computeHomography);
@@ -282,9 +578,26 @@ public class HomographyParams {
         // Tailored to use
         DistanceFromModelResidualN<DenseMatrix64F, AssociatedPair> errorMetric = getErrorMetric().getMetric();
 
-        // Return the Ransac
-        return new Ransac<DenseMatrix64F, AssociatedPair>(getRandomizeSeed(), generateH, errorMetric,
-                getNumIterations(), getThresholdFit());
+        switch (getRobustEstimator()) {
+            case PROSAC:
+                return new Prosac<DenseMatrix64F, AssociatedPair>(seed, generateH, errorMetric,
+                        iterations, getThresholdFit(), confidence, ScoredAssociatedPair.BEST_FIRST);
+            case SPRT:
+                return new SprtRansac<DenseMatrix64F, AssociatedPair>(seed, generateH, errorMetric,
+                        iterations, getThresholdFit(), confidence);
+            case LO_RANSAC:
+                RefineEpipolar refiner = null;
+                if (isRefine())
+                    refiner = FactoryMultiView.refineHomography(1e-8, 400, getErrorMetric().getRefineError());
+                return new LoRansac<DenseMatrix64F, AssociatedPair>(seed, generateH, errorMetric,
+                        iterations, getThresholdFit(), confidence, getLocalIterations(), refiner);
+            case PACKED:
+                return new PackedHomographyRansac(seed, getErrorMetric(), iterations, getThresholdFit(), confidence);
+            default:
+                // Return the Ransac
+                return new AdaptiveRansac<DenseMatrix64F, AssociatedPair>(seed, generateH,
+                        errorMetric, iterations, getThresholdFit(), confidence);
+        }
     }
 
     /**
@@ -309,6 +622,15 @@ public class HomographyParams {
         if (randomizeSeed != that.randomizeSeed) return false;
         if (Double.compare(that.thresholdFit, thresholdFit) != 0) return false;
         if (errorMetric != that.errorMetric) return false;
+        if (guidedMatching != that.guidedMatching) return false;
+        if (Double.compare(that.guidedWindow, guidedWindow) != 0) return false;
+        if (robustEstimator != that.robustEstimator) return false;
+        if (Double.compare(that.confidence, confidence) != 0) return false;
+        if (numThreads != that.numThreads) return false;
+        if (warmStart != that.warmStart) return false;
+        if (Double.compare(that.warmStartRatio, warmStartRatio) != 0) return false;
+        if (localIterations != that.localIterations) return false;
+        if (refine != that.refine) return false;
         return true;
     }
 
@@ -322,6 +644,18 @@ public class HomographyParams {
         result = 31 * result + numIterations;
         temp = Double.doubleToLongBits(thresholdFit);
         result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + (guidedMatching ? 1 : 0);
+        temp = Double.doubleToLongBits(guidedWindow);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + robustEstimator.hashCode();
+        temp = Double.doubleToLongBits(confidence);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + numThreads;
+        result = 31 * result + (warmStart ? 1 : 0);
+        temp = Double.doubleToLongBits(warmStartRatio);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + localIterations;
+        result = 31 * result + (refine ? 1 : 0);
         return result;
     }
 
@@ -333,6 +667,15 @@ public class HomographyParams {
                 ", randomizeSeed=" + randomizeSeed +
                 ", errorMetric=" + errorMetric +
                 ", normalize=" + normalize +
+                ", guidedMatching=" + guidedMatching +
+                ", guidedWindow=" + guidedWindow +
+                ", robustEstimator=" + robustEstimator +
+                ", confidence=" + confidence +
+                ", numThreads=" + numThreads +
+                ", warmStart=" + warmStart +
+                ", warmStartRatio=" + warmStartRatio +
+                ", localIterations=" + localIterations +
+                ", refine=" + refine +
                 '}';
     }
 
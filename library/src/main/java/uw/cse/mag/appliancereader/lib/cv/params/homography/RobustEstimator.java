@@ -0,0 +1,29 @@
+package uw.cse.mag.appliancereader.lib.cv.params.homography;
+
+/**
+ * Robust estimator that separates inlier from outlier matches while fitting the homography.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public enum RobustEstimator {
+    RANSAC("RANSAC"),
+    PROSAC("PROSAC"),
+    SPRT("RANSAC with SPRT"),
+    PACKED("Allocation free RANSAC"),
+    LO_RANSAC("LO-RANSAC");
+
+    private final String mName;
+
+    private RobustEstimator(String name) {
+        mName = name;
+    }
+
+    public String toString() {
+        return mName;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+}
@@ -8,8 +8,12 @@ import boofcv.abst.feature.orientation.ConfigSiftOrientation;
 import boofcv.factory.feature.detdesc.FactoryDetectDescribe;
 import boofcv.struct.feature.SurfFeature;
 import boofcv.struct.image.ImageFloat32;
+import uw.cse.mag.appliancereader.lib.cv.params.core.BaseController;
 import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class that represents general Sift Parameters.
  *
@@ -86,6 +90,16 @@ public class SiftParams extends FeatureDetectionParams {
                 getDetector(), getOrientation(), getDescriber());
     }
 
+    @Override
+    protected List<BaseController> getControllers() {
+        List<BaseController> controllers = new ArrayList<BaseController>();
+        controllers.add(mScaleSpace);
+        controllers.add(mDetector);
+        controllers.add(mOrientation);
+        controllers.add(mDescribe);
+        return controllers;
+    }
+
     public ScaleSpaceController getScaleSpaceController() {
         return mScaleSpace;
     }
@@ -6,8 +6,11 @@ import boofcv.abst.feature.orientation.ConfigAverageIntegral;
 import boofcv.factory.feature.detdesc.FactoryDetectDescribe;
 import boofcv.struct.feature.SurfFeature;
 import boofcv.struct.image.ImageFloat32;
+import uw.cse.mag.appliancereader.lib.cv.params.core.BaseController;
 import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
 
+import java.util.List;
+
 /**
  * Parameters that define hwo to Associate Points using Fast Surf.
  *
@@ -61,6 +64,14 @@ public class FastSurfParams extends SurfParams {
                 getSpeed(), getAverageIntegral(), FeatureDetectionParams.IMAGE_TYPE);
     }
 
+    @Override
+    protected List<BaseController> getControllers() {
+        List<BaseController> controllers = super.getControllers();
+        controllers.add(mSpeedController);
+        controllers.add(mAvgIntegralController);
+        return controllers;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////
     ////    Getters
     ////////////////////////////////////////////////////////////////////////////////////
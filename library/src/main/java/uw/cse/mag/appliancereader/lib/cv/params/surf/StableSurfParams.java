@@ -6,8 +6,11 @@ import boofcv.abst.feature.orientation.ConfigSlidingIntegral;
 import boofcv.factory.feature.detdesc.FactoryDetectDescribe;
 import boofcv.struct.feature.SurfFeature;
 import boofcv.struct.image.ImageFloat32;
+import uw.cse.mag.appliancereader.lib.cv.params.core.BaseController;
 import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
 
+import java.util.List;
+
 /**
  * Parameters that define how to Associate Points using Stable Surf.
  *
@@ -58,6 +61,14 @@ public class StableSurfParams extends SurfParams {
                 getSlidingIntegral(), FeatureDetectionParams.IMAGE_TYPE);
     }
 
+    @Override
+    protected List<BaseController> getControllers() {
+        List<BaseController> controllers = super.getControllers();
+        controllers.add(mStabilityConfig);
+        controllers.add(mSlidingIntegralConfig);
+        return controllers;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////
     ////    Getters
     ////////////////////////////////////////////////////////////////////////////////////
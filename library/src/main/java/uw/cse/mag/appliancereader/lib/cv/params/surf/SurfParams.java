@@ -1,8 +1,12 @@
 package uw.cse.mag.appliancereader.lib.cv.params.surf;
 
 import boofcv.abst.feature.detect.interest.ConfigFastHessian;
+import uw.cse.mag.appliancereader.lib.cv.params.core.BaseController;
 import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class that represents general Surf Parameters.
  *
@@ -38,6 +42,12 @@ public abstract class SurfParams extends FeatureDetectionParams {
     ////    Getters
     ////////////////////////////////////////////////////////////////////////////////////
 
+    @Override
+    protected List<BaseController> getControllers() {
+        List<BaseController> controllers = new ArrayList<BaseController>();
+        controllers.add(mFastHessian);
+        return controllers;
+    }
 
     public FastHessianController getFastHessianController() {
         return mFastHessian;
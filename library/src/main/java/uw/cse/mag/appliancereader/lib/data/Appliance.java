@@ -3,6 +3,7 @@ package uw.cse.mag.appliancereader.lib.data;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -125,10 +126,29 @@ public class Appliance {
         return mRefImagePath;
     }
 
+    /**
+     * @return Unmodifiable view of the Display Features of this appliance.
+     */
+    public Collection<DisplayFeature> getDisplayFeatures() {
+        return Collections.unmodifiableCollection(mFeatures);
+    }
+
     ////////////////////////////////////////////////////////////////////
     ////    Setters
     ////////////////////////////////////////////////////////////////////
 
+    /**
+     * Adds a Display Feature to this appliance.
+     *
+     * @param feature Display Feature to add.
+     */
+    public void addDisplayFeature(DisplayFeature feature) {
+        if (feature == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".addDisplayFeature() " +
+                    "Null Display Feature");
+        mFeatures.add(feature);
+    }
+
     /**
      * Give client the ability to register a specific nickname to this appliance.
      *
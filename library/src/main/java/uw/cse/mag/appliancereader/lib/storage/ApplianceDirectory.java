@@ -74,6 +74,20 @@ public class ApplianceDirectory {
         return mAppliance.equals(app);
     }
 
+    /**
+     * @return The appliance this directory represents.
+     */
+    public Appliance getAppliance() {
+        return mAppliance;
+    }
+
+    /**
+     * @return Unique name of this directory.
+     */
+    public String getName() {
+        return mDirectory.getName();
+    }
+
     /**
      * Attempts to update the file directory for this appliance.
      *
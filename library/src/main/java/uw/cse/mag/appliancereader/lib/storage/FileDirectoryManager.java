@@ -1,11 +1,19 @@
 package uw.cse.mag.appliancereader.lib.storage;
 
+import uw.cse.mag.appliancereader.lib.cv.DescriptorCache;
+import uw.cse.mag.appliancereader.lib.cv.ImagePointAssociator;
+import uw.cse.mag.appliancereader.lib.cv.MappedDescriptorStore;
+import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
 import uw.cse.mag.appliancereader.lib.data.Appliance;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.logging.Logger;
 
 /**
  * Correctly organizes appliance data within a specified subdirectory.
@@ -37,6 +45,12 @@ public class FileDirectoryManager {
      */
     private static final String APPLIANCE_DIR = "Appliances";
 
+    /**
+     * Name parts of descriptor store files.
+     */
+    private static final String DESCRIPTOR_STORE_PREFIX = "Descriptors_";
+    private static final String DESCRIPTOR_STORE_EXTENSION = ".map";
+
     /**
      * Creates a file directory manager rooting all the Appliances with inputted directory.
      *
@@ -114,4 +128,82 @@ public class FileDirectoryManager {
         dir.sync();
     }
 
+    /**
+     * Returns the file of the descriptor store for the argument parameters.
+     *
+     * @param params Parameters that describe the reference images.
+     * @return File of the descriptor store, may not exist.
+     */
+    public File getDescriptorStoreFile(FeatureDetectionParams params) {
+        if (params == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".getDescriptorStoreFile() Null parameters");
+        return new File(mMainDir, DESCRIPTOR_STORE_PREFIX + DescriptorCache.createKey(params)
+                + DESCRIPTOR_STORE_EXTENSION);
+    }
+
+    /**
+     * Describes the reference image of every appliance and writes all the descriptors into one memory
+     * mapped descriptor store.  Appliances without a readable reference image are skipped.
+     * <b>Only one reference image is described at a time, so the heap does not grow with the number of appliances.</b>
+     *
+     * @param appliances Appliances to describe.
+     * @param associator Associator that describes the reference images.
+     * @return The opened descriptor store.
+     * @throws IOException The store could not be written.
+     */
+    public MappedDescriptorStore writeDescriptorStore(Collection<Appliance> appliances,
+                                                      ImagePointAssociator associator) throws IOException {
+        if (appliances == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".writeDescriptorStore() Null appliances");
+        if (associator == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".writeDescriptorStore() Null associator");
+
+        FeatureDetectionParams params = associator.getParameters();
+        File file = getDescriptorStoreFile(params);
+        MappedDescriptorStore.Writer writer = new MappedDescriptorStore.Writer(file, params.getFingerprint());
+        try {
+            for (Appliance appliance : appliances) {
+                Path path = appliance.getReferenceImagePath();
+                if (path == null) continue;
+                BufferedImage image = ImageIO.read(path.toFile());
+                if (image == null) {
+                    Logger.getLogger(getClass().getSimpleName()).warning("Skipping unreadable " +
+                            "reference image " + path);
+                    continue;
+                }
+                ApplianceDirectory dir = getApplianceDirectory(appliance);
+                writer.add(dir.getName(), associator.describeImage(image).getPackedFeatures());
+            }
+        } catch (IOException e) {
+            writer.discard();
+            throw e;
+        } catch (RuntimeException e) {
+            writer.discard();
+            throw e;
+        }
+        writer.close();
+        return MappedDescriptorStore.open(file);
+    }
+
+    /**
+     * Opens the descriptor store for the argument parameters.
+     *
+     * @param params Parameters that describe the reference images.
+     * @return The opened store or null if there is no valid store for the parameters.
+     */
+    public MappedDescriptorStore openDescriptorStore(FeatureDetectionParams params) {
+        File file = getDescriptorStoreFile(params);
+        if (!file.isFile()) return null;
+        try {
+            MappedDescriptorStore store = MappedDescriptorStore.open(file);
+            if (store.getFingerprint().equals(params.getFingerprint()))
+                return store;
+            store.close();
+        } catch (IOException e) {
+            Logger.getLogger(getClass().getSimpleName()).warning("Unable to open descriptor " +
+                    "store " + file + ": " + e.getMessage());
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,48 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.struct.geo.AssociatedPair;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.brief.BriefParams;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link BinaryPointAssociator}.
+ */
+public class BinaryPointAssociatorTest {
+
+    @Test
+    public void testRecoversShift() throws Exception {
+        BriefParams params = new BriefParams();
+        BinaryPointAssociator associator = new BinaryPointAssociator(params);
+        associator.setImages(HomographyCalculatorTest.texture(1, 0), HomographyCalculatorTest.texture(1, 5));
+
+        List<AssociatedPair> matches = associator.getMatches();
+        Assert.assertTrue(matches.size() > 20);
+        Assert.assertEquals(5, median(matches, true), 0.5);
+        Assert.assertEquals(0, median(matches, false), 0.5);
+
+        // Detector changes describe both images again.
+        params.setMaxFeatures(30);
+        Assert.assertTrue(associator.getReferenceImageFeatures().size() <= 30);
+        Assert.assertTrue(associator.getOtherImageFeatures().size() <= 30);
+        matches = associator.getMatches();
+        Assert.assertTrue(matches.size() <= 30);
+        Assert.assertEquals(5, median(matches, true), 0.5);
+    }
+
+    /**
+     * @return Median displacement of the matches along x or y.
+     */
+    private static double median(List<AssociatedPair> matches, boolean x) {
+        double[] shifts = new double[matches.size()];
+        for (int i = 0; i < shifts.length; i++) {
+            AssociatedPair pair = matches.get(i);
+            shifts[i] = x ? pair.p2.x - pair.p1.x : pair.p2.y - pair.p1.y;
+        }
+        Arrays.sort(shifts);
+        return shifts[shifts.length / 2];
+    }
+}
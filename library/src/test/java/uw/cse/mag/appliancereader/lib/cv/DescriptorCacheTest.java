@@ -0,0 +1,106 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.SurfFeature;
+import boofcv.struct.image.ImageFloat32;
+import georegression.struct.point.Point2D_F64;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uw.cse.mag.appliancereader.lib.cv.params.core.DescriptorPrecision;
+import uw.cse.mag.appliancereader.lib.cv.params.surf.FastSurfParams;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link DescriptorCache}.
+ */
+public class DescriptorCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DescriptorCache cache;
+
+    private ImageFloat32 image;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new DescriptorCache(folder.newFolder("descriptors"));
+        image = new ImageFloat32(8, 6);
+        for (int i = 0; i < image.data.length; i++)
+            image.data[i] = i;
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        FastQueue<SurfFeature> descriptors = new FastQueue<SurfFeature>(2, SurfFeature.class, false);
+        List<Point2D_F64> points = new ArrayList<Point2D_F64>();
+        for (int i = 0; i < 2; i++) {
+            SurfFeature feature = new SurfFeature(4);
+            feature.value = new double[] {i, i + 0.5, -i, 1.0 / (i + 1)};
+            feature.laplacianPositive = i == 0;
+            descriptors.add(feature);
+            points.add(new Point2D_F64(i * 2.5, i * 3.5));
+        }
+
+        String key = cache.createKey(image, new FastSurfParams());
+        Assert.assertNull(cache.load(key, image));
+        cache.store(key, new DetectionResultArgument(descriptors, points, image));
+
+        DetectionResultArgument loaded = cache.load(key, image);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(2, loaded.getDescriptors().size());
+        for (int i = 0; i < 2; i++) {
+            Assert.assertArrayEquals(descriptors.get(i).value, loaded.getDescriptors().get(i).value, 0);
+            Assert.assertEquals(descriptors.get(i).laplacianPositive,
+                    loaded.getDescriptors().get(i).laplacianPositive);
+            Assert.assertEquals(points.get(i).x, loaded.getPoints().get(i).x, 0);
+            Assert.assertEquals(points.get(i).y, loaded.getPoints().get(i).y, 0);
+        }
+    }
+
+    @Test
+    public void testStoreAndLoadQuantized() throws Exception {
+        double[] descriptors = {0.5, -0.25, 0.125, 1, -1, 0, 0.75, 0.3};
+        double[] x = {1, 2}, y = {3, 4};
+        boolean[] laplacianPositive = {true, false};
+        PackedFeatures features = new PackedFeatures(4, descriptors, x, y, laplacianPositive);
+        double[] scales = {0.01, 0.005, 0.008, 0.01};
+
+        for (DescriptorPrecision precision : new DescriptorPrecision[] {
+                DescriptorPrecision.FLOAT, DescriptorPrecision.INT8}) {
+            PackedFeatures quantized = features.quantize(precision, scales);
+            String key = precision.name();
+            cache.store(key, new DetectionResultArgument(quantized, image));
+
+            PackedFeatures loaded = cache.load(key, image).getPackedFeatures();
+            Assert.assertEquals(precision, loaded.getPrecision());
+            Assert.assertArrayEquals(quantized.getDescriptors(), loaded.getDescriptors(), 0);
+            Assert.assertArrayEquals(descriptors, loaded.getDescriptors(), 0.01);
+            Assert.assertArrayEquals(x, loaded.getX(), 0);
+            Assert.assertArrayEquals(y, loaded.getY(), 0);
+        }
+    }
+
+    @Test
+    public void testKeyDependsOnContentAndParameters() throws Exception {
+        FastSurfParams params = new FastSurfParams();
+        String key = cache.createKey(image, params);
+        Assert.assertEquals(key, cache.createKey(image.clone(), new FastSurfParams()));
+
+        ImageFloat32 other = image.clone();
+        other.set(3, 3, -1);
+        Assert.assertFalse(key.equals(cache.createKey(other, params)));
+
+        params.getFastHessianController().setDetectThreshold(5);
+        Assert.assertFalse(key.equals(cache.createKey(image, params)));
+
+        key = cache.createKey(image, params);
+        params.setPrecision(DescriptorPrecision.INT8);
+        Assert.assertFalse(key.equals(cache.createKey(image, params)));
+    }
+}
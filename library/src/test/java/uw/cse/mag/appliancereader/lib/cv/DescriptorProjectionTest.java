@@ -0,0 +1,61 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Tests for {@link DescriptorProjection}.
+ */
+public class DescriptorProjectionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testProjectionPreservesDistancesInSubspace() throws Exception {
+        // Descriptors that only vary within a plane of a 6 dimensional space.
+        Random rand = new Random(678);
+        int size = 200, length = 6;
+        double[] u = {1, 2, 0, -1, 0, 1}, v = {0, 1, 1, 1, -2, 0};
+        double[] descriptors = new double[size * length];
+        for (int i = 0; i < size; i++) {
+            double a = rand.nextGaussian(), b = rand.nextGaussian() * 0.5;
+            for (int k = 0; k < length; k++)
+                descriptors[i * length + k] = 0.3 + a * u[k] + b * v[k];
+        }
+        PackedFeatures features = new PackedFeatures(length, descriptors, new double[size], new double[size],
+                new boolean[size]);
+
+        DescriptorProjection projection = DescriptorProjection.learn(Collections.singletonList(features), 2);
+        PackedFeatures projected = projection.project(features);
+        Assert.assertEquals(2, projected.getDescriptorLength());
+        for (int i = 1; i < size; i++) {
+            Assert.assertEquals(distance(features, 0, i), distance(projected, 0, i), 1e-8);
+        }
+        double[] variances = projection.getVariances();
+        Assert.assertTrue(variances[0] >= variances[1]);
+
+        File file = folder.newFile("projection.pca");
+        projection.write(file);
+        DescriptorProjection loaded = DescriptorProjection.read(file);
+        Assert.assertEquals(projection, loaded);
+        Assert.assertEquals(projection.getFingerprint(), loaded.getFingerprint());
+    }
+
+    private static double distance(PackedFeatures features, int a, int b) {
+        int length = features.getDescriptorLength();
+        double[] descriptors = features.getDescriptors();
+        double total = 0;
+        for (int k = 0; k < length; k++) {
+            double d = descriptors[a * length + k] - descriptors[b * length + k];
+            total += d * d;
+        }
+        return Math.sqrt(total);
+    }
+}
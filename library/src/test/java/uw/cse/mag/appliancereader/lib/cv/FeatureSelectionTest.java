@@ -0,0 +1,68 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for {@link FeatureSelection}.
+ */
+public class FeatureSelectionTest {
+
+    @Test
+    public void testSelectStrongest() {
+        double[] response = {3, 9, 1, 9, 7, 0, 5};
+        Assert.assertArrayEquals(new int[] {1, 3, 4}, FeatureSelection.selectStrongest(response, 7, 3));
+        Assert.assertArrayEquals(new int[] {1, 3, 4, 6, 0, 2, 5},
+                FeatureSelection.selectStrongest(response, 7, 10));
+    }
+
+    @Test
+    public void testSelectGridKeepsEveryCell() {
+        // Strong features crowd the left half, one weak feature is on the right.
+        double[] response = {10, 9, 8, 7, 1};
+        double[] x = {1, 2, 3, 4, 15};
+        double[] y = {1, 1, 1, 1, 1};
+        int[] selected = FeatureSelection.selectGrid(response, x, y, 5, 2, 20, 10, 1, 2);
+        Assert.assertArrayEquals(new int[] {0, 4}, selected);
+
+        selected = FeatureSelection.selectGrid(response, x, y, 5, 4, 20, 10, 1, 2);
+        Assert.assertArrayEquals(new int[] {0, 1, 2, 4}, selected);
+    }
+
+    @Test
+    public void testSelectSuppressedMatchesBruteForce() {
+        Random rand = new Random(345);
+        int size = 500, width = 640, height = 480;
+        double[] response = new double[size], x = new double[size], y = new double[size];
+        for (int i = 0; i < size; i++) {
+            // A dense strong cluster in a corner and weaker features everywhere else.  Responses are
+            // heavy tailed like detector responses.
+            boolean cluster = i < size / 2;
+            x[i] = rand.nextDouble() * (cluster ? 60 : width);
+            y[i] = rand.nextDouble() * (cluster ? 60 : height);
+            response[i] = cluster ? 1 / (0.05 + rand.nextDouble()) : rand.nextDouble();
+        }
+
+        double[] radius = new double[size];
+        for (int i = 0; i < size; i++) {
+            radius[i] = Double.MAX_VALUE;
+            for (int j = 0; j < size; j++) {
+                if (response[j] * FeatureSelection.ANMS_ROBUSTNESS <= response[i]) continue;
+                double dx = x[j] - x[i], dy = y[j] - y[i];
+                radius[i] = Math.min(radius[i], dx * dx + dy * dy);
+            }
+        }
+        int[] expected = FeatureSelection.selectStrongest(radius, size, 50);
+        int[] selected = FeatureSelection.selectSuppressed(response, x, y, size, 50, width, height);
+        Assert.assertArrayEquals(expected, selected);
+
+        int clustered = 0;
+        for (int index : selected) {
+            if (index < size / 2) clustered++;
+        }
+        Assert.assertTrue("Cluster kept " + clustered + " of " + Arrays.toString(selected), clustered < 10);
+    }
+}
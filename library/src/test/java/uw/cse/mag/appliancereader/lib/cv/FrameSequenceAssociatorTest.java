@@ -0,0 +1,43 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.HomographyParams;
+import uw.cse.mag.appliancereader.lib.cv.params.surf.FastSurfParams;
+
+/**
+ * Tests for {@link FrameSequenceAssociator}.
+ */
+public class FrameSequenceAssociatorTest {
+
+    @Test
+    public void testTracksShiftedFrames() {
+        HomographyCalculator calculator = new HomographyCalculator(new HomographyParams());
+        calculator.setReferenceImage(HomographyCalculatorTest.texture(1, 0));
+        calculator.setImageAssociator(new ImagePointAssociator(new FastSurfParams()));
+        FrameSequenceAssociator sequence = new FrameSequenceAssociator(calculator);
+
+        // The first frame is associated, the following ones are tracked.
+        Assert.assertTrue(sequence.process(HomographyCalculatorTest.texture(1, 2)));
+        Assert.assertEquals(2, translationX(sequence.getHomography()), 0.5);
+        for (int frame = 1; frame <= 4; frame++) {
+            int shift = 2 + 2 * frame;
+            Assert.assertFalse(sequence.process(HomographyCalculatorTest.texture(1, shift)));
+            Assert.assertEquals(frame, sequence.getFrameNumber());
+            Assert.assertNotNull(sequence.getHomography());
+            Assert.assertEquals(shift, translationX(sequence.getHomography()), 0.5);
+            Assert.assertTrue(sequence.getMatches().size() >= sequence.getMinTracks());
+        }
+
+        // Fewer tracks than the minimum take a new keyframe.
+        sequence.setMinTracks(sequence.getMatches().size() + 1);
+        Assert.assertTrue(sequence.process(HomographyCalculatorTest.texture(1, 12)));
+        Assert.assertTrue(sequence.isKeyframe());
+        Assert.assertEquals(12, translationX(sequence.getHomography()), 0.5);
+    }
+
+    private static double translationX(DenseMatrix64F H) {
+        return H.get(0, 2) / H.get(2, 2);
+    }
+}
@@ -0,0 +1,90 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.HomographyParams;
+import uw.cse.mag.appliancereader.lib.cv.params.surf.FastSurfParams;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link HomographyCalculator}.
+ */
+public class HomographyCalculatorTest {
+
+    @Test
+    public void testWarmStart() {
+        HomographyParams params = new HomographyParams();
+        params.setWarmStart(true);
+        HomographyCalculator calculator = new HomographyCalculator(params);
+        calculator.setReferenceImage(texture(1, 0));
+        calculator.setOtherImage(texture(1, 3));
+        calculator.setImageAssociator(new ImagePointAssociator(new FastSurfParams()));
+        Assert.assertNotNull(calculator.getHomography());
+        Assert.assertFalse(calculator.isWarmStarted());
+
+        // A slightly shifted frame fits the previous homography.
+        calculator.setOtherImage(texture(1, 2));
+        Assert.assertTrue(calculator.isWarmStarted());
+        Assert.assertEquals(2, translationX(calculator.getHomography()), 0.5);
+
+        // A new reference starts from scratch.
+        calculator.setReferenceImage(texture(1, 1));
+        Assert.assertFalse(calculator.isWarmStarted());
+        Assert.assertEquals(1, translationX(calculator.getHomography()), 0.5);
+
+        // An unrelated frame falls back to the robust estimator.
+        calculator.setOtherImage(texture(7, 0));
+        Assert.assertFalse(calculator.isWarmStarted());
+    }
+
+    @Test
+    public void testClearsHomographyOnFailure() {
+        HomographyParams params = new HomographyParams();
+        params.setWarmStart(true);
+        HomographyCalculator calculator = new HomographyCalculator(params);
+        final List<DenseMatrix64F> notified = new ArrayList<DenseMatrix64F>();
+        calculator.addListener(new HomographyCalculator.OnHomographyChangedListener() {
+            @Override
+            public void onHomographyChanged(DenseMatrix64F newHomography, DenseMatrix64F oldHomography) {
+                notified.add(newHomography);
+            }
+        });
+        calculator.setReferenceImage(texture(1, 0));
+        calculator.setOtherImage(texture(1, 3));
+        calculator.setImageAssociator(new ImagePointAssociator(new FastSurfParams()));
+        Assert.assertNotNull(calculator.getHomography());
+
+        // A frame without features has no matches, the previous homography must not survive.
+        calculator.setOtherImage(new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB));
+        Assert.assertNull(calculator.getHomography());
+        Assert.assertNull(calculator.getInliers());
+        Assert.assertFalse(calculator.isWarmStarted());
+        Assert.assertNull(notified.get(notified.size() - 1));
+    }
+
+    private static double translationX(DenseMatrix64F H) {
+        return H.get(0, 2) / H.get(2, 2);
+    }
+
+    /**
+     * @return Image of random ellipses, shifted right by dx pixels.
+     */
+    static BufferedImage texture(long seed, int dx) {
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        Random rand = new Random(seed);
+        for (int i = 0; i < 80; i++) {
+            g.setColor(new Color(rand.nextInt(0xffffff)));
+            g.fillOval(rand.nextInt(300) + dx, rand.nextInt(220), 5 + rand.nextInt(20), 5 + rand.nextInt(20));
+        }
+        g.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,166 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.core.DescriptorPrecision;
+import uw.cse.mag.appliancereader.lib.cv.params.core.FeatureDetectionParams;
+import uw.cse.mag.appliancereader.lib.cv.params.surf.FastSurfParams;
+import uw.cse.mag.appliancereader.lib.data.RectangularBoundary;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link ImagePointAssociator}.
+ */
+public class ImagePointAssociatorTest {
+
+    @Test
+    public void testConcurrentDescriptionMatchesSequential() {
+        BufferedImage reference = HomographyCalculatorTest.texture(1, 0);
+        BufferedImage other = HomographyCalculatorTest.texture(1, 3);
+        ImagePointAssociator sequential = new ImagePointAssociator(new FastSurfParams());
+        sequential.setImages(reference, other);
+
+        // Counts tasks before they run, the completed task count is only updated after the result is returned.
+        final AtomicInteger tasks = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                tasks.incrementAndGet();
+            }
+        };
+        try {
+            ImagePointAssociator concurrent = new ImagePointAssociator(new FastSurfParams());
+            concurrent.setExecutor(executor);
+            concurrent.setImages(reference, other);
+
+            // The worker described the reference image.
+            Assert.assertEquals(1, tasks.get());
+            assertSame(sequential.getReferenceImageFeatures().getPackedFeatures(),
+                    concurrent.getReferenceImageFeatures().getPackedFeatures());
+            assertSame(sequential.getOtherImageFeatures().getPackedFeatures(),
+                    concurrent.getOtherImageFeatures().getPackedFeatures());
+            Assert.assertEquals(sequential.getMatches().size(), concurrent.getMatches().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDownscaledPointsMapToFullResolution() {
+        BufferedImage image = upscale(HomographyCalculatorTest.texture(1, 0), 2);
+        ImagePointAssociator full = new ImagePointAssociator(new FastSurfParams());
+        full.setReferenceImage(image);
+        PackedFeatures expected = full.getReferenceImageFeatures().getPackedFeatures();
+
+        for (Downscale downscale : Downscale.values()) {
+            ImagePointAssociator scaled = new ImagePointAssociator(new FastSurfParams());
+            scaled.setProcessingResolution(image.getWidth() * image.getHeight() / 4, downscale);
+            scaled.setReferenceImage(image);
+            PackedFeatures found = scaled.getReferenceImageFeatures().getPackedFeatures();
+            Assert.assertTrue(found.size() > 20);
+
+            // Most features of the halved image are found again at full resolution within a pixel,
+            // without a systematic offset.
+            int close = 0;
+            double offsetX = 0, offsetY = 0;
+            for (int i = 0; i < found.size(); i++) {
+                double nearest = Double.MAX_VALUE, nearestX = 0, nearestY = 0;
+                for (int j = 0; j < expected.size(); j++) {
+                    double dx = found.getX()[i] - expected.getX()[j], dy = found.getY()[i] - expected.getY()[j];
+                    if (dx * dx + dy * dy < nearest) {
+                        nearest = dx * dx + dy * dy;
+                        nearestX = dx;
+                        nearestY = dy;
+                    }
+                }
+                if (nearest > 1) continue;
+                close++;
+                offsetX += nearestX;
+                offsetY += nearestY;
+            }
+            Assert.assertTrue(downscale.toString(), close > found.size() / 2);
+            Assert.assertEquals(downscale.toString(), 0, offsetX / close, 0.25);
+            Assert.assertEquals(downscale.toString(), 0, offsetY / close, 0.25);
+        }
+    }
+
+    @Test
+    public void testRegionsAreOffsetIntoTheImage() {
+        BufferedImage image = HomographyCalculatorTest.texture(1, 0);
+        RectangularBoundary region = new RectangularBoundary(100, 50, 150, 120);
+
+        // A region that sticks out of the image is clipped, its points are offset by the region origin.
+        ImagePointAssociator associator = new ImagePointAssociator(new FastSurfParams());
+        associator.setReferenceImage(image);
+        associator.setReferenceRegions(Arrays.asList(region, new RectangularBoundary(-40, 200, 20, 100)));
+        PackedFeatures found = associator.getReferenceImageFeatures().getPackedFeatures();
+
+        ImagePointAssociator cropped = new ImagePointAssociator(new FastSurfParams());
+        cropped.setReferenceImage(copy(image.getSubimage(region.getX(), region.getY(),
+                region.getWidth(), region.getHeight())));
+        PackedFeatures expected = cropped.getReferenceImageFeatures().getPackedFeatures();
+
+        Assert.assertTrue(expected.size() > 0);
+        Assert.assertEquals(expected.size(), found.size());
+        for (int i = 0; i < found.size(); i++) {
+            Assert.assertEquals(expected.getX()[i] + region.getX(), found.getX()[i], 1e-9);
+            Assert.assertEquals(expected.getY()[i] + region.getY(), found.getY()[i], 1e-9);
+        }
+        Assert.assertArrayEquals(expected.getDescriptors(), found.getDescriptors(), 1e-9);
+    }
+
+    @Test
+    public void testRegionsOutsideTheImageKeepThePrecision() {
+        FeatureDetectionParams params = new FastSurfParams();
+        params.setPrecision(DescriptorPrecision.INT8);
+        ImagePointAssociator associator = new ImagePointAssociator(params);
+        associator.setReferenceRegions(Arrays.asList(new RectangularBoundary(400, 300, 50, 50)));
+        associator.setReferenceImage(HomographyCalculatorTest.texture(1, 0));
+
+        PackedFeatures found = associator.getReferenceImageFeatures().getPackedFeatures();
+        Assert.assertEquals(0, found.size());
+        Assert.assertEquals(params.getDescriptorLength(), found.getDescriptorLength());
+        Assert.assertEquals(DescriptorPrecision.INT8, found.getPrecision());
+    }
+
+    /**
+     * @return Copy of the image that does not share its raster.
+     */
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = output.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return output;
+    }
+
+    /**
+     * @return Image scaled up by the argument factor.
+     */
+    private static BufferedImage upscale(BufferedImage image, int factor) {
+        BufferedImage output = new BufferedImage(image.getWidth() * factor, image.getHeight() * factor,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = output.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, output.getWidth(), output.getHeight(), null);
+        g.dispose();
+        return output;
+    }
+
+    private static void assertSame(PackedFeatures expected, PackedFeatures found) {
+        Assert.assertEquals(expected.size(), found.size());
+        Assert.assertTrue(expected.size() > 0);
+        Assert.assertArrayEquals(expected.getX(), found.getX(), 0);
+        Assert.assertArrayEquals(expected.getY(), found.getY(), 0);
+        Assert.assertArrayEquals(expected.getDescriptors(), found.getDescriptors(), 0);
+    }
+}
@@ -0,0 +1,54 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.struct.image.ImageFloat32;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ImagePyramid}.
+ */
+public class ImagePyramidTest {
+
+    @Test
+    public void testGetLevels() {
+        Assert.assertEquals(0, ImagePyramid.getLevels(640, 480, 640 * 480));
+        Assert.assertEquals(1, ImagePyramid.getLevels(640, 480, 640 * 480 - 1));
+        Assert.assertEquals(1, ImagePyramid.getLevels(640, 480, 320 * 240));
+        Assert.assertEquals(2, ImagePyramid.getLevels(640, 480, 320 * 240 - 1));
+        // Never halved below 2 pixels.
+        Assert.assertEquals(1, ImagePyramid.getLevels(4, 1000, 1));
+        Assert.assertEquals(0, ImagePyramid.getLevels(3, 1000, 1));
+    }
+
+    @Test
+    public void testHalvedCentroidMapsBack() {
+        // A blob centered between pixels stays at the same place after mapping back with (x + 0.5) * 2^L - 0.5.
+        double cx = 101.3, cy = 77.8;
+        ImageFloat32 image = new ImageFloat32(256, 192);
+        for (int y = 0; y < image.height; y++)
+            for (int x = 0; x < image.width; x++)
+                image.set(x, y, (float) Math.exp(-((x - cx) * (x - cx) + (y - cy) * (y - cy)) / 50.0));
+
+        for (Downscale method : Downscale.values()) {
+            ImageFloat32 halved = image;
+            for (int level = 1; level <= 3; level++) {
+                halved = ImagePyramid.halve(halved, method);
+                Assert.assertEquals(image.width >> level, halved.width);
+                Assert.assertEquals(image.height >> level, halved.height);
+
+                double total = 0, sx = 0, sy = 0;
+                for (int y = 0; y < halved.height; y++) {
+                    for (int x = 0; x < halved.width; x++) {
+                        double v = halved.get(x, y);
+                        total += v;
+                        sx += v * x;
+                        sy += v * y;
+                    }
+                }
+                double scale = 1 << level;
+                Assert.assertEquals(method + " " + level, cx, (sx / total + 0.5) * scale - 0.5, 0.1);
+                Assert.assertEquals(method + " " + level, cy, (sy / total + 0.5) * scale - 0.5, 0.1);
+            }
+        }
+    }
+}
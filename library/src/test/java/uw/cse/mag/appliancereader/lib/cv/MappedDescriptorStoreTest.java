@@ -0,0 +1,71 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * Tests for {@link MappedDescriptorStore}.
+ */
+public class MappedDescriptorStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PackedFeatures createFeatures(int size, int length, double seed) {
+        double[] descriptors = new double[size * length];
+        double[] x = new double[size];
+        double[] y = new double[size];
+        boolean[] laplacianPositive = new boolean[size];
+        for (int i = 0; i < descriptors.length; i++)
+            descriptors[i] = seed + i * 0.25;
+        for (int i = 0; i < size; i++) {
+            x[i] = seed + i;
+            y[i] = seed - i;
+            laplacianPositive[i] = i % 2 == 0;
+        }
+        return new PackedFeatures(length, descriptors, x, y, laplacianPositive);
+    }
+
+    @Test
+    public void testWriteAndMap() throws Exception {
+        File file = new File(folder.getRoot(), "store.map");
+        PackedFeatures first = createFeatures(3, 5, 1);
+        PackedFeatures second = createFeatures(2, 5, -7);
+
+        MappedDescriptorStore.Writer writer = new MappedDescriptorStore.Writer(file, "fingerprint");
+        writer.add("first", first);
+        writer.add("empty", createFeatures(0, 5, 0));
+        writer.add("second", second);
+        writer.close();
+
+        MappedDescriptorStore store = MappedDescriptorStore.open(file);
+        try {
+            Assert.assertEquals("fingerprint", store.getFingerprint());
+            Assert.assertEquals(3, store.size());
+            Assert.assertEquals(5, store.getDescriptorLength());
+            Assert.assertNull(store.map("missing"));
+            Assert.assertEquals(0, store.map("empty").size());
+
+            PackedFeatures[] expected = {first, second};
+            String[] names = {"first", "second"};
+            for (int k = 0; k < expected.length; k++) {
+                MappedFeatures mapped = store.map(names[k]);
+                Assert.assertEquals(expected[k].size(), mapped.size());
+                double[] descriptors = expected[k].getDescriptors();
+                for (int i = 0; i < descriptors.length; i++)
+                    Assert.assertEquals(descriptors[i], mapped.getDescriptors().get(i), 0);
+                for (int i = 0; i < mapped.size(); i++) {
+                    Assert.assertEquals(expected[k].getX()[i], mapped.getX(i), 0);
+                    Assert.assertEquals(expected[k].getY()[i], mapped.getY(i), 0);
+                    Assert.assertEquals(expected[k].getLaplacianPositive()[i], mapped.isLaplacianPositive(i));
+                }
+            }
+        } finally {
+            store.close();
+        }
+    }
+}
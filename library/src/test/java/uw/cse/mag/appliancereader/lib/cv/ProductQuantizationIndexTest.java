@@ -0,0 +1,93 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link ProductQuantizationIndex}.
+ */
+public class ProductQuantizationIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int LENGTH = 16;
+
+    @Test
+    public void testFindsPerturbedReferences() throws Exception {
+        Random rand = new Random(234);
+        List<PackedFeatures> references = new ArrayList<PackedFeatures>();
+        for (int r = 0; r < 3; r++)
+            references.add(createFeatures(rand, 300, r * 1000));
+        // An empty reference must not shift the numbering of the following ones.
+        references.add(1, createFeatures(rand, 0, 0));
+
+        ProductQuantizationIndex index = ProductQuantizationIndex.train(references, 4, 8, 64, 99);
+        for (PackedFeatures features : references)
+            index.add(features);
+        Assert.assertEquals(4, index.getReferenceCount());
+        Assert.assertEquals(900, index.size());
+
+        // Queries are slightly perturbed descriptors of the last reference.
+        PackedFeatures target = references.get(3);
+        double[] descriptors = target.getDescriptors().clone();
+        for (int i = 0; i < descriptors.length; i++)
+            descriptors[i] += rand.nextGaussian() * 0.01;
+        PackedFeatures queries = new PackedFeatures(LENGTH, descriptors, target.getX(), target.getY(),
+                target.getLaplacianPositive());
+
+        index.setProbes(4);
+        FastQueue<AssociatedIndex> matches = index.associate(queries, Double.MAX_VALUE, 1, false, true);
+        Assert.assertEquals(queries.size(), matches.size);
+        int correct = 0;
+        for (int i = 0; i < matches.size; i++) {
+            AssociatedIndex a = matches.get(i);
+            Assert.assertEquals(3, index.getReference(a.src));
+            if (index.getX(a.src) == (float) target.getX()[a.dst]) correct++;
+        }
+        Assert.assertTrue("Only " + correct + " correct", correct > 0.9 * matches.size);
+
+        // Backwards validation never matches an id twice.
+        matches = index.associate(queries, Double.MAX_VALUE, 1, true, true);
+        boolean[] used = new boolean[index.size()];
+        for (int i = 0; i < matches.size; i++) {
+            Assert.assertFalse(used[matches.get(i).src]);
+            used[matches.get(i).src] = true;
+        }
+
+        File file = folder.newFile("index.pq");
+        index.write(file);
+        ProductQuantizationIndex loaded = ProductQuantizationIndex.read(file);
+        loaded.setProbes(4);
+        FastQueue<AssociatedIndex> loadedMatches = loaded.associate(queries, Double.MAX_VALUE, 1, true, true);
+        Assert.assertEquals(matches.size, loadedMatches.size);
+        for (int i = 0; i < matches.size; i++) {
+            Assert.assertEquals(matches.get(i).src, loadedMatches.get(i).src);
+            Assert.assertEquals(matches.get(i).fitScore, loadedMatches.get(i).fitScore, 0);
+        }
+    }
+
+    /**
+     * Creates features around a few random cluster centers with distinct x coordinates.
+     */
+    private static PackedFeatures createFeatures(Random rand, int size, int firstX) {
+        double[] descriptors = new double[size * LENGTH];
+        double[] x = new double[size], y = new double[size];
+        for (int i = 0; i < size; i++) {
+            for (int k = 0; k < LENGTH; k++)
+                descriptors[i * LENGTH + k] = rand.nextGaussian();
+            x[i] = firstX + i;
+            y[i] = i * 0.5;
+        }
+        return new PackedFeatures(LENGTH, descriptors, x, y, new boolean[size]);
+    }
+}
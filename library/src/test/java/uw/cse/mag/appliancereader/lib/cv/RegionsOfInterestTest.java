@@ -0,0 +1,57 @@
+package uw.cse.mag.appliancereader.lib.cv;
+
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.data.RectangularBoundary;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link RegionsOfInterest}.
+ */
+public class RegionsOfInterestTest {
+
+    @Test
+    public void testClipAndMerge() {
+        List<RectangularBoundary> clipped = RegionsOfInterest.clipAndMerge(Arrays.asList(
+                new RectangularBoundary(-10, -20, 40, 50),   // Clipped to the top left corner.
+                new RectangularBoundary(300, 200, 40, 60),   // Clipped to the bottom right corner.
+                new RectangularBoundary(400, 10, 20, 20),    // Outside the image.
+                new RectangularBoundary(100, 100, 0, 10),    // Empty.
+                new RectangularBoundary(100, 100, 30, 30),   // Merged with the next two.
+                new RectangularBoundary(120, 120, 30, 30),
+                new RectangularBoundary(140, 90, 20, 35),
+                new RectangularBoundary(160, 100, 10, 10)),  // Touches, but does not overlap.
+                320, 240);
+
+        Assert.assertEquals(4, clipped.size());
+        Assert.assertEquals(new RectangularBoundary(0, 0, 30, 30), clipped.get(0));
+        Assert.assertEquals(new RectangularBoundary(300, 200, 20, 40), clipped.get(1));
+        Assert.assertEquals(new RectangularBoundary(100, 90, 60, 60), clipped.get(2));
+        Assert.assertEquals(new RectangularBoundary(160, 100, 10, 10), clipped.get(3));
+
+        Assert.assertTrue(RegionsOfInterest.clipAndMerge(Arrays.asList(
+                new RectangularBoundary(-50, 0, 50, 10)), 320, 240).isEmpty());
+    }
+
+    @Test
+    public void testProject() {
+        RectangularBoundary region = new RectangularBoundary(10, 20, 30, 40);
+
+        // Translation with padding.
+        DenseMatrix64F H = new DenseMatrix64F(3, 3, true, 1, 0, 5.5, 0, 1, -3, 0, 0, 1);
+        List<RectangularBoundary> projected = RegionsOfInterest.project(Arrays.asList(region), H, 2);
+        Assert.assertEquals(1, projected.size());
+        Assert.assertEquals(new RectangularBoundary(13, 15, 35, 44), projected.get(0));
+
+        // Scaled homogeneous coordinates project the same.
+        H = new DenseMatrix64F(3, 3, true, 2, 0, 11, 0, 2, -6, 0, 0, 2);
+        Assert.assertEquals(projected, RegionsOfInterest.project(Arrays.asList(region), H, 2));
+
+        // Regions behind the camera are dropped.
+        H = new DenseMatrix64F(3, 3, true, 1, 0, 0, 0, 1, 0, 0, 0, -1);
+        Assert.assertTrue(RegionsOfInterest.project(Arrays.asList(region), H, 2).isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+package uw.cse.mag.appliancereader.lib.cv.associate;
+
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.core.Scorer;
+
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+/**
+ * Tests for {@link AssociatePacked}.
+ */
+public class AssociatePackedTest {
+
+    private static final int LENGTH = 8;
+
+    @Test
+    public void testWindowedSeparatesRepeatedTexture() {
+        // A few descriptors repeated on a coarse grid, like the buttons of an appliance.
+        Random rand = new Random(234);
+        int size = 40, patterns = 4;
+        double[][] base = new double[patterns][LENGTH];
+        for (double[] pattern : base) {
+            for (int k = 0; k < LENGTH; k++)
+                pattern[k] = rand.nextGaussian();
+        }
+        double[] src = new double[size * LENGTH], dst = new double[size * LENGTH];
+        double[] srcX = new double[size], srcY = new double[size], dstX = new double[size], dstY = new double[size];
+        for (int i = 0; i < size; i++) {
+            for (int k = 0; k < LENGTH; k++) {
+                src[i * LENGTH + k] = base[i % patterns][k] + rand.nextGaussian() * 0.01;
+                dst[i * LENGTH + k] = base[i % patterns][k] + rand.nextGaussian() * 0.01;
+            }
+            srcX[i] = (i % 8) * 40;
+            srcY[i] = (i / 8) * 40;
+            dstX[i] = srcX[i] + 5 + rand.nextGaussian() * 0.5;
+            dstY[i] = srcY[i] - 3 + rand.nextGaussian() * 0.5;
+        }
+        DenseMatrix64F translation = new DenseMatrix64F(3, 3, true, 1, 0, 5, 0, 1, -3, 0, 0, 1);
+
+        AssociatePacked associater = new AssociatePacked(Scorer.EUCLIDEAN, false, Double.MAX_VALUE, true);
+        associater.setRatio(0.8);
+        FastQueue<AssociatedIndex> matches = associater.associate(DoubleBuffer.wrap(src), size,
+                DoubleBuffer.wrap(dst), size, LENGTH);
+        Assert.assertTrue("Exhaustive association kept " + matches.size, matches.size < size / 4);
+
+        matches = associater.associateWindowed(DoubleBuffer.wrap(src), srcX, srcY, size,
+                DoubleBuffer.wrap(dst), dstX, dstY, size, LENGTH, translation, 8);
+        Assert.assertEquals(size, matches.size);
+        for (int i = 0; i < matches.size; i++)
+            Assert.assertEquals(matches.get(i).src, matches.get(i).dst);
+
+        // Without the homography every feature is outside the window of its match.
+        matches = associater.associateWindowed(DoubleBuffer.wrap(src), srcX, srcY, size,
+                DoubleBuffer.wrap(dst), dstX, dstY, size, LENGTH, new DenseMatrix64F(3, 3, true,
+                        1, 0, 20, 0, 1, 20, 0, 0, 1), 8);
+        Assert.assertEquals(0, matches.size);
+    }
+
+    @Test
+    public void testBackwardsValidationMatchesBruteForce() {
+        // Few distinct small integer values, so equal scores are common.
+        Random rand = new Random(345);
+        int numSrc = 60, numDst = 40, length = 3;
+        double[] src = new double[numSrc * length], dst = new double[numDst * length];
+        for (int k = 0; k < src.length; k++)
+            src[k] = rand.nextInt(3);
+        for (int k = 0; k < dst.length; k++)
+            dst[k] = rand.nextInt(3);
+
+        AssociatePacked associater = new AssociatePacked(Scorer.SAD, false, 3, true);
+        FastQueue<AssociatedIndex> matches = associater.associate(DoubleBuffer.wrap(src), numSrc,
+                DoubleBuffer.wrap(dst), numDst, length);
+
+        int expected = 0;
+        for (int i = 0; i < numSrc; i++) {
+            int best = -1;
+            double bestScore = Double.MAX_VALUE;
+            for (int j = 0; j < numDst; j++) {
+                double score = sad(src, i, dst, j, length);
+                if (score < bestScore) {
+                    bestScore = score;
+                    best = j;
+                }
+            }
+            if (!(bestScore < 3)) continue;
+            boolean valid = true;
+            for (int k = 0; k < numSrc; k++) {
+                if (k != i && sad(src, k, dst, best, length) <= bestScore)
+                    valid = false;
+            }
+            if (!valid) continue;
+            AssociatedIndex match = matches.get(expected++);
+            Assert.assertEquals(i, match.src);
+            Assert.assertEquals(best, match.dst);
+            Assert.assertEquals(bestScore, match.fitScore, 0);
+        }
+        Assert.assertTrue(expected > 0);
+        Assert.assertEquals(expected, matches.size);
+    }
+
+    private static double sad(double[] a, int i, double[] b, int j, int length) {
+        double total = 0;
+        for (int k = 0; k < length; k++)
+            total += Math.abs(a[i * length + k] - b[j * length + k]);
+        return total;
+    }
+}
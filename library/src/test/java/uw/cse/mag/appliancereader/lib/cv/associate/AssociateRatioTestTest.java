@@ -0,0 +1,78 @@
+package uw.cse.mag.appliancereader.lib.cv.associate;
+
+import boofcv.abst.feature.associate.ScoreAssociateEuclideanSq_F64;
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+import boofcv.struct.feature.TupleDesc_F64;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AssociateRatioTest}.
+ */
+public class AssociateRatioTestTest {
+
+    @Test
+    public void testRejectsAmbiguousMatches() throws Exception {
+        // Source 0 has one clear neighbor, source 1 sits between two equal neighbors.
+        FastQueue<TupleDesc_F64> src = createQueue(new double[][] {{0, 0}, {10, 0}});
+        FastQueue<TupleDesc_F64> dst = createQueue(new double[][] {{0.1, 0}, {10, 1}, {10, -1}});
+
+        AssociateRatioTest<TupleDesc_F64> alg = new AssociateRatioTest<TupleDesc_F64>(
+                new ScoreAssociateEuclideanSq_F64(), 0.64, Double.MAX_VALUE, false);
+        alg.setSource(src);
+        alg.setDestination(dst);
+        alg.associate();
+
+        FastQueue<AssociatedIndex> matches = alg.getMatches();
+        Assert.assertEquals(1, matches.size());
+        Assert.assertEquals(0, matches.get(0).src);
+        Assert.assertEquals(0, matches.get(0).dst);
+        Assert.assertEquals(1, alg.getUnassociatedSource().size);
+    }
+
+    @Test
+    public void testBackwardsValidation() throws Exception {
+        // Both sources prefer destination 0, but only source 1 is its best fit.
+        FastQueue<TupleDesc_F64> src = createQueue(new double[][] {{0, 0}, {1, 0}});
+        FastQueue<TupleDesc_F64> dst = createQueue(new double[][] {{0.9, 0}, {100, 0}});
+
+        AssociateRatioTest<TupleDesc_F64> alg = new AssociateRatioTest<TupleDesc_F64>(
+                new ScoreAssociateEuclideanSq_F64(), 1.0, Double.MAX_VALUE, true);
+        alg.setSource(src);
+        alg.setDestination(dst);
+        alg.associate();
+
+        Assert.assertEquals(1, alg.getMatches().size());
+        Assert.assertEquals(1, alg.getMatches().get(0).src);
+    }
+
+    @Test
+    public void testMaxDistanceIsExclusive() throws Exception {
+        // The only match scores exactly the maximum distance, like greedy association it is rejected.
+        FastQueue<TupleDesc_F64> src = createQueue(new double[][] {{0, 0}});
+        FastQueue<TupleDesc_F64> dst = createQueue(new double[][] {{1, 0}});
+
+        ScoreAssociateEuclideanSq_F64 score = new ScoreAssociateEuclideanSq_F64();
+        AssociateRatioTest<TupleDesc_F64> alg = new AssociateRatioTest<TupleDesc_F64>(score, 1.0, 1.0, false);
+        alg.setSource(src);
+        alg.setDestination(dst);
+        alg.associate();
+        Assert.assertEquals(0, alg.getMatches().size());
+
+        ScoreTable table = ScoreTable.compute(score, src, dst);
+        Assert.assertEquals(0, table.selectRatio(1.0, 1.0, false).size());
+        Assert.assertEquals(0, table.selectGreedy(1.0, false).size());
+        Assert.assertEquals(1, table.selectRatio(1.0, Math.nextUp(1.0), false).size());
+    }
+
+    private static FastQueue<TupleDesc_F64> createQueue(double[][] values) {
+        FastQueue<TupleDesc_F64> queue = new FastQueue<TupleDesc_F64>(values.length, TupleDesc_F64.class, false);
+        for (double[] value : values) {
+            TupleDesc_F64 desc = new TupleDesc_F64(value.length);
+            desc.set(value);
+            queue.add(desc);
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,81 @@
+package uw.cse.mag.appliancereader.lib.cv.associate;
+
+import boofcv.abst.feature.associate.AssociateDescription;
+import boofcv.abst.feature.associate.ScoreAssociateHamming_B;
+import boofcv.factory.feature.associate.FactoryAssociation;
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+import boofcv.struct.feature.TupleDesc_B;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.BinaryFeatures;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link HammingScoreKernel}.
+ */
+public class HammingScoreKernelTest {
+
+    @Test
+    public void testDistanceMatchesBoofcv() throws Exception {
+        Random rand = new Random(567);
+        ScoreAssociateHamming_B score = new ScoreAssociateHamming_B();
+        for (int numBits : new int[] {32, 96, 256, 500}) {
+            TupleDesc_B a = createRandom(rand, numBits), b = createRandom(rand, numBits);
+            int words = BinaryFeatures.getWords(numBits);
+            long[] packedA = new long[words], packedB = new long[words];
+            BinaryFeatures.pack(a, packedA, 0);
+            BinaryFeatures.pack(b, packedB, 0);
+            Assert.assertEquals(score.score(a, b), HammingScoreKernel.distance(packedA, 0, packedB, 0, words), 0);
+        }
+    }
+
+    @Test
+    public void testScoreMatchesGreedyAssociation() throws Exception {
+        // Few bits produce many ties.
+        Random rand = new Random(765);
+        int numBits = 8, numSrc = 60, numDst = 50;
+        FastQueue<TupleDesc_B> src = new FastQueue<TupleDesc_B>(numSrc, TupleDesc_B.class, false);
+        FastQueue<TupleDesc_B> dst = new FastQueue<TupleDesc_B>(numDst, TupleDesc_B.class, false);
+        long[] packedSrc = new long[numSrc], packedDst = new long[numDst];
+        for (int i = 0; i < numSrc; i++) {
+            src.add(createRandom(rand, numBits));
+            BinaryFeatures.pack(src.get(i), packedSrc, i);
+        }
+        for (int i = 0; i < numDst; i++) {
+            dst.add(createRandom(rand, numBits));
+            BinaryFeatures.pack(dst.get(i), packedDst, i);
+        }
+        ScoreTable table = HammingScoreKernel.score(packedSrc, numSrc, packedDst, numDst, 1);
+
+        for (double maxDistance : new double[] {Double.MAX_VALUE, 3, 1}) {
+            for (boolean backwards : new boolean[] {false, true}) {
+                AssociateDescription<TupleDesc_B> greedy =
+                        FactoryAssociation.greedy(new ScoreAssociateHamming_B(), maxDistance, backwards);
+                greedy.setSource(src);
+                greedy.setDestination(dst);
+                greedy.associate();
+                FastQueue<AssociatedIndex> expected = greedy.getMatches();
+                FastQueue<AssociatedIndex> found = table.selectGreedy(maxDistance, backwards);
+                Assert.assertEquals(expected.size(), found.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    Assert.assertEquals(expected.get(i).src, found.get(i).src);
+                    Assert.assertEquals(expected.get(i).dst, found.get(i).dst);
+                    Assert.assertEquals(expected.get(i).fitScore, found.get(i).fitScore, 0);
+                }
+            }
+        }
+    }
+
+    private static TupleDesc_B createRandom(Random rand, int numBits) {
+        TupleDesc_B desc = new TupleDesc_B(numBits);
+        for (int i = 0; i < desc.data.length; i++)
+            desc.data[i] = rand.nextInt();
+        // Bits past the end of the descriptor are always 0.
+        int extra = desc.data.length * 32 - numBits;
+        if (extra > 0)
+            desc.data[desc.data.length - 1] &= -1 >>> extra;
+        return desc;
+    }
+}
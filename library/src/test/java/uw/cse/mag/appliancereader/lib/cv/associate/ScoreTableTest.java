@@ -0,0 +1,165 @@
+package uw.cse.mag.appliancereader.lib.cv.associate;
+
+import boofcv.abst.feature.associate.AssociateDescription;
+import boofcv.abst.feature.associate.ScoreAssociateEuclideanSq_F64;
+import boofcv.abst.feature.associate.ScoreAssociateEuclidean_F64;
+import boofcv.abst.feature.associate.ScoreAssociation;
+import boofcv.factory.feature.associate.FactoryAssociation;
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+import boofcv.struct.feature.TupleDesc_F64;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests for {@link ScoreTable}.
+ */
+public class ScoreTableTest {
+
+    private static final double[] MAX_DISTANCES = {Double.MAX_VALUE, 20, 5, 1};
+
+    @Test
+    public void testSelectGreedyMatchesGreedyAssociation() throws Exception {
+        // Small integer descriptors produce many ties.
+        Random rand = new Random(234);
+        FastQueue<TupleDesc_F64> src = createRandom(rand, 60);
+        FastQueue<TupleDesc_F64> dst = createRandom(rand, 50);
+        ScoreAssociateEuclideanSq_F64 score = new ScoreAssociateEuclideanSq_F64();
+        ScoreTable table = ScoreTable.compute(score, src, dst);
+
+        for (double maxDistance : MAX_DISTANCES) {
+            for (boolean backwards : new boolean[] {false, true}) {
+                AssociateDescription<TupleDesc_F64> greedy =
+                        FactoryAssociation.greedy(score, maxDistance, backwards);
+                greedy.setSource(src);
+                greedy.setDestination(dst);
+                greedy.associate();
+                assertSame(greedy.getMatches(), table.selectGreedy(maxDistance, backwards));
+            }
+        }
+    }
+
+    @Test
+    public void testSelectRatioMatchesRatioTest() throws Exception {
+        Random rand = new Random(432);
+        FastQueue<TupleDesc_F64> src = createRandom(rand, 40);
+        FastQueue<TupleDesc_F64> dst = createRandom(rand, 70);
+        ScoreAssociateEuclideanSq_F64 score = new ScoreAssociateEuclideanSq_F64();
+        ScoreTable table = ScoreTable.compute(score, src, dst);
+
+        for (double ratio : new double[] {1.0, 0.64, 0.25}) {
+            for (double maxDistance : MAX_DISTANCES) {
+                for (boolean backwards : new boolean[] {false, true}) {
+                    AssociateRatioTest<TupleDesc_F64> alg =
+                            new AssociateRatioTest<TupleDesc_F64>(score, ratio, maxDistance, backwards);
+                    alg.setSource(src);
+                    alg.setDestination(dst);
+                    alg.associate();
+                    assertSame(alg.getMatches(), table.selectRatio(ratio, maxDistance, backwards));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEuclideanKernelMatchesCompute() throws Exception {
+        // Enough rows and columns to split into several blocks and tiles.
+        Random rand = new Random(345);
+        int length = 16, numSrc = 300, numDst = 200;
+        double[] src = createPacked(rand, numSrc, length), dst = createPacked(rand, numDst, length);
+        FastQueue<TupleDesc_F64> srcQueue = toQueue(src, numSrc, length);
+        FastQueue<TupleDesc_F64> dstQueue = toQueue(dst, numDst, length);
+        EuclideanScoreKernel kernel = new EuclideanScoreKernel(new ForkJoinPool(4));
+
+        for (boolean squared : new boolean[] {true, false}) {
+            ScoreAssociation<TupleDesc_F64> score = squared ?
+                    new ScoreAssociateEuclideanSq_F64() : new ScoreAssociateEuclidean_F64();
+            ScoreTable expected = ScoreTable.compute(score, srcQueue, dstQueue);
+            ScoreTable found = kernel.score(src, numSrc, dst, numDst, length, squared);
+            for (boolean backwards : new boolean[] {false, true}) {
+                assertSame(expected.selectGreedy(Double.MAX_VALUE, backwards),
+                        found.selectGreedy(Double.MAX_VALUE, backwards), 1e-9);
+                assertSame(expected.selectRatio(0.8, Double.MAX_VALUE, backwards),
+                        found.selectRatio(0.8, Double.MAX_VALUE, backwards), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testEuclideanKernelOnQuantizedDescriptors() throws Exception {
+        Random rand = new Random(456);
+        int length = 16, numSrc = 100, numDst = 80;
+        double[] src = createPacked(rand, numSrc, length), dst = createPacked(rand, numDst, length);
+        EuclideanScoreKernel kernel = new EuclideanScoreKernel(new ForkJoinPool(2));
+
+        float[] srcFloats = new float[src.length], dstFloats = new float[dst.length];
+        double[] srcRounded = new double[src.length], dstRounded = new double[dst.length];
+        for (int i = 0; i < src.length; i++)
+            srcRounded[i] = srcFloats[i] = (float) src[i];
+        for (int i = 0; i < dst.length; i++)
+            dstRounded[i] = dstFloats[i] = (float) dst[i];
+        assertSame(kernel.score(srcRounded, numSrc, dstRounded, numDst, length, true).selectGreedy(Double.MAX_VALUE, true),
+                kernel.score(srcFloats, numSrc, dstFloats, numDst, length, true).selectGreedy(Double.MAX_VALUE, true), 1e-4);
+
+        // Codes with a scale per dimension score like the restored descriptors.
+        double[] scales = new double[length];
+        for (int k = 0; k < length; k++)
+            scales[k] = (k + 1) / 127.0;
+        byte[] srcCodes = new byte[src.length], dstCodes = new byte[dst.length];
+        for (int i = 0; i < src.length; i++) {
+            srcCodes[i] = (byte) (rand.nextInt(255) - 127);
+            srcRounded[i] = srcCodes[i] * scales[i % length];
+        }
+        for (int i = 0; i < dst.length; i++) {
+            dstCodes[i] = (byte) (rand.nextInt(255) - 127);
+            dstRounded[i] = dstCodes[i] * scales[i % length];
+        }
+        assertSame(kernel.score(srcRounded, numSrc, dstRounded, numDst, length, false).selectRatio(0.9, Double.MAX_VALUE, true),
+                kernel.score(srcCodes, numSrc, dstCodes, numDst, scales, false).selectRatio(0.9, Double.MAX_VALUE, true), 1e-9);
+    }
+
+    private static void assertSame(FastQueue<AssociatedIndex> expected, FastQueue<AssociatedIndex> found) {
+        assertSame(expected, found, 0);
+    }
+
+    private static void assertSame(FastQueue<AssociatedIndex> expected, FastQueue<AssociatedIndex> found,
+                                   double tolerance) {
+        Assert.assertEquals(expected.size(), found.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).src, found.get(i).src);
+            Assert.assertEquals(expected.get(i).dst, found.get(i).dst);
+            Assert.assertEquals(expected.get(i).fitScore, found.get(i).fitScore, tolerance);
+        }
+    }
+
+    private static double[] createPacked(Random rand, int count, int length) {
+        double[] packed = new double[count * length];
+        for (int i = 0; i < packed.length; i++)
+            packed[i] = rand.nextDouble();
+        return packed;
+    }
+
+    private static FastQueue<TupleDesc_F64> toQueue(double[] packed, int count, int length) {
+        FastQueue<TupleDesc_F64> queue = new FastQueue<TupleDesc_F64>(count, TupleDesc_F64.class, false);
+        for (int i = 0; i < count; i++) {
+            TupleDesc_F64 desc = new TupleDesc_F64(length);
+            System.arraycopy(packed, i * length, desc.value, 0, length);
+            queue.add(desc);
+        }
+        return queue;
+    }
+
+    private static FastQueue<TupleDesc_F64> createRandom(Random rand, int count) {
+        FastQueue<TupleDesc_F64> queue = new FastQueue<TupleDesc_F64>(count, TupleDesc_F64.class, false);
+        for (int i = 0; i < count; i++) {
+            TupleDesc_F64 desc = new TupleDesc_F64(3);
+            for (int j = 0; j < 3; j++)
+                desc.value[j] = rand.nextInt(4);
+            queue.add(desc);
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,97 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import boofcv.abst.geo.fitting.GenerateEpipolarMatrix;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.struct.geo.AssociatedPair;
+import org.ddogleg.fitting.modelset.ModelGenerator;
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.ErrorMetric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link AdaptiveRansac}.
+ */
+public class AdaptiveRansacTest {
+
+    @Test
+    public void testRequiredIterations() {
+        Assert.assertEquals(72, AdaptiveRansac.requiredIterations(0.5, 4, 0.99));
+        Assert.assertEquals(1, AdaptiveRansac.requiredIterations(1, 4, 0.99));
+        Assert.assertEquals(Integer.MAX_VALUE, AdaptiveRansac.requiredIterations(0, 4, 0.99));
+        Assert.assertEquals(Integer.MAX_VALUE, AdaptiveRansac.requiredIterations(0.5, 4, 1));
+    }
+
+    @Test
+    public void testStopsEarlyOnEasyData() {
+        List<AssociatedPair> pairs = createPairs(new Random(234), 200, 0.1);
+
+        CountingGenerator generator = new CountingGenerator();
+        AdaptiveRansac<DenseMatrix64F, AssociatedPair> ransac = new AdaptiveRansac<DenseMatrix64F, AssociatedPair>(
+                123, generator, ErrorMetric.RESIDUAL_SAMPSON.getMetric(), 1000, 1.0, 0.99);
+        Assert.assertTrue(ransac.process(pairs));
+        Assert.assertTrue("Took " + generator.count + " samples", generator.count < 50);
+        Assert.assertTrue(ransac.getMatchSet().size() > 150);
+
+        // The cap is restored for the next call.
+        generator.count = 0;
+        Assert.assertTrue(ransac.process(createPairs(new Random(345), 200, 0.9)));
+        Assert.assertTrue(generator.count > 50);
+
+        // Full confidence always runs the maximum.
+        generator.count = 0;
+        ransac = new AdaptiveRansac<DenseMatrix64F, AssociatedPair>(123, generator,
+                ErrorMetric.RESIDUAL_SAMPSON.getMetric(), 300, 1.0, 1);
+        Assert.assertTrue(ransac.process(pairs));
+        Assert.assertEquals(300, generator.count);
+    }
+
+    /**
+     * Creates pairs related by a homography with a fraction of outliers at random locations.
+     */
+    static List<AssociatedPair> createPairs(Random rand, int size, double outlierRatio) {
+        List<AssociatedPair> pairs = new ArrayList<AssociatedPair>(size);
+        for (int i = 0; i < size; i++) {
+            double x = rand.nextDouble() * 640, y = rand.nextDouble() * 480;
+            if (rand.nextDouble() < outlierRatio) {
+                pairs.add(new AssociatedPair(x, y, rand.nextDouble() * 640, rand.nextDouble() * 480));
+            } else {
+                double w = 0.0002 * x + 0.0001 * y + 1;
+                double x2 = (0.9 * x + 0.1 * y + 20) / w + rand.nextGaussian() * 0.2;
+                double y2 = (-0.05 * x + 1.1 * y - 10) / w + rand.nextGaussian() * 0.2;
+                pairs.add(new AssociatedPair(x, y, x2, y2));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Homography generator that counts its hypotheses.
+     */
+    private static class CountingGenerator implements ModelGenerator<DenseMatrix64F, AssociatedPair> {
+
+        private final GenerateEpipolarMatrix generator =
+                new GenerateEpipolarMatrix(FactoryMultiView.computeHomography(true));
+        private int count;
+
+        @Override
+        public DenseMatrix64F createModelInstance() {
+            return generator.createModelInstance();
+        }
+
+        @Override
+        public boolean generate(List<AssociatedPair> dataSet, DenseMatrix64F model) {
+            count++;
+            return generator.generate(dataSet, model);
+        }
+
+        @Override
+        public int getMinimumPoints() {
+            return generator.getMinimumPoints();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import boofcv.abst.geo.fitting.GenerateEpipolarMatrix;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.struct.geo.AssociatedPair;
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.ErrorMetric;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link LoRansac}.
+ */
+public class LoRansacTest {
+
+    @Test
+    public void testReachesInliersWithFewIterations() {
+        List<AssociatedPair> pairs = AdaptiveRansacTest.createPairs(new Random(234), 500, 0.5);
+
+        AdaptiveRansac<DenseMatrix64F, AssociatedPair> full = create(1000, 0, false);
+        AdaptiveRansac<DenseMatrix64F, AssociatedPair> plain = create(20, 0, false);
+        LoRansac<DenseMatrix64F, AssociatedPair> local = create(20, 4, false);
+        LoRansac<DenseMatrix64F, AssociatedPair> refined = create(20, 4, true);
+        Assert.assertTrue(full.process(pairs));
+        Assert.assertTrue(plain.process(pairs));
+        Assert.assertTrue(local.process(pairs));
+        Assert.assertTrue(refined.process(pairs));
+
+        int inliers = full.getMatchSet().size();
+        Assert.assertTrue(local.getImprovements() > 0);
+        Assert.assertTrue(local.getMatchSet().size() > plain.getMatchSet().size());
+        Assert.assertTrue(local.getMatchSet().size() >= 0.98 * inliers);
+        Assert.assertTrue(refined.getMatchSet().size() >= local.getMatchSet().size());
+
+        // The best match set stays consistent with its indexes.
+        for (int i = 0; i < refined.getMatchSet().size(); i++)
+            Assert.assertSame(pairs.get(refined.getInputIndex(i)), refined.getMatchSet().get(i));
+    }
+
+    private static LoRansac<DenseMatrix64F, AssociatedPair> create(int iterations, int localIterations,
+                                                                   boolean refine) {
+        return new LoRansac<DenseMatrix64F, AssociatedPair>(123,
+                new GenerateEpipolarMatrix(FactoryMultiView.computeHomography(true)),
+                ErrorMetric.RESIDUAL_SAMPSON.getMetric(), iterations, 1.0, 0.99, localIterations,
+                refine ? FactoryMultiView.refineHomography(1e-8, 400, ErrorMetric.RESIDUAL_SAMPSON.getRefineError())
+                        : null);
+    }
+}
@@ -0,0 +1,74 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import boofcv.abst.geo.fitting.DistanceFromModelResidualN;
+import boofcv.abst.geo.fitting.GenerateEpipolarMatrix;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.struct.geo.AssociatedPair;
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.ErrorMetric;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for {@link PackedHomographyRansac}.
+ */
+public class PackedHomographyRansacTest {
+
+    @Test
+    public void testDistanceMatchesErrorMetric() {
+        Random rand = new Random(234);
+        DenseMatrix64F H = new DenseMatrix64F(3, 3, true, 0.9, 0.1, 20, -0.05, 1.1, -10, 0.0002, 0.0001, 1);
+        List<AssociatedPair> pairs = AdaptiveRansacTest.createPairs(rand, 50, 0.5);
+        for (ErrorMetric metric : ErrorMetric.values()) {
+            PackedHomographyRansac ransac = new PackedHomographyRansac(123, metric, 100, 1.0, 0.99);
+            DistanceFromModelResidualN<DenseMatrix64F, AssociatedPair> expected = metric.getMetric();
+            expected.setModel(H);
+            for (AssociatedPair pair : pairs) {
+                double distance = expected.computeDistance(pair);
+                Assert.assertEquals(distance, ransac.distance(H.data, pair.p1.x, pair.p1.y, pair.p2.x, pair.p2.y),
+                        1e-6 * Math.max(1, distance));
+            }
+        }
+    }
+
+    @Test
+    public void testFindsInliersWithoutGrowing() {
+        List<AssociatedPair> pairs = AdaptiveRansacTest.createPairs(new Random(234), 500, 0.6);
+        AdaptiveRansac<DenseMatrix64F, AssociatedPair> reference = new AdaptiveRansac<DenseMatrix64F, AssociatedPair>(
+                123, new GenerateEpipolarMatrix(FactoryMultiView.computeHomography(true)),
+                ErrorMetric.RESIDUAL_SAMPSON.getMetric(), 1000, 1.0, 0.99);
+        Assert.assertTrue(reference.process(pairs));
+
+        PackedHomographyRansac ransac = new PackedHomographyRansac(123, ErrorMetric.RESIDUAL_SAMPSON, 1000, 1.0, 0.99);
+        Assert.assertTrue(ransac.process(pairs));
+        Assert.assertTrue(ransac.getInlierCount() > 0.9 * reference.getMatchSet().size());
+        Assert.assertEquals(ransac.getInlierCount(), ransac.getMatchSet().size());
+        for (int i = 0; i < ransac.getInlierCount(); i++) {
+            Assert.assertSame(pairs.get(ransac.getInputIndex(i)), ransac.getMatchSet().get(i));
+            if (i > 0) Assert.assertTrue(ransac.getInputIndex(i) > ransac.getInputIndex(i - 1));
+        }
+
+        Assert.assertTrue(ransac.getError() >= 0 && ransac.getError() < 1.0);
+
+        // Following calls of the same size only swap the two preallocated inlier arrays.
+        Set<int[]> arrays = Collections.newSetFromMap(new IdentityHashMap<int[], Boolean>());
+        arrays.add(ransac.getInliers());
+        DenseMatrix64F model = ransac.getModel();
+        List<AssociatedPair> matchSet = ransac.getMatchSet();
+        Random rand = new Random(345);
+        for (int run = 0; run < 5; run++) {
+            Assert.assertTrue(ransac.process(AdaptiveRansacTest.createPairs(rand, 500, 0.5)));
+            Assert.assertTrue(ransac.getInlierCount() > 200);
+            arrays.add(ransac.getInliers());
+        }
+        Assert.assertTrue(arrays.size() <= 2);
+        Assert.assertSame(model, ransac.getModel());
+        Assert.assertSame(matchSet, ransac.getMatchSet());
+    }
+}
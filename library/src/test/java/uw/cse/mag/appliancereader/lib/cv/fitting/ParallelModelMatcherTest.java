@@ -0,0 +1,56 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import boofcv.abst.geo.fitting.GenerateEpipolarMatrix;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.struct.geo.AssociatedPair;
+import org.ddogleg.fitting.modelset.ModelMatcher;
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.ErrorMetric;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests for {@link ParallelModelMatcher}.
+ */
+public class ParallelModelMatcherTest {
+
+    private static final ParallelModelMatcher.Factory<DenseMatrix64F, AssociatedPair> FACTORY =
+            new ParallelModelMatcher.Factory<DenseMatrix64F, AssociatedPair>() {
+                @Override
+                public ModelMatcher<DenseMatrix64F, AssociatedPair> create(long seed, int maxIterations,
+                                                                           double confidence) {
+                    return new AdaptiveRansac<DenseMatrix64F, AssociatedPair>(seed,
+                            new GenerateEpipolarMatrix(FactoryMultiView.computeHomography(true)),
+                            ErrorMetric.RESIDUAL_SAMPSON.getMetric(), maxIterations, 1.0, confidence);
+                }
+            };
+
+    @Test
+    public void testReproducibleForAnyPool() {
+        List<AssociatedPair> pairs = AdaptiveRansacTest.createPairs(new Random(234), 500, 0.6);
+
+        ForkJoinPool single = new ForkJoinPool(1), several = new ForkJoinPool(4);
+        try {
+            ParallelModelMatcher<DenseMatrix64F, AssociatedPair> a =
+                    new ParallelModelMatcher<DenseMatrix64F, AssociatedPair>(FACTORY, 4, 123, 1000, 0.99, single);
+            ParallelModelMatcher<DenseMatrix64F, AssociatedPair> b =
+                    new ParallelModelMatcher<DenseMatrix64F, AssociatedPair>(FACTORY, 4, 123, 1000, 0.99, several);
+            for (int run = 0; run < 3; run++) {
+                Assert.assertTrue(a.process(pairs));
+                Assert.assertTrue(b.process(pairs));
+                Assert.assertTrue(a.getMatchSet().size() > 150);
+                Assert.assertEquals(a.getMatchSet().size(), b.getMatchSet().size());
+                for (int i = 0; i < a.getMatchSet().size(); i++)
+                    Assert.assertEquals(a.getInputIndex(i), b.getInputIndex(i));
+                Assert.assertArrayEquals(a.getModel().data, b.getModel().data, 0);
+            }
+        } finally {
+            single.shutdown();
+            several.shutdown();
+        }
+    }
+}
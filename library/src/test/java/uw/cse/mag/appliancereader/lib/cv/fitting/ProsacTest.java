@@ -0,0 +1,80 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import boofcv.abst.geo.fitting.GenerateEpipolarMatrix;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.struct.geo.AssociatedPair;
+import org.ddogleg.fitting.modelset.ransac.Ransac;
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.ScoredAssociatedPair;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.ErrorMetric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link Prosac}.
+ */
+public class ProsacTest {
+
+    @Test
+    public void testFindsInliersWithFewSamples() {
+        Random rand = new Random(234);
+        List<AssociatedPair> pairs = createPairs(rand, 300, 0.6);
+
+        Prosac<DenseMatrix64F, AssociatedPair> prosac = new Prosac<DenseMatrix64F, AssociatedPair>(123,
+                new GenerateEpipolarMatrix(FactoryMultiView.computeHomography(true)),
+                ErrorMetric.RESIDUAL_SAMPSON.getMetric(), 1000, 1.0, 0.99, ScoredAssociatedPair.BEST_FIRST);
+        Assert.assertTrue(prosac.process(pairs));
+        Assert.assertTrue("Took " + prosac.getIterations() + " samples", prosac.getIterations() < 100);
+
+        Ransac<DenseMatrix64F, AssociatedPair> ransac = new Ransac<DenseMatrix64F, AssociatedPair>(123,
+                new GenerateEpipolarMatrix(FactoryMultiView.computeHomography(true)),
+                ErrorMetric.RESIDUAL_SAMPSON.getMetric(), 1000, 1.0);
+        Assert.assertTrue(ransac.process(pairs));
+        // Stopping early trades a part of the support of the model for the samples.
+        Assert.assertTrue(prosac.getMatchSet().size() > ransac.getMatchSet().size() / 2);
+
+        // Match sets are in input order and only hold inliers.
+        int previous = -1;
+        for (int i = 0; i < prosac.getMatchSet().size(); i++) {
+            int index = prosac.getInputIndex(i);
+            Assert.assertTrue(index > previous);
+            Assert.assertSame(pairs.get(index), prosac.getMatchSet().get(i));
+            Assert.assertTrue(ScoredAssociatedPair.scoreOf(pairs.get(index)) < 1);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void testTooFewPoints() {
+        Prosac<DenseMatrix64F, AssociatedPair> prosac = new Prosac<DenseMatrix64F, AssociatedPair>(123,
+                new GenerateEpipolarMatrix(FactoryMultiView.computeHomography(true)),
+                ErrorMetric.RESIDUAL_SAMPSON.getMetric(), 1000, 1.0, 0.99, null);
+        Assert.assertFalse(prosac.process(createPairs(new Random(234), 3, 0)));
+        Assert.assertTrue(prosac.getMatchSet().isEmpty());
+    }
+
+    /**
+     * Creates pairs related by a homography.  Inliers have scores below 1, outliers
+     * have random locations and mostly worse scores.
+     */
+    private static List<AssociatedPair> createPairs(Random rand, int size, double outlierRatio) {
+        List<AssociatedPair> pairs = new ArrayList<AssociatedPair>(size);
+        for (int i = 0; i < size; i++) {
+            double x = rand.nextDouble() * 640, y = rand.nextDouble() * 480;
+            if (rand.nextDouble() < outlierRatio) {
+                pairs.add(new ScoredAssociatedPair(x, y, rand.nextDouble() * 640, rand.nextDouble() * 480,
+                        1 + rand.nextDouble() * 0.5 - 0.2 * rand.nextDouble()));
+            } else {
+                double w = 0.0002 * x + 0.0001 * y + 1;
+                double x2 = (0.9 * x + 0.1 * y + 20) / w + rand.nextGaussian() * 0.2;
+                double y2 = (-0.05 * x + 1.1 * y - 10) / w + rand.nextGaussian() * 0.2;
+                pairs.add(new ScoredAssociatedPair(x, y, x2, y2, rand.nextDouble() * 0.95));
+            }
+        }
+        return pairs;
+    }
+}
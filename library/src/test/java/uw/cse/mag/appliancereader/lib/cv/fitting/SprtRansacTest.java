@@ -0,0 +1,73 @@
+package uw.cse.mag.appliancereader.lib.cv.fitting;
+
+import boofcv.abst.geo.fitting.GenerateEpipolarMatrix;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.struct.geo.AssociatedPair;
+import org.ddogleg.fitting.modelset.DistanceFromModel;
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.homography.ErrorMetric;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link SprtRansac}.
+ */
+public class SprtRansacTest {
+
+    @Test
+    public void testRejectsBadHypothesesEarly() {
+        List<AssociatedPair> pairs = AdaptiveRansacTest.createPairs(new Random(234), 2000, 0.7);
+
+        // Same number of hypotheses for both, only the verification differs.
+        CountingDistance plainDistance = new CountingDistance();
+        AdaptiveRansac<DenseMatrix64F, AssociatedPair> plain = new AdaptiveRansac<DenseMatrix64F, AssociatedPair>(
+                123, new GenerateEpipolarMatrix(FactoryMultiView.computeHomography(true)), plainDistance,
+                300, 1.0, 1);
+        Assert.assertTrue(plain.process(pairs));
+
+        CountingDistance sprtDistance = new CountingDistance();
+        SprtRansac<DenseMatrix64F, AssociatedPair> sprt = new SprtRansac<DenseMatrix64F, AssociatedPair>(
+                123, new GenerateEpipolarMatrix(FactoryMultiView.computeHomography(true)), sprtDistance,
+                300, 1.0, 1);
+        Assert.assertTrue(sprt.process(pairs));
+
+        Assert.assertTrue(sprt.getRejected() > 200);
+        Assert.assertTrue("Checked " + sprtDistance.count + " of " + plainDistance.count,
+                sprtDistance.count * 5 < plainDistance.count);
+        Assert.assertTrue(sprt.getMatchSet().size() > 0.9 * plain.getMatchSet().size());
+
+        // Match sets are in input order.
+        for (int i = 1; i < sprt.getMatchSet().size(); i++)
+            Assert.assertTrue(sprt.getInputIndex(i) > sprt.getInputIndex(i - 1));
+    }
+
+    /**
+     * Sampson distance that counts its evaluations.
+     */
+    private static class CountingDistance implements DistanceFromModel<DenseMatrix64F, AssociatedPair> {
+
+        private final DistanceFromModel<DenseMatrix64F, AssociatedPair> distance =
+                ErrorMetric.RESIDUAL_SAMPSON.getMetric();
+        private long count;
+
+        @Override
+        public void setModel(DenseMatrix64F model) {
+            distance.setModel(model);
+        }
+
+        @Override
+        public double computeDistance(AssociatedPair pt) {
+            count++;
+            return distance.computeDistance(pt);
+        }
+
+        @Override
+        public void computeDistance(List<AssociatedPair> points, double[] distance) {
+            count += points.size();
+            this.distance.computeDistance(points, distance);
+        }
+    }
+}
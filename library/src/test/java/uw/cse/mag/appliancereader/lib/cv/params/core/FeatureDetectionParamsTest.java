@@ -0,0 +1,65 @@
+package uw.cse.mag.appliancereader.lib.cv.params.core;
+
+import boofcv.abst.feature.associate.AssociateDescription;
+import boofcv.struct.FastQueue;
+import boofcv.struct.feature.AssociatedIndex;
+import boofcv.struct.feature.SurfFeature;
+import org.junit.Assert;
+import org.junit.Test;
+import uw.cse.mag.appliancereader.lib.cv.params.surf.FastSurfParams;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link FeatureDetectionParams}.
+ */
+public class FeatureDetectionParamsTest {
+
+    @Test
+    public void testTreeAssociatersMatchExactly() {
+        FeatureDetectionParams params = new FastSurfParams();
+        int length = params.getDescriptorLength();
+        Random rand = new Random(123);
+
+        // Well separated source descriptors, the destination holds the same descriptors shuffled and
+        // slightly perturbed.
+        int size = 100;
+        FastQueue<SurfFeature> src = new FastQueue<SurfFeature>(size, SurfFeature.class, false);
+        FastQueue<SurfFeature> dst = new FastQueue<SurfFeature>(size, SurfFeature.class, false);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            SurfFeature feature = new SurfFeature(length);
+            for (int k = 0; k < length; k++)
+                feature.value[k] = rand.nextDouble();
+            src.add(feature);
+            order[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        for (int i = 0; i < size; i++) {
+            SurfFeature feature = new SurfFeature(length);
+            for (int k = 0; k < length; k++)
+                feature.value[k] = src.get(order[i]).value[k] + 1e-3 * (rand.nextDouble() - 0.5);
+            dst.add(feature);
+        }
+
+        for (Associater mode : new Associater[] {Associater.KD_TREE, Associater.KD_FOREST}) {
+            params.setAssociater(mode);
+            AssociateDescription<SurfFeature> associater = params.getCurrentAssociater();
+            associater.setSource(src);
+            associater.setDestination(dst);
+            associater.associate();
+
+            FastQueue<AssociatedIndex> matches = associater.getMatches();
+            Assert.assertEquals(mode.toString(), size, matches.size());
+            for (int i = 0; i < matches.size(); i++) {
+                AssociatedIndex match = matches.get(i);
+                Assert.assertEquals(mode.toString(), match.src, order[match.dst]);
+            }
+        }
+    }
+}